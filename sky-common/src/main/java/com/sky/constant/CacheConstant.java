@@ -0,0 +1,21 @@
+package com.sky.constant;
+
+/**
+ * 缓存相关常量
+ */
+public class CacheConstant {
+
+    //菜品缓存，redis中的key为 dish_分类id
+    public static final String DISH_CACHE = "dishCache";
+    public static final String DISH_KEY_PREFIX = "dish_";
+
+    //套餐缓存，redis中的key为 setmealCache::分类id
+    public static final String SETMEAL_CACHE = "setmealCache";
+
+    //分类标签前缀，菜品缓存和套餐缓存的key都是分类id，登记到 category:分类id 标签下
+    public static final String CATEGORY_TAG_PREFIX = "category:";
+
+    //缓存失效广播的redis频道
+    public static final String EVICT_CHANNEL = "sky:cache:evict";
+
+}
@@ -24,6 +24,12 @@ public class MessageConstant {
     public static final String DISH_BE_RELATED_BY_SETMEAL = "当前菜品关联了套餐,不能删除";
     public static final String ORDER_STATUS_ERROR = "订单状态错误";
     public static final String ORDER_NOT_FOUND = "订单不存在";
+    public static final String ORDER_PLACING = "订单正在下单中，请稍后重试";
+    public static final String ORDER_NUMBER_UNAVAILABLE = "系统繁忙，请稍后下单";
+    public static final String ORDER_CURSOR_INVALID = "分页游标无效";
      public static final String SETMEAL_ALREADY_EXISTS =  "套餐已存在";
 
+    public static final String DATE_RANGE_ERROR = "开始日期不能晚于结束日期";
+    public static final String DATE_RANGE_TOO_LONG = "日期范围过长";
+    public static final String REPORT_EXPORT_FAILED = "报表导出失败";
 }
@@ -0,0 +1,12 @@
+package com.sky.exception;
+
+/**
+ * 订单还在异步下单中，暂时无法处理，稍后重试
+ */
+public class OrderPlacingException extends BaseException {
+
+    public OrderPlacingException(String msg) {
+        super(msg);
+    }
+
+}
@@ -0,0 +1,27 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.cart")
+@Data
+public class CartProperties {
+
+    /**
+     * redis购物车的过期时间（天），每次修改购物车后重新计算
+     */
+    private long ttlDays = 7;
+
+    /**
+     * 是否把redis购物车定期写回数据库的shopping_cart表，默认关闭，只在下单时读取redis
+     */
+    private boolean writeBehind = false;
+
+    /**
+     * 每次写回的最多用户数
+     */
+    private int writeBehindBatchSize = 100;
+
+}
@@ -0,0 +1,28 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.geo")
+@Data
+public class GeoProperties {
+
+    /**
+     * 最大配送距离（米），按驾车路线距离计算
+     */
+    private int maxDistance = 5000;
+
+    /**
+     * 路线距离和直线距离的最大比值，直线距离乘以该值仍在配送范围内时，不再调用路线规划直接判定为范围内
+     */
+    private double detourFactor = 1.6;
+
+    /**
+     * 地址经纬度和路线距离在redis中的缓存时间（天）
+     */
+    private long addressTtlDays = 30;
+    private long routeTtlDays = 7;
+
+}
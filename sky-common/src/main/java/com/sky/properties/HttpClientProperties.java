@@ -0,0 +1,35 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.http")
+@Data
+public class HttpClientProperties {
+
+    /**
+     * 连接池最大连接数，以及每个目标地址（域名+端口）的最大连接数
+     */
+    private int maxTotal = 200;
+    private int maxPerRoute = 50;
+
+    /**
+     * 建立连接、从连接池获取连接、读取数据的超时时间（毫秒）
+     */
+    private int connectTimeout = 5000;
+    private int connectionRequestTimeout = 5000;
+    private int socketTimeout = 5000;
+
+    /**
+     * 服务端没有返回Keep-Alive超时时间时，连接保持的时间（秒）
+     */
+    private long keepAliveSeconds = 30;
+
+    /**
+     * 空闲超过该时间（秒）的连接由后台线程关闭
+     */
+    private long idleEvictSeconds = 60;
+
+}
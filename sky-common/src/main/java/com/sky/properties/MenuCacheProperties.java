@@ -0,0 +1,42 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.cache")
+@Data
+public class MenuCacheProperties {
+
+    /**
+     * 本地一级缓存配置，每个缓存最多保留的条目数和写入后的过期时间（秒）
+     */
+    private long localMaxSize = 1000;
+    private long localExpireSeconds = 600;
+
+    /**
+     * redis二级缓存的过期时间（秒），0表示不过期，和原来的缓存保持一致
+     */
+    private long redisTtlSeconds = 0;
+
+    /**
+     * redis value的格式：json为带类型信息的json，compact为json加格式头，超过压缩阈值（字节）时gzip压缩
+     */
+    private String codec = "json";
+    private int compressThreshold = 1024;
+
+    /**
+     * 缓存未命中时的加载锁过期时间（秒），同一个key在所有节点中同时只有一个节点查询数据库
+     */
+    private long loadLockSeconds = 5;
+
+    /**
+     * stale-while-revalidate：失效的数据在本地保留的时间（秒），未命中时先返回旧数据，由后台线程刷新
+     */
+    private boolean staleWhileRevalidate = false;
+    private long staleExpireSeconds = 300;
+    private int refreshThreads = 2;
+    private int refreshQueueSize = 100;
+
+}
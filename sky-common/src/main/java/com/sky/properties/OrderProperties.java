@@ -0,0 +1,64 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.order")
+@Data
+public class OrderProperties {
+
+    /**
+     * 是否异步下单：开启后下单接口只校验并保存一条下单中的订单就返回，配送范围校验、订单明细等在后台线程中完成
+     */
+    private boolean asyncPlacement = false;
+
+    /**
+     * 异步下单线程池的线程数和队列长度，队列满时由请求线程自己执行
+     */
+    private int placementThreads = 8;
+    private int placementQueueSize = 1000;
+
+    /**
+     * 下单中的订单超过该时间（分钟）仍未完成时，由定时任务取消
+     */
+    private int placementTimeoutMinutes = 5;
+
+    /**
+     * 待付款订单的支付超时时间（分钟），超时后自动取消
+     */
+    private int paymentTimeoutMinutes = 15;
+
+    /**
+     * 每次从支付超时延迟队列中取出的最多订单数
+     */
+    private int expiryPollSize = 200;
+
+    /**
+     * 支付回调处理线程池的线程数和队列长度，队列满时回调留在待处理记录中，由定时任务处理
+     */
+    private int payNotifyThreads = 4;
+    private int payNotifyQueueSize = 500;
+
+    /**
+     * 支付回调去重标记的保留时间（小时）
+     */
+    private long payNotifyDedupeHours = 24;
+
+    /**
+     * 支付回调接收后超过该秒数仍未处理成功时，由定时任务重新处理
+     */
+    private long payNotifyRedriveSeconds = 60;
+
+    /**
+     * 定时任务批量处理超时订单时，每批（每个事务）最多处理的订单数
+     */
+    private int timeoutBatchSize = 500;
+
+    /**
+     * 订单号、手机号搜索时，n-gram索引最多返回的候选订单数，超过时说明关键字区分度太低，退回模糊查询
+     */
+    private int searchMaxCandidates = 2000;
+
+}
@@ -0,0 +1,27 @@
+package com.sky.result;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 封装游标分页查询结果
+ * 查询下一页时把nextCursor原样传回，不再按页码跳过前面的数据，翻到多深查询都一样快
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CursorPageResult implements Serializable {
+
+    private Long total; //总记录数，只在查询第一页时返回，短时间内缓存，其他页为null
+
+    private List records; //当前页数据集合
+
+    private String nextCursor; //下一页的游标，没有下一页时为null
+
+    private boolean hasMore; //是否还有下一页
+
+}
@@ -1,6 +1,7 @@
 package com.sky.utils;
 
 import com.alibaba.fastjson.JSONObject;
+import com.sky.properties.HttpClientProperties;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
@@ -8,24 +9,125 @@ import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.pool.PoolStats;
 import org.apache.http.util.EntityUtils;
 
 import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * HttpClient工具类
+ * 所有请求共用一个带连接池的HttpClient，连接保持长连接复用，避免每次请求都重新建立TCP连接和TLS握手
  */
 public class HttpClientUtil {
 
-    static final int TIMEOUT_MSEC = 5 * 1000;
+    //共用的连接池和客户端，启动时由configure按配置重新创建，没有配置时使用默认值
+    private static volatile PoolingHttpClientConnectionManager connectionManager;
+    private static volatile CloseableHttpClient httpClient;
+    private static volatile RequestConfig requestConfig;
+
+    static {
+        configure(new HttpClientProperties());
+    }
+
+    /**
+     * 按配置创建连接池和共用的HttpClient，旧的连接池会被关闭
+     *
+     * @param properties 连接池配置
+     */
+    public static synchronized void configure(HttpClientProperties properties) {
+        PoolingHttpClientConnectionManager manager = new PoolingHttpClientConnectionManager();
+        manager.setMaxTotal(properties.getMaxTotal());
+        manager.setDefaultMaxPerRoute(properties.getMaxPerRoute());
+        //连接空闲一段时间后再次使用前先检查是否可用，避免使用已被服务端关闭的连接
+        manager.setValidateAfterInactivity(2000);
+        RequestConfig config = RequestConfig.custom()
+                .setConnectTimeout(properties.getConnectTimeout())
+                .setConnectionRequestTimeout(properties.getConnectionRequestTimeout())
+                .setSocketTimeout(properties.getSocketTimeout()).build();
+        long defaultKeepAlive = properties.getKeepAliveSeconds() * 1000;
+        CloseableHttpClient client = HttpClients.custom()
+                .setConnectionManager(manager)
+                .setDefaultRequestConfig(config)
+                //优先使用服务端Keep-Alive响应头中的超时时间
+                .setKeepAliveStrategy((response, context) -> {
+                    long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return keepAlive > 0 ? keepAlive : defaultKeepAlive;
+                })
+                //后台线程定时关闭过期和空闲的连接
+                .evictExpiredConnections()
+                .evictIdleConnections(properties.getIdleEvictSeconds(), TimeUnit.SECONDS)
+                .build();
+        CloseableHttpClient old = httpClient;
+        connectionManager = manager;
+        httpClient = client;
+        requestConfig = config;
+        if (old != null) {
+            try {
+                old.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * 获取共用的连接池，微信支付客户端也使用这个连接池
+     *
+     * @return
+     */
+    public static PoolingHttpClientConnectionManager getConnectionManager() {
+        return connectionManager;
+    }
+
+    /**
+     * 关闭共用的HttpClient和连接池
+     */
+    public static void shutdown() {
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 连接池统计数据：总体以及每个目标地址的租用中、空闲、等待连接数
+     *
+     * @return
+     */
+    public static Map<String, Object> getPoolStats() {
+        PoolingHttpClientConnectionManager manager = connectionManager;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("total", toMap(manager.getTotalStats()));
+        Map<String, Object> routes = new LinkedHashMap<>();
+        for (HttpRoute route : manager.getRoutes()) {
+            routes.put(route.getTargetHost().toHostString(), toMap(manager.getStats(route)));
+        }
+        stats.put("routes", routes);
+        return stats;
+    }
+
+    private static Map<String, Integer> toMap(PoolStats poolStats) {
+        Map<String, Integer> map = new LinkedHashMap<>();
+        map.put("leased", poolStats.getLeased());
+        map.put("available", poolStats.getAvailable());
+        map.put("pending", poolStats.getPending());
+        map.put("max", poolStats.getMax());
+        return map;
+    }
 
     /**
      * 发送GET方式请求
@@ -35,9 +137,6 @@ public class HttpClientUtil {
      * @return 返回请求的结果，以字符串形式表示
      */
     public static String doGet(String url, Map<String, String> paramMap) {
-        // 创建Httpclient对象
-        CloseableHttpClient httpClient = HttpClients.createDefault();
-
         // 用于存储请求结果的变量
         String result = "";
         // 用于存储HTTP响应的对象
@@ -69,10 +168,11 @@ public class HttpClientUtil {
         } catch (Exception e) {
             e.printStackTrace();
         } finally {
-            // 关闭response和httpClient对象
+            // 关闭response，连接归还到连接池，httpClient是共用的不关闭
             try {
-                response.close();
-                httpClient.close();
+                if (response != null) {
+                    response.close();
+                }
             } catch (IOException e) {
                 e.printStackTrace();
             }
@@ -91,8 +191,6 @@ public class HttpClientUtil {
      * @throws IOException 当请求过程中发生I/O错误时抛出此异常
      */
     public static String doPost(String url, Map<String, String> paramMap) throws IOException {
-        // 创建Httpclient对象
-        CloseableHttpClient httpClient = HttpClients.createDefault();
         CloseableHttpResponse response = null;
         String resultString = "";
 
@@ -123,8 +221,10 @@ public class HttpClientUtil {
             throw e;
         } finally {
             try {
-                // 关闭响应对象以释放资源
-                response.close();
+                // 关闭响应对象，连接归还到连接池
+                if (response != null) {
+                    response.close();
+                }
             } catch (IOException e) {
                 e.printStackTrace();
             }
@@ -142,8 +242,6 @@ public class HttpClientUtil {
      * @throws IOException 当请求过程中发生I/O错误时抛出
      */
     public static String doPost4Json(String url, Map<String, String> paramMap) throws IOException {
-        // 创建Httpclient对象
-        CloseableHttpClient httpClient = HttpClients.createDefault();
         CloseableHttpResponse response = null;
         String resultString = "";
 
@@ -180,7 +278,9 @@ public class HttpClientUtil {
         } finally {
             // 确保在finally块中关闭response
             try {
-                response.close();
+                if (response != null) {
+                    response.close();
+                }
             } catch (IOException e) {
                 e.printStackTrace();
             }
@@ -198,10 +298,8 @@ public class HttpClientUtil {
      * @return RequestConfig 返回一个自定义配置的RequestConfig对象
      */
     private static RequestConfig builderRequestConfig() {
-        return RequestConfig.custom()
-                .setConnectTimeout(TIMEOUT_MSEC) // 设置连接超时时间
-                .setConnectionRequestTimeout(TIMEOUT_MSEC) // 设置请求连接的超时时间
-                .setSocketTimeout(TIMEOUT_MSEC).build(); // 设置读取数据的超时时间
+        // 连接超时、从连接池获取连接的超时、读取数据的超时，在configure中按配置创建
+        return requestConfig;
     }
 
 }
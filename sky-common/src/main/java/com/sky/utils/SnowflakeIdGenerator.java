@@ -0,0 +1,124 @@
+package com.sky.utils;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 雪花算法id生成器，生成按时间递增的64位id，不需要访问数据库
+ * id结构：1位符号位(0) + 41位毫秒时间戳(相对EPOCH) + 10位节点id + 12位序列号
+ * 每个节点每毫秒最多生成4096个id，超过时借用下一毫秒，时钟回拨时沿用上次的时间戳继续递增，id始终单调递增
+ */
+public class SnowflakeIdGenerator {
+
+    //起始时间 2025-01-01 00:00:00
+    private static final long EPOCH = LocalDateTime.of(2025, 1, 1, 0, 0)
+            .atZone(ZoneId.of("Asia/Shanghai")).toInstant().toEpochMilli();
+
+    private static final int WORKER_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    public static final int MAX_WORKER_ID = (1 << WORKER_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    //十进制字符串的固定长度，补0后字符串顺序和数值顺序一致
+    private static final int DECIMAL_LENGTH = 19;
+    //紧凑字符串的固定长度，36进制只用数字和小写字母，大小写不敏感的排序规则下也不会冲突
+    private static final int COMPACT_LENGTH = 13;
+
+    //上次生成的 时间戳<<12|序列号，通过CAS更新，不加锁
+    private final AtomicLong state = new AtomicLong();
+    private volatile long workerId;
+
+    public SnowflakeIdGenerator(long workerId) {
+        setWorkerId(workerId);
+    }
+
+    /**
+     * 修改节点id，节点id的租约丢失重新获取后调用
+     *
+     * @param workerId 0 ~ 1023
+     */
+    public void setWorkerId(long workerId) {
+        if (workerId < 0 || workerId > MAX_WORKER_ID) {
+            throw new IllegalArgumentException("workerId超出范围：" + workerId);
+        }
+        this.workerId = workerId;
+    }
+
+    public long getWorkerId() {
+        return workerId;
+    }
+
+    /**
+     * 生成下一个id
+     *
+     * @return
+     */
+    public long nextId() {
+        while (true) {
+            long last = state.get();
+            long now = System.currentTimeMillis() - EPOCH;
+            long lastTime = last >>> SEQUENCE_BITS;
+            long next;
+            if (now > lastTime) {
+                //进入新的毫秒，序列号从0开始
+                next = now << SEQUENCE_BITS;
+            } else {
+                //同一毫秒或时钟回拨，在上次的基础上加1，序列号用完时自动进位到下一毫秒
+                next = last + 1;
+            }
+            if (state.compareAndSet(last, next)) {
+                return ((next >>> SEQUENCE_BITS) << (WORKER_BITS + SEQUENCE_BITS))
+                        | (workerId << SEQUENCE_BITS)
+                        | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    /**
+     * 生成下一个id的十进制字符串，固定19位，前面补0
+     *
+     * @return
+     */
+    public String nextDecimalString() {
+        return toDecimalString(nextId());
+    }
+
+    public static String toDecimalString(long id) {
+        String value = Long.toString(id);
+        StringBuilder sb = new StringBuilder(DECIMAL_LENGTH);
+        for (int i = value.length(); i < DECIMAL_LENGTH; i++) {
+            sb.append('0');
+        }
+        return sb.append(value).toString();
+    }
+
+    /**
+     * id的紧凑字符串，36进制固定13位，前面补0
+     *
+     * @param id
+     * @return
+     */
+    public static String toCompactString(long id) {
+        String value = Long.toString(id, 36);
+        StringBuilder sb = new StringBuilder(COMPACT_LENGTH);
+        for (int i = value.length(); i < COMPACT_LENGTH; i++) {
+            sb.append('0');
+        }
+        return sb.append(value).toString();
+    }
+
+    public static long parseCompactString(String value) {
+        return Long.parseLong(value, 36);
+    }
+
+    /**
+     * 从id中解析出生成时间（毫秒）
+     *
+     * @param id
+     * @return
+     */
+    public static long getTimestamp(long id) {
+        return (id >>> (WORKER_BITS + SEQUENCE_BITS)) + EPOCH;
+    }
+}
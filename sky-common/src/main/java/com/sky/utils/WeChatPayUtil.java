@@ -44,31 +44,52 @@ public class WeChatPayUtil {
     @Autowired
     private WeChatProperties weChatProperties;
 
+    //商户私钥和签名客户端只创建一次，不再每次请求都读取证书文件
+    private volatile PrivateKey merchantPrivateKey;
+    private volatile CloseableHttpClient httpClient;
+
     /**
-     * 获取调用微信接口的客户端工具对象
+     * 获取调用微信接口的客户端工具对象，第一次调用时创建，之后复用，连接使用HttpClientUtil的共用连接池
      * @return
      */
-    private CloseableHttpClient getClient() {
-        PrivateKey merchantPrivateKey = null;
-        try {
-            //merchantPrivateKey商户API私钥，如何加载商户API私钥请看常见问题
-            merchantPrivateKey = PemUtil.loadPrivateKey(new FileInputStream(new File(weChatProperties.getPrivateKeyFilePath())));
-            //加载平台证书文件
-            X509Certificate x509Certificate = PemUtil.loadCertificate(new FileInputStream(new File(weChatProperties.getWeChatPayCertFilePath())));
-            //wechatPayCertificates微信支付平台证书列表。你也可以使用后面章节提到的“定时更新平台证书功能”，而不需要关心平台证书的来龙去脉
-            List<X509Certificate> wechatPayCertificates = Arrays.asList(x509Certificate);
-
-            WechatPayHttpClientBuilder builder = WechatPayHttpClientBuilder.create()
-                    .withMerchant(weChatProperties.getMchid(), weChatProperties.getMchSerialNo(), merchantPrivateKey)
-                    .withWechatPay(wechatPayCertificates);
-
-            // 通过WechatPayHttpClientBuilder构造的HttpClient，会自动的处理签名和验签
-            CloseableHttpClient httpClient = builder.build();
-            return httpClient;
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-            return null;
+    private CloseableHttpClient getClient() throws FileNotFoundException {
+        if (httpClient == null) {
+            synchronized (this) {
+                if (httpClient == null) {
+                    //加载平台证书文件
+                    X509Certificate x509Certificate = PemUtil.loadCertificate(new FileInputStream(new File(weChatProperties.getWeChatPayCertFilePath())));
+                    //wechatPayCertificates微信支付平台证书列表。你也可以使用后面章节提到的“定时更新平台证书功能”，而不需要关心平台证书的来龙去脉
+                    List<X509Certificate> wechatPayCertificates = Arrays.asList(x509Certificate);
+
+                    WechatPayHttpClientBuilder builder = WechatPayHttpClientBuilder.create()
+                            .withMerchant(weChatProperties.getMchid(), weChatProperties.getMchSerialNo(), getMerchantPrivateKey())
+                            .withWechatPay(wechatPayCertificates);
+                    //使用共用的连接池，关闭这个客户端时不关闭连接池
+                    builder.setConnectionManager(HttpClientUtil.getConnectionManager());
+                    builder.setConnectionManagerShared(true);
+
+                    // 通过WechatPayHttpClientBuilder构造的HttpClient，会自动的处理签名和验签
+                    httpClient = builder.build();
+                }
+            }
+        }
+        return httpClient;
+    }
+
+    /**
+     * 获取商户API私钥，第一次调用时从文件加载
+     * @return
+     */
+    private PrivateKey getMerchantPrivateKey() throws FileNotFoundException {
+        if (merchantPrivateKey == null) {
+            synchronized (this) {
+                if (merchantPrivateKey == null) {
+                    //merchantPrivateKey商户API私钥，如何加载商户API私钥请看常见问题
+                    merchantPrivateKey = PemUtil.loadPrivateKey(new FileInputStream(new File(weChatProperties.getPrivateKeyFilePath())));
+                }
+            }
         }
+        return merchantPrivateKey;
     }
 
     /**
@@ -101,8 +122,7 @@ public class WeChatPayUtil {
             String bodyAsString = EntityUtils.toString(response.getEntity());
             return bodyAsString;
         } finally {
-            // 关闭httpClient和response以释放资源
-            httpClient.close();
+            // 关闭response，连接归还到连接池，httpClient是复用的不关闭
             response.close();
         }
     }
@@ -133,8 +153,7 @@ public class WeChatPayUtil {
             String bodyAsString = EntityUtils.toString(response.getEntity());
             return bodyAsString;
         } finally {
-            // 关闭httpClient和response资源，释放系统资源
-            httpClient.close();
+            // 关闭response，连接归还到连接池，httpClient是复用的不关闭
             response.close();
         }
     }
@@ -229,7 +248,7 @@ public class WeChatPayUtil {
 
             //使用SHA256withRSA签名
             Signature signature = Signature.getInstance("SHA256withRSA");
-            signature.initSign(PemUtil.loadPrivateKey(new FileInputStream(new File(weChatProperties.getPrivateKeyFilePath()))));
+            signature.initSign(getMerchantPrivateKey());
             signature.update(message);
             String packageSign = Base64.getEncoder().encodeToString(signature.sign());
 
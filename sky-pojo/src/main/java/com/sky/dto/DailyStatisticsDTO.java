@@ -0,0 +1,33 @@
+package com.sky.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * 按天分组统计的运营数据，一行对应一天
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class DailyStatisticsDTO implements Serializable {
+    //日期
+    private LocalDate date;
+
+    //营业额，当天已完成订单的总金额
+    private Double turnover;
+
+    //订单总数
+    private Integer orderCount;
+
+    //有效订单数，当天已完成订单的数量
+    private Integer validOrderCount;
+
+    //新增用户数
+    private Integer newUsers;
+}
@@ -5,6 +5,7 @@ import org.springframework.format.annotation.DateTimeFormat;
 
 import java.io.Serializable;
 import java.time.LocalDateTime;
+import java.util.List;
 
 /**
  * 订单条件查询参数
@@ -30,4 +31,10 @@ public class OrdersPageQueryDTO implements Serializable {
 
     private Long userId;
 
+    //根据订单号、手机号从搜索索引中查出的候选订单id，由服务端设置
+    private List<Long> ids;
+
+    //手机尾号，手机号关键字正好是4位数字时由服务端设置，按phone_suffix索引查询
+    private String phoneSuffix;
+
 }
@@ -0,0 +1,27 @@
+package com.sky.dto;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * 批量查询套餐中的菜品时使用，比DishItemVO多一个套餐id，用于按套餐分组
+ */
+@Data
+public class SetmealDishItemDTO implements Serializable {
+
+    //套餐id
+    private Long setmealId;
+
+    //菜品名称
+    private String name;
+
+    //份数
+    private Integer copies;
+
+    //菜品图片
+    private String image;
+
+    //菜品描述
+    private String description;
+}
@@ -0,0 +1,59 @@
+package com.sky.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * 每日运营数据汇总
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DailyBusinessStats implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    //统计日期
+    private LocalDate statDate;
+
+    //营业额
+    private BigDecimal turnover;
+
+    //订单总数
+    private Integer totalOrders;
+
+    //有效订单数
+    private Integer validOrders;
+
+    //新增用户数
+    private Integer newUsers;
+
+    //待付款订单数
+    private Integer pendingPaymentOrders;
+
+    //待接单订单数
+    private Integer toBeConfirmedOrders;
+
+    //已接单订单数
+    private Integer confirmedOrders;
+
+    //派送中订单数
+    private Integer deliveryInProgressOrders;
+
+    //已完成订单数
+    private Integer completedOrders;
+
+    //已取消订单数
+    private Integer cancelledOrders;
+
+    //更新时间
+    private LocalDateTime updateTime;
+}
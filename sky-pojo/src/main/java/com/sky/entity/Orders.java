@@ -19,8 +19,10 @@ import java.time.LocalDateTime;
 public class Orders implements Serializable {
 
     /**
-     * 订单状态 1待付款 2待接单 3已接单 4派送中 5已完成 6已取消
+     * 订单状态 0下单中 1待付款 2待接单 3已接单 4派送中 5已完成 6已取消
+     * 下单中只在异步下单时出现，后台完成配送范围校验和订单明细后变为待付款
      */
+    public static final Integer PLACING = 0;
     public static final Integer PENDING_PAYMENT = 1;
     public static final Integer TO_BE_CONFIRMED = 2;
     public static final Integer CONFIRMED = 3;
@@ -42,7 +44,7 @@ public class Orders implements Serializable {
     //订单号
     private String number;
 
-    //订单状态 1待付款 2待接单 3已接单 4派送中 5已完成 6已取消 7退款
+    //订单状态 0下单中 1待付款 2待接单 3已接单 4派送中 5已完成 6已取消 7退款
     private Integer status;
 
     //下单用户id
@@ -0,0 +1,34 @@
+package com.sky.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 菜单快照中的分类，包含分类下起售的菜品和套餐
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MenuCategoryVO implements Serializable {
+
+    private Long id;
+    //类型: 1菜品分类 2套餐分类
+    private Integer type;
+    //分类名称
+    private String name;
+    //顺序
+    private Integer sort;
+    //分类下的菜品，包含口味
+    @Builder.Default
+    private List<DishVO> dishes = new ArrayList<>();
+    //分类下的套餐，包含套餐中的菜品
+    @Builder.Default
+    private List<MenuSetmealVO> setmeals = new ArrayList<>();
+}
@@ -0,0 +1,36 @@
+package com.sky.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 菜单快照中的套餐，包含套餐中的菜品
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MenuSetmealVO implements Serializable {
+
+    private Long id;
+    //分类id
+    private Long categoryId;
+    //套餐名称
+    private String name;
+    //套餐价格
+    private BigDecimal price;
+    //描述信息
+    private String description;
+    //图片
+    private String image;
+    //套餐中的菜品
+    @Builder.Default
+    private List<DishItemVO> items = new ArrayList<>();
+}
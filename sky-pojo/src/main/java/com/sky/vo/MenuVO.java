@@ -0,0 +1,25 @@
+package com.sky.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 完整菜单快照，包含所有启用的分类以及分类下起售的菜品和套餐
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MenuVO implements Serializable {
+
+    //菜单版本号，菜品、套餐、分类有修改时递增
+    private Long version;
+
+    //分类列表，按分类排序
+    private List<MenuCategoryVO> categories;
+}
@@ -0,0 +1,26 @@
+package com.sky.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 异步下单的处理结果，前端轮询直到订单不再是下单中
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderPlacementVO implements Serializable {
+    //订单id
+    private Long id;
+    //订单号
+    private String orderNumber;
+    //订单状态 0下单中 1待付款 6已取消
+    private Integer status;
+    //下单失败的原因
+    private String reason;
+}
@@ -0,0 +1,35 @@
+package com.sky.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.Collection;
+
+/**
+ * 缓存失效广播消息，通知其他节点删除本地一级缓存
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CacheEvictMessage implements Serializable {
+
+    //发送消息的节点id，节点收到自己发出的消息时直接忽略
+    private String nodeId;
+
+    //缓存名称
+    private String cacheName;
+
+    //缓存key，为null时表示清空整个缓存
+    private String key;
+
+    //按标签失效时被删除的redis key，不为null时忽略cacheName和key
+    private Collection<String> redisKeys;
+
+    public CacheEvictMessage(String nodeId, String cacheName, String key) {
+        this.nodeId = nodeId;
+        this.cacheName = cacheName;
+        this.key = key;
+    }
+}
@@ -0,0 +1,65 @@
+package com.sky.cache;
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Duration;
+import java.util.Collections;
+
+/**
+ * 缓存加载锁，同一个缓存key在所有节点中同时只有一个节点查询数据库
+ * 锁带过期时间，持有锁的节点宕机后锁会自动释放；释放时比较令牌，不会误删其他节点重新获取的锁
+ */
+public class CacheLoadLock {
+
+    //锁key前缀，完整的key为 cache:lock:缓存的redis key
+    private static final String LOCK_KEY_PREFIX = "cache:lock:";
+    //令牌一致才删除锁
+    private static final RedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final Duration lockTimeout;
+
+    public CacheLoadLock(StringRedisTemplate stringRedisTemplate, Duration lockTimeout) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.lockTimeout = lockTimeout;
+    }
+
+    public Duration getLockTimeout() {
+        return lockTimeout;
+    }
+
+    /**
+     * 尝试获取锁，不等待
+     *
+     * @param redisKey 缓存的redis key
+     * @param token    持有者令牌
+     * @return 是否获取成功
+     */
+    public boolean tryLock(String redisKey, String token) {
+        return Boolean.TRUE.equals(stringRedisTemplate.opsForValue().setIfAbsent(LOCK_KEY_PREFIX + redisKey, token, lockTimeout));
+    }
+
+    /**
+     * 锁是否还被其他节点持有
+     *
+     * @param redisKey
+     * @return
+     */
+    public boolean isLocked(String redisKey) {
+        return Boolean.TRUE.equals(stringRedisTemplate.hasKey(LOCK_KEY_PREFIX + redisKey));
+    }
+
+    /**
+     * 释放自己持有的锁
+     *
+     * @param redisKey
+     * @param token
+     */
+    public void unlock(String redisKey, String token) {
+        stringRedisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(LOCK_KEY_PREFIX + redisKey), token);
+    }
+}
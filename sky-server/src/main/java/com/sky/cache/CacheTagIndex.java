@@ -0,0 +1,117 @@
+package com.sky.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * 缓存标签索引，每个标签在redis中对应一个set，保存打了该标签的缓存key
+ * 失效时按标签取出key后用UNLINK批量删除，不再使用会阻塞redis的KEYS命令扫描整个库
+ */
+@Slf4j
+public class CacheTagIndex {
+
+    //标签set的key前缀，完整的key为 cache:tag:标签
+    private static final String TAG_KEY_PREFIX = "cache:tag:";
+    //SCAN每次返回的数量
+    private static final int SCAN_COUNT = 500;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    public CacheTagIndex(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    /**
+     * 给缓存key打上标签，多个标签在一次管道中写入
+     *
+     * @param redisKey
+     * @param tags
+     */
+    public void tag(String redisKey, Collection<String> tags) {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            for (String tag : tags) {
+                stringConnection.sAdd(TAG_KEY_PREFIX + tag, redisKey);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 删除缓存key，并从标签中移除，在一次管道中完成
+     *
+     * @param redisKey
+     * @param tags
+     */
+    public void unlink(String redisKey, Collection<String> tags) {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            stringConnection.unlink(redisKey);
+            for (String tag : tags) {
+                stringConnection.sRem(TAG_KEY_PREFIX + tag, redisKey);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 删除打了该标签的所有缓存key和标签本身，UNLINK在redis后台线程释放内存，不会阻塞其他客户端
+     *
+     * @param tag
+     * @return 被删除的缓存key
+     */
+    public Set<String> unlinkTagged(String tag) {
+        String tagKey = TAG_KEY_PREFIX + tag;
+        Set<String> redisKeys = stringRedisTemplate.opsForSet().members(tagKey);
+        if (redisKeys == null || redisKeys.isEmpty()) {
+            return Collections.emptySet();
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            for (String redisKey : redisKeys) {
+                stringConnection.unlink(redisKey);
+            }
+            //标签本身也删除，之后写入的缓存会重新登记
+            stringConnection.unlink(tagKey);
+            return null;
+        });
+        log.info("按标签删除缓存：{}，共{}个key", tag, redisKeys.size());
+        return redisKeys;
+    }
+
+    /**
+     * 用SCAN找出引入标签之前已经存在的缓存key并登记到标签中，SCAN是增量遍历，不会像KEYS一样阻塞redis
+     *
+     * @param pattern 缓存key的匹配规则
+     * @param tagsOf  根据缓存key计算需要登记的标签
+     */
+    public void indexExisting(String pattern, Function<String, Collection<String>> tagsOf) {
+        ScanOptions options = ScanOptions.scanOptions().match(pattern).count(SCAN_COUNT).build();
+        List<String> redisKeys = stringRedisTemplate.execute((RedisCallback<List<String>>) connection -> {
+            List<String> keys = new ArrayList<>();
+            try (Cursor<byte[]> cursor = connection.keyCommands().scan(options)) {
+                cursor.forEachRemaining(key -> keys.add(new String(key, StandardCharsets.UTF_8)));
+            }
+            return keys;
+        });
+        if (redisKeys == null) {
+            return;
+        }
+        for (String redisKey : redisKeys) {
+            tag(redisKey, tagsOf.apply(redisKey));
+        }
+        log.info("登记已有缓存key：{}，共{}个", pattern, redisKeys.size());
+    }
+}
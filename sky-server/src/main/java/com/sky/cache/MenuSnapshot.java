@@ -0,0 +1,21 @@
+package com.sky.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 某个版本的菜单快照，保存已经序列化好的响应内容和对应的ETag
+ */
+@Getter
+@AllArgsConstructor
+public class MenuSnapshot {
+
+    //菜单版本号
+    private final long version;
+
+    //强ETag，内容不变时ETag不变
+    private final String etag;
+
+    //序列化好的json响应内容
+    private final byte[] body;
+}
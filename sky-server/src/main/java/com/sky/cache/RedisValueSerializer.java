@@ -0,0 +1,148 @@
+package com.sky.cache;
+
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.jsontype.BasicPolymorphicTypeValidator;
+import com.fasterxml.jackson.databind.jsontype.PolymorphicTypeValidator;
+import com.sky.json.JacksonObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.support.NullValue;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * redis value序列化器，替换默认的JDK序列化
+ * json：基于项目的JacksonObjectMapper，写入类型信息，直接保存json
+ * compact：json前加1个字节的头，超过阈值时gzip压缩
+ * 读取时根据首字节判断格式，两种格式都能读取，切换格式时不需要清空redis
+ * 升级前JDK序列化的数据不再反序列化（会绕过类型白名单），当作缓存未命中，重新查询后被新格式覆盖
+ */
+@Slf4j
+public class RedisValueSerializer implements RedisSerializer<Object> {
+
+    public static final String CODEC_JSON = "json";
+    public static final String CODEC_COMPACT = "compact";
+
+    //compact格式的头：未压缩的json、gzip压缩的json
+    private static final byte HEADER_PLAIN = 0x01;
+    private static final byte HEADER_GZIP = 0x02;
+    //JDK序列化数据的魔数 0xACED
+    private static final byte JDK_MAGIC_0 = (byte) 0xAC;
+    private static final byte JDK_MAGIC_1 = (byte) 0xED;
+
+    //反序列化时只允许还原项目自己的类和常用的jdk类型，redis中被写入其他类型时直接失败，避免任意类反序列化
+    private static final PolymorphicTypeValidator TYPE_VALIDATOR = BasicPolymorphicTypeValidator.builder()
+            .allowIfSubType("com.sky.")
+            .allowIfSubType("java.util.")
+            .allowIfSubType("java.math.")
+            .allowIfSubType("java.time.")
+            //spring cache缓存null时保存的占位对象
+            .allowIfSubType(NullValue.class)
+            .build();
+
+    private final GenericJackson2JsonRedisSerializer jsonSerializer;
+    private final boolean compact;
+    //compact格式下超过该字节数才压缩，小数据压缩后反而更大
+    private final int compressThreshold;
+
+    public RedisValueSerializer(String codec, int compressThreshold) {
+        ObjectMapper objectMapper = new JacksonObjectMapper();
+        //写入类型信息，反序列化时还原成原来的类型，例如List<DishVO>、Result<List<Setmeal>>
+        objectMapper.activateDefaultTyping(TYPE_VALIDATOR, ObjectMapper.DefaultTyping.NON_FINAL, JsonTypeInfo.As.PROPERTY);
+        //spring cache缓存null时使用的NullValue需要单独注册序列化器
+        GenericJackson2JsonRedisSerializer.registerNullValueSerializer(objectMapper, null);
+        this.jsonSerializer = new GenericJackson2JsonRedisSerializer(objectMapper);
+        this.compact = CODEC_COMPACT.equals(codec);
+        this.compressThreshold = compressThreshold;
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value == null) {
+            return new byte[0];
+        }
+        byte[] json = jsonSerializer.serialize(value);
+        if (!compact) {
+            return json;
+        }
+        if (json.length <= compressThreshold) {
+            return withHeader(HEADER_PLAIN, json);
+        }
+        return withHeader(HEADER_GZIP, gzip(json));
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        //升级前JDK序列化的数据，当作未命中
+        if (bytes.length > 1 && bytes[0] == JDK_MAGIC_0 && bytes[1] == JDK_MAGIC_1) {
+            log.debug("忽略JDK序列化的缓存数据，按未命中处理");
+            return null;
+        }
+        if (bytes[0] == HEADER_PLAIN) {
+            return fromJson(withoutHeader(bytes));
+        }
+        if (bytes[0] == HEADER_GZIP) {
+            return fromJson(gunzip(withoutHeader(bytes)));
+        }
+        //没有头的就是json格式
+        return fromJson(bytes);
+    }
+
+    /**
+     * json反序列化，spring cache用 == NullValue.INSTANCE 判断缓存的null，json还原出的NullValue需要换成单例
+     *
+     * @param json
+     * @return
+     */
+    private Object fromJson(byte[] json) {
+        Object value = jsonSerializer.deserialize(json);
+        return value instanceof NullValue ? NullValue.INSTANCE : value;
+    }
+
+    private byte[] withHeader(byte header, byte[] body) {
+        byte[] bytes = new byte[body.length + 1];
+        bytes[0] = header;
+        System.arraycopy(body, 0, bytes, 1, body.length);
+        return bytes;
+    }
+
+    private byte[] withoutHeader(byte[] bytes) {
+        byte[] body = new byte[bytes.length - 1];
+        System.arraycopy(bytes, 1, body, 0, body.length);
+        return body;
+    }
+
+    private byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        } catch (IOException e) {
+            throw new SerializationException("压缩缓存数据失败", e);
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] gunzip(byte[] bytes) {
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 4);
+            byte[] buffer = new byte[4096];
+            int len;
+            while ((len = gzip.read(buffer)) != -1) {
+                out.write(buffer, 0, len);
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new SerializationException("解压缓存数据失败", e);
+        }
+    }
+}
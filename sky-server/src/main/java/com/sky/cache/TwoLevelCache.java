@@ -0,0 +1,323 @@
+package com.sky.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 两级缓存，一级是进程内的Caffeine缓存，二级是redis缓存
+ * 读取时先查本地缓存，没有再查redis，redis中有就回填本地缓存；写入和删除时同时操作两级缓存，
+ * 并通过redis频道通知其他节点删除各自的本地缓存，保证各节点最终读到的是redis中的最新数据
+ * redis中的每个key都登记在标签set中：缓存名称标签用于清空整个缓存，key标签（例如 category:分类id）用于跨缓存按分类失效
+ * 缓存未命中时按key合并加载：同一节点内同一个key只有一个线程查询数据库，其他线程等待结果；
+ * 多个节点之间通过redis锁保证只有一个节点查询数据库，其他节点等待redis中出现数据
+ * 开启stale-while-revalidate时，失效的数据在本地保留一段时间，未命中时先返回旧数据，再在后台刷新
+ */
+@Slf4j
+public class TwoLevelCache extends AbstractValueAdaptingCache {
+
+    //等待其他节点加载时，每次查询redis的间隔
+    private static final long LOCK_WAIT_INTERVAL_MILLIS = 50;
+
+    private final String name;
+    //redis中的key前缀，完整的key为 前缀+缓存key
+    private final String keyPrefix;
+    private final com.github.benmanes.caffeine.cache.Cache<String, Object> localCache;
+    private final RedisTemplate redisTemplate;
+    //redis中数据的过期时间，为null表示不过期
+    private final Duration redisTtl;
+    private final TwoLevelCacheManager cacheManager;
+    private final CacheTagIndex tagIndex;
+    //key标签前缀，例如 category:，为null表示只登记缓存名称标签
+    private final String keyTagPrefix;
+    //失效后保留的旧数据，为null表示不开启stale-while-revalidate
+    private final com.github.benmanes.caffeine.cache.Cache<String, Object> staleCache;
+    //正在加载的key，同一个key的其他线程等待这个结果
+    private final ConcurrentMap<String, CompletableFuture<Object>> loadingMap = new ConcurrentHashMap<>();
+    //本地缓存失效的次数，每次删除本地缓存时加1；从redis读取前后不一致说明期间有失效，读到的可能是旧数据，不回填本地缓存
+    private final AtomicLong evictGeneration = new AtomicLong();
+
+    public TwoLevelCache(String name, String keyPrefix, String keyTagPrefix,
+                         com.github.benmanes.caffeine.cache.Cache<String, Object> localCache,
+                         com.github.benmanes.caffeine.cache.Cache<String, Object> staleCache,
+                         RedisTemplate redisTemplate, Duration redisTtl,
+                         TwoLevelCacheManager cacheManager, CacheTagIndex tagIndex) {
+        super(true);
+        this.staleCache = staleCache;
+        this.name = name;
+        this.keyPrefix = keyPrefix;
+        this.keyTagPrefix = keyTagPrefix;
+        this.tagIndex = tagIndex;
+        this.localCache = localCache;
+        this.redisTemplate = redisTemplate;
+        this.redisTtl = redisTtl;
+        this.cacheManager = cacheManager;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return this;
+    }
+
+    public String getKeyPrefix() {
+        return keyPrefix;
+    }
+
+    /**
+     * 先查本地缓存，再查redis，redis命中后回填本地缓存
+     * 查询redis期间收到了失效（本节点删除或其他节点的失效消息）时不回填，避免旧数据一直留在本地缓存中
+     *
+     * @param key
+     * @return
+     */
+    @Override
+    protected Object lookup(Object key) {
+        String cacheKey = toCacheKey(key);
+        Object value = localCache.getIfPresent(cacheKey);
+        if (value != null) {
+            return value;
+        }
+        long generation = evictGeneration.get();
+        value = redisTemplate.opsForValue().get(keyPrefix + cacheKey);
+        if (value != null && evictGeneration.get() == generation) {
+            localCache.put(cacheKey, value);
+        }
+        return value;
+    }
+
+    /**
+     * 查询缓存，未命中时调用valueLoader加载，@Cacheable(sync = true)和菜品缓存都走这个方法
+     *
+     * @param key
+     * @param valueLoader
+     * @return
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper wrapper = get(key);
+        if (wrapper != null) {
+            return (T) wrapper.get();
+        }
+        String cacheKey = toCacheKey(key);
+        //有旧数据时直接返回旧数据，后台刷新
+        if (staleCache != null) {
+            Object staleValue = staleCache.getIfPresent(cacheKey);
+            if (staleValue != null) {
+                try {
+                    cacheManager.getRefreshExecutor().execute(() -> {
+                        try {
+                            load(key, cacheKey, valueLoader);
+                        } catch (Exception e) {
+                            log.error("后台刷新缓存失败：{} {}", name, cacheKey, e);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    //刷新线程忙时本次不刷新，下一次请求再触发
+                    log.warn("后台刷新缓存任务已满：{} {}", name, cacheKey);
+                }
+                return (T) fromStoreValue(staleValue);
+            }
+        }
+        return (T) fromStoreValue(load(key, cacheKey, valueLoader));
+    }
+
+    /**
+     * 按key合并加载，同一个key同时只有一个线程执行加载，其他线程等待并共享结果
+     *
+     * @param key
+     * @param cacheKey
+     * @param valueLoader
+     * @return 缓存中保存的值
+     */
+    private Object load(Object key, String cacheKey, Callable<?> valueLoader) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> loading = loadingMap.putIfAbsent(cacheKey, future);
+        if (loading != null) {
+            try {
+                return loading.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+        try {
+            Object storeValue = loadWithLock(key, cacheKey, valueLoader);
+            future.complete(storeValue);
+            return storeValue;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loadingMap.remove(cacheKey, future);
+        }
+    }
+
+    /**
+     * 获取redis锁后查询数据库，没有获取到锁说明其他节点正在加载，等待redis中出现数据
+     * 等待超过锁的过期时间还没有数据，说明持有锁的节点出了问题，由当前节点自己加载
+     *
+     * @param key
+     * @param cacheKey
+     * @param valueLoader
+     * @return
+     */
+    private Object loadWithLock(Object key, String cacheKey, Callable<?> valueLoader) {
+        CacheLoadLock loadLock = cacheManager.getLoadLock();
+        String redisKey = keyPrefix + cacheKey;
+        String token = UUID.randomUUID().toString();
+        boolean locked = loadLock.tryLock(redisKey, token);
+        if (!locked) {
+            long deadline = System.currentTimeMillis() + loadLock.getLockTimeout().toMillis();
+            while (System.currentTimeMillis() < deadline) {
+                try {
+                    Thread.sleep(LOCK_WAIT_INTERVAL_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                Object value = lookup(key);
+                if (value != null) {
+                    return value;
+                }
+                //锁已经释放但还是没有数据，说明加载失败，抢锁自己加载
+                if (!loadLock.isLocked(redisKey)) {
+                    locked = loadLock.tryLock(redisKey, token);
+                    break;
+                }
+            }
+        }
+        try {
+            //获取锁后再查一次，可能在等待锁的过程中其他节点已经加载完成
+            Object value = lookup(key);
+            if (value != null) {
+                return value;
+            }
+            Object storeValue;
+            try {
+                storeValue = toStoreValue(valueLoader.call());
+            } catch (Exception e) {
+                throw new ValueRetrievalException(key, valueLoader, e);
+            }
+            putStoreValue(cacheKey, storeValue);
+            return storeValue;
+        } finally {
+            if (locked) {
+                loadLock.unlock(redisKey, token);
+            }
+        }
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        putStoreValue(toCacheKey(key), toStoreValue(value));
+    }
+
+    private void putStoreValue(String cacheKey, Object storeValue) {
+        if (redisTtl == null) {
+            redisTemplate.opsForValue().set(keyPrefix + cacheKey, storeValue);
+        } else {
+            redisTemplate.opsForValue().set(keyPrefix + cacheKey, storeValue, redisTtl);
+        }
+        //登记到标签中，失效时按标签找到这个key
+        tagIndex.tag(keyPrefix + cacheKey, tagsOf(cacheKey));
+        localCache.put(cacheKey, storeValue);
+        if (staleCache != null) {
+            staleCache.invalidate(cacheKey);
+        }
+        //其他节点的本地缓存可能是旧数据，通知删除
+        cacheManager.publishEvict(name, cacheKey);
+    }
+
+    @Override
+    public void evict(Object key) {
+        String cacheKey = toCacheKey(key);
+        //先删redis再删本地，避免本地删除后又被回填旧数据
+        tagIndex.unlink(keyPrefix + cacheKey, tagsOf(cacheKey));
+        evictLocal(cacheKey);
+        cacheManager.publishEvict(name, cacheKey);
+    }
+
+    @Override
+    public void clear() {
+        //只删除登记在缓存名称标签下的key，不再用KEYS扫描整个redis
+        tagIndex.unlinkTagged(name);
+        evictLocal(null);
+        cacheManager.publishEvict(name, null);
+    }
+
+    /**
+     * 删除本地缓存，开启stale-while-revalidate时把删除的数据转为旧数据保留
+     * 收到其他节点的失效消息后也调用这个方法，redis已经由发送消息的节点处理过
+     *
+     * @param key 缓存key，为null时清空本地缓存
+     */
+    public void evictLocal(String key) {
+        evictGeneration.incrementAndGet();
+        if (key == null) {
+            if (staleCache != null) {
+                staleCache.putAll(localCache.asMap());
+            }
+            localCache.invalidateAll();
+        } else {
+            if (staleCache != null) {
+                Object value = localCache.getIfPresent(key);
+                if (value != null) {
+                    staleCache.put(key, value);
+                }
+            }
+            localCache.invalidate(key);
+        }
+    }
+
+    /**
+     * 把引入标签之前写入的缓存key登记到标签中
+     */
+    public void indexExistingKeys() {
+        tagIndex.indexExisting(keyPrefix + "*", redisKey -> tagsOf(redisKey.substring(keyPrefix.length())));
+    }
+
+    /**
+     * 计算缓存key需要登记的标签
+     *
+     * @param cacheKey
+     * @return
+     */
+    private List<String> tagsOf(String cacheKey) {
+        List<String> tags = new ArrayList<>();
+        tags.add(name);
+        if (keyTagPrefix != null) {
+            tags.add(keyTagPrefix + cacheKey);
+        }
+        return tags;
+    }
+
+    /**
+     * 本地缓存和消息中统一使用字符串形式的key，Long类型的分类id和字符串类型的分类id对应同一条缓存
+     *
+     * @param key
+     * @return
+     */
+    private String toCacheKey(Object key) {
+        return String.valueOf(key);
+    }
+}
@@ -0,0 +1,207 @@
+package com.sky.cache;
+
+import com.alibaba.fastjson.JSON;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.sky.properties.MenuCacheProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 两级缓存管理器，按缓存名称创建TwoLevelCache，并负责收发缓存失效广播
+ */
+@Slf4j
+public class TwoLevelCacheManager implements CacheManager {
+
+    //当前节点id，用于忽略自己发出的失效消息
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Map<String, TwoLevelCache> cacheMap = new ConcurrentHashMap<>();
+    //指定了redis key前缀的缓存，没有指定的缓存使用 缓存名称:: 作为前缀，和spring cache默认的key规则一致
+    private final Map<String, String> keyPrefixMap = new ConcurrentHashMap<>();
+    //缓存key对应的标签前缀，例如菜品和套餐缓存的key都是分类id，登记到 category:分类id 标签下
+    private final Map<String, String> keyTagPrefixMap = new ConcurrentHashMap<>();
+
+    private final RedisTemplate redisTemplate;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final MenuCacheProperties menuCacheProperties;
+    private final String evictChannel;
+    private final CacheTagIndex tagIndex;
+    private final CacheLoadLock loadLock;
+    //stale-while-revalidate的后台刷新线程池，队列有界，满了就放弃本次刷新
+    private final ThreadPoolExecutor refreshExecutor;
+
+    public TwoLevelCacheManager(RedisTemplate redisTemplate, StringRedisTemplate stringRedisTemplate,
+                                MenuCacheProperties menuCacheProperties, String evictChannel) {
+        this.redisTemplate = redisTemplate;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.menuCacheProperties = menuCacheProperties;
+        this.evictChannel = evictChannel;
+        this.tagIndex = new CacheTagIndex(stringRedisTemplate);
+        this.loadLock = new CacheLoadLock(stringRedisTemplate, Duration.ofSeconds(menuCacheProperties.getLoadLockSeconds()));
+        this.refreshExecutor = new ThreadPoolExecutor(1, menuCacheProperties.getRefreshThreads(),
+                60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(menuCacheProperties.getRefreshQueueSize()), runnable -> {
+            Thread thread = new Thread(runnable, "cache-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public CacheLoadLock getLoadLock() {
+        return loadLock;
+    }
+
+    public ThreadPoolExecutor getRefreshExecutor() {
+        return refreshExecutor;
+    }
+
+    /**
+     * 为缓存指定redis key前缀，需要在第一次使用缓存之前设置
+     *
+     * @param cacheName
+     * @param keyPrefix
+     */
+    public void setKeyPrefix(String cacheName, String keyPrefix) {
+        keyPrefixMap.put(cacheName, keyPrefix);
+    }
+
+    /**
+     * 为缓存指定key标签前缀，需要在第一次使用缓存之前设置
+     *
+     * @param cacheName
+     * @param keyTagPrefix
+     */
+    public void setKeyTagPrefix(String cacheName, String keyTagPrefix) {
+        keyTagPrefixMap.put(cacheName, keyTagPrefix);
+    }
+
+    /**
+     * 删除打了该标签的所有缓存，包括各节点的本地缓存
+     * 例如 category:分类id 会同时删除该分类的菜品缓存和套餐缓存
+     *
+     * @param tag
+     */
+    public void evictByTag(String tag) {
+        Set<String> redisKeys = tagIndex.unlinkTagged(tag);
+        if (redisKeys.isEmpty()) {
+            return;
+        }
+        evictLocalByRedisKeys(redisKeys);
+        CacheEvictMessage message = new CacheEvictMessage(nodeId, null, null);
+        message.setRedisKeys(redisKeys);
+        publish(message);
+    }
+
+    /**
+     * 把引入标签之前写入的缓存key登记到标签中，启动时执行一次
+     *
+     * @param cacheNames
+     */
+    public void indexExistingKeys(String... cacheNames) {
+        for (String cacheName : cacheNames) {
+            try {
+                ((TwoLevelCache) getCache(cacheName)).indexExistingKeys();
+            } catch (Exception e) {
+                log.error("登记已有缓存key失败：{}", cacheName, e);
+            }
+        }
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        return cacheMap.computeIfAbsent(name, this::createCache);
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return Collections.unmodifiableSet(cacheMap.keySet());
+    }
+
+    /**
+     * 广播缓存失效消息
+     *
+     * @param cacheName
+     * @param key       为null时表示清空整个缓存
+     */
+    public void publishEvict(String cacheName, String key) {
+        publish(new CacheEvictMessage(nodeId, cacheName, key));
+    }
+
+    private void publish(CacheEvictMessage message) {
+        try {
+            stringRedisTemplate.convertAndSend(evictChannel, JSON.toJSONString(message));
+        } catch (Exception e) {
+            //广播失败时其他节点的本地缓存会在过期后自动失效
+            log.error("缓存失效消息发送失败：{}", message, e);
+        }
+    }
+
+    /**
+     * 处理其他节点发来的缓存失效消息
+     *
+     * @param message
+     */
+    public void onEvictMessage(CacheEvictMessage message) {
+        if (nodeId.equals(message.getNodeId())) {
+            return;
+        }
+        if (message.getRedisKeys() != null) {
+            evictLocalByRedisKeys(message.getRedisKeys());
+            return;
+        }
+        TwoLevelCache cache = cacheMap.get(message.getCacheName());
+        if (cache != null) {
+            log.debug("收到缓存失效消息：{} {}", message.getCacheName(), message.getKey());
+            cache.evictLocal(message.getKey());
+        }
+    }
+
+    /**
+     * 根据redis key的前缀找到对应的缓存，删除本地缓存
+     *
+     * @param redisKeys
+     */
+    private void evictLocalByRedisKeys(Collection<String> redisKeys) {
+        for (TwoLevelCache cache : cacheMap.values()) {
+            String keyPrefix = cache.getKeyPrefix();
+            for (String redisKey : redisKeys) {
+                if (redisKey.startsWith(keyPrefix)) {
+                    cache.evictLocal(redisKey.substring(keyPrefix.length()));
+                }
+            }
+        }
+    }
+
+    private TwoLevelCache createCache(String name) {
+        String keyPrefix = keyPrefixMap.getOrDefault(name, name + "::");
+        com.github.benmanes.caffeine.cache.Cache<String, Object> localCache = Caffeine.newBuilder()
+                .maximumSize(menuCacheProperties.getLocalMaxSize())
+                .expireAfterWrite(menuCacheProperties.getLocalExpireSeconds(), TimeUnit.SECONDS)
+                .build();
+        Duration redisTtl = menuCacheProperties.getRedisTtlSeconds() > 0
+                ? Duration.ofSeconds(menuCacheProperties.getRedisTtlSeconds()) : null;
+        //开启stale-while-revalidate时，失效的数据在本地保留一段时间
+        com.github.benmanes.caffeine.cache.Cache<String, Object> staleCache = null;
+        if (menuCacheProperties.isStaleWhileRevalidate()) {
+            staleCache = Caffeine.newBuilder()
+                    .maximumSize(menuCacheProperties.getLocalMaxSize())
+                    .expireAfterWrite(menuCacheProperties.getStaleExpireSeconds(), TimeUnit.SECONDS)
+                    .build();
+        }
+        log.info("创建两级缓存：{}，redis key前缀：{}", name, keyPrefix);
+        return new TwoLevelCache(name, keyPrefix, keyTagPrefixMap.get(name), localCache, staleCache,
+                redisTemplate, redisTtl, this, tagIndex);
+    }
+}
@@ -0,0 +1,386 @@
+package com.sky.cart;
+
+import com.alibaba.fastjson.JSON;
+import com.sky.entity.ShoppingCart;
+import com.sky.mapper.ShoppingCartMapper;
+import com.sky.properties.CartProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 基于redis hash的购物车
+ * 每个用户两个hash：cart:用户id 保存商品数量，cart:item:用户id 保存商品的名称、图片、价格等信息，field都是商品key
+ * 商品key由菜品id+口味或套餐id组成，数量用lua脚本原子增减，连续点击也不会产生重复的购物车数据
+ * 数量hash中固定有一个值为0的占位field，表示已经从数据库加载过；数量hash不存在（过期或第一次使用）时先从shopping_cart表加载
+ */
+@Component
+@Slf4j
+public class RedisCartStore {
+
+    //商品数量hash的key前缀
+    private static final String CART_KEY_PREFIX = "cart:";
+    //商品信息hash的key前缀
+    private static final String ITEM_KEY_PREFIX = "cart:item:";
+    //有修改、等待写回数据库的用户id集合
+    private static final String DIRTY_KEY = "cart:dirty";
+
+    //数量hash中表示已从数据库加载过的占位field
+    private static final String LOADED_FIELD = "_";
+    //脚本返回值：购物车还没有从数据库加载
+    private static final long NOT_LOADED = -2;
+    //脚本返回值：商品不在购物车中
+    private static final long NO_ITEM = -1;
+
+    //数量加1，商品信息不存在时用ARGV[2]保存，没有传ARGV[2]时返回-1，由调用方加载商品信息后再调用一次
+    private static final RedisScript<Long> ADD_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('exists', KEYS[1]) == 0 then return -2 end " +
+            "if redis.call('hexists', KEYS[2], ARGV[1]) == 0 then " +
+            "  if #ARGV < 2 then return -1 end " +
+            "  redis.call('hset', KEYS[2], ARGV[1], ARGV[2]) " +
+            "end " +
+            "return redis.call('hincrby', KEYS[1], ARGV[1], 1)", Long.class);
+
+    //数量减1，减到0时同时删除数量和商品信息；商品不存在返回-1
+    private static final RedisScript<Long> SUB_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('exists', KEYS[1]) == 0 then return -2 end " +
+            "if redis.call('hexists', KEYS[1], ARGV[1]) == 0 then return -1 end " +
+            "local number = redis.call('hincrby', KEYS[1], ARGV[1], -1) " +
+            "if number <= 0 then " +
+            "  redis.call('hdel', KEYS[1], ARGV[1]) " +
+            "  redis.call('hdel', KEYS[2], ARGV[1]) " +
+            "end " +
+            "return number", Long.class);
+
+    //购物车不存在时写入从数据库加载的商品，ARGV[1]过期秒数，之后每3个参数为 商品key、数量、商品信息；已存在时不覆盖，返回0
+    private static final RedisScript<Long> LOAD_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('exists', KEYS[1]) == 1 then return 0 end " +
+            "redis.call('hset', KEYS[1], '" + LOADED_FIELD + "', 0) " +
+            "for i = 2, #ARGV, 3 do " +
+            "  redis.call('hset', KEYS[1], ARGV[i], ARGV[i + 1]) " +
+            "  redis.call('hset', KEYS[2], ARGV[i], ARGV[i + 2]) " +
+            "end " +
+            "redis.call('expire', KEYS[1], ARGV[1]) " +
+            "redis.call('expire', KEYS[2], ARGV[1]) " +
+            "return 1", Long.class);
+
+    //下单后从购物车中减去下单的商品数量，减到0时删除；ARGV中每2个参数为 商品key、数量，下单后又加入的商品不受影响
+    private static final RedisScript<Long> REMOVE_SCRIPT = new DefaultRedisScript<>(
+            "for i = 1, #ARGV, 2 do " +
+            "  if redis.call('hexists', KEYS[1], ARGV[i]) == 1 then " +
+            "    local number = redis.call('hincrby', KEYS[1], ARGV[i], -tonumber(ARGV[i + 1])) " +
+            "    if number <= 0 then " +
+            "      redis.call('hdel', KEYS[1], ARGV[i]) " +
+            "      redis.call('hdel', KEYS[2], ARGV[i]) " +
+            "    end " +
+            "  end " +
+            "end " +
+            "return 1", Long.class);
+
+    //清空购物车，只保留占位field，之后不会再从数据库加载已清空的商品
+    private static final RedisScript<Long> CLEAN_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('del', KEYS[1], KEYS[2]) " +
+            "redis.call('hset', KEYS[1], '" + LOADED_FIELD + "', 0) " +
+            "redis.call('expire', KEYS[1], ARGV[1]) " +
+            "return 1", Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private CartProperties cartProperties;
+    @Autowired
+    private ShoppingCartMapper shoppingCartMapper;
+
+    /**
+     * 商品数量加1，商品第一次加入购物车时先保存商品信息
+     *
+     * @param userId
+     * @param dishId
+     * @param setmealId
+     * @param dishFlavor
+     * @param itemLoader 商品不在购物车中时，加载商品信息
+     * @return 加1后的数量
+     */
+    public long add(Long userId, Long dishId, Long setmealId, String dishFlavor, Supplier<ShoppingCart> itemLoader) {
+        String field = itemField(dishId, setmealId, dishFlavor);
+        List<String> keys = Arrays.asList(cartKey(userId), itemKey(userId));
+        Long number = stringRedisTemplate.execute(ADD_SCRIPT, keys, field);
+        if (number != null && number == NOT_LOADED) {
+            load(userId);
+            number = stringRedisTemplate.execute(ADD_SCRIPT, keys, field);
+        }
+        if (number != null && number == NO_ITEM) {
+            //商品第一次加入购物车，商品信息和数量在同一个脚本中写入，和减1脚本之间不会交错
+            number = stringRedisTemplate.execute(ADD_SCRIPT, keys, field, JSON.toJSONString(itemLoader.get()));
+        }
+        touch(userId);
+        return number == null ? 0 : number;
+    }
+
+    /**
+     * 批量加入购物车，用于再来一单，商品信息直接使用传入的数据
+     *
+     * @param userId
+     * @param items
+     */
+    public void addAll(Long userId, List<ShoppingCart> items) {
+        if (items == null || items.isEmpty()) {
+            return;
+        }
+        //购物车不在redis中时先加载数据库中的商品，再在原来的基础上累加
+        if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(cartKey(userId)))) {
+            load(userId);
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            for (ShoppingCart item : items) {
+                String field = itemField(item.getDishId(), item.getSetmealId(), item.getDishFlavor());
+                stringConnection.hSetNX(itemKey(userId), field, JSON.toJSONString(item));
+                stringConnection.hIncrBy(cartKey(userId), field, item.getNumber() == null ? 1 : item.getNumber());
+            }
+            return null;
+        });
+        touch(userId);
+    }
+
+    /**
+     * 商品数量减1，减到0时从购物车中删除
+     *
+     * @param userId
+     * @param dishId
+     * @param setmealId
+     * @param dishFlavor
+     * @return 减1后的数量，商品不在购物车中时返回-1
+     */
+    public long sub(Long userId, Long dishId, Long setmealId, String dishFlavor) {
+        String field = itemField(dishId, setmealId, dishFlavor);
+        List<String> keys = Arrays.asList(cartKey(userId), itemKey(userId));
+        Long number = stringRedisTemplate.execute(SUB_SCRIPT, keys, field);
+        if (number != null && number == NOT_LOADED) {
+            load(userId);
+            number = stringRedisTemplate.execute(SUB_SCRIPT, keys, field);
+        }
+        if (number != null && number >= 0) {
+            touch(userId);
+        }
+        return number == null ? -1 : number;
+    }
+
+    /**
+     * 查询用户的购物车，按加入时间倒序
+     *
+     * @param userId
+     * @return
+     */
+    public List<ShoppingCart> list(Long userId) {
+        List<ShoppingCart> list = read(userId);
+        if (list == null) {
+            load(userId);
+            list = read(userId);
+        }
+        return list == null ? new ArrayList<>() : list;
+    }
+
+    /**
+     * 读取redis中的购物车
+     *
+     * @param userId
+     * @return 购物车还没有从数据库加载时返回null
+     */
+    private List<ShoppingCart> read(Long userId) {
+        //一次管道同时读取数量和商品信息
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            stringConnection.hGetAll(cartKey(userId));
+            stringConnection.hGetAll(itemKey(userId));
+            return null;
+        });
+        Map<String, String> numbers = (Map<String, String>) results.get(0);
+        Map<String, String> items = (Map<String, String>) results.get(1);
+        if (numbers == null || numbers.isEmpty()) {
+            return null;
+        }
+        List<ShoppingCart> list = new ArrayList<>();
+        numbers.forEach((field, number) -> {
+            String item = items == null ? null : items.get(field);
+            int count = Integer.parseInt(number);
+            if (item == null || count <= 0) {
+                return;
+            }
+            ShoppingCart shoppingCart = JSON.parseObject(item, ShoppingCart.class);
+            shoppingCart.setUserId(userId);
+            shoppingCart.setNumber(count);
+            list.add(shoppingCart);
+        });
+        list.sort(Comparator.comparing(ShoppingCart::getCreateTime, Comparator.nullsLast(Comparator.reverseOrder())));
+        return list;
+    }
+
+    /**
+     * 清空用户的购物车，在事务中调用时等事务提交后再清空，下单失败回滚时购物车保留
+     *
+     * @param userId
+     */
+    public void clean(Long userId) {
+        afterCommit(() -> unlink(userId));
+    }
+
+    /**
+     * 下单后从购物车中删除下单的商品，只减去下单时快照中的数量，下单过程中用户新加入的商品保留
+     * 在事务中调用时等事务提交后再删除，下单失败回滚时购物车保留
+     *
+     * @param userId
+     * @param items  下单时的购物车快照
+     */
+    public void remove(Long userId, List<ShoppingCart> items) {
+        if (items == null || items.isEmpty()) {
+            return;
+        }
+        List<String> args = new ArrayList<>();
+        for (ShoppingCart item : items) {
+            args.add(itemField(item.getDishId(), item.getSetmealId(), item.getDishFlavor()));
+            args.add(String.valueOf(item.getNumber()));
+        }
+        afterCommit(() -> {
+            stringRedisTemplate.execute(REMOVE_SCRIPT, Arrays.asList(cartKey(userId), itemKey(userId)), args.toArray());
+            markDirty(userId);
+        });
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private void unlink(Long userId) {
+        stringRedisTemplate.execute(CLEAN_SCRIPT, Arrays.asList(cartKey(userId), itemKey(userId)),
+                String.valueOf(TimeUnit.DAYS.toSeconds(cartProperties.getTtlDays())));
+        markDirty(userId);
+    }
+
+    /**
+     * 从shopping_cart表加载用户的购物车，redis中已有购物车时不覆盖
+     * 开启写回时数据库是redis的副本，直接加载；没有开启时数据库中只有切换到redis之前的旧数据，加载后删除，只迁移一次
+     *
+     * @param userId
+     */
+    private void load(Long userId) {
+        List<ShoppingCart> rows = shoppingCartMapper.list(ShoppingCart.builder().userId(userId).build());
+        //同一个商品可能有多条旧数据，按商品key合并数量
+        Map<String, ShoppingCart> merged = new LinkedHashMap<>();
+        for (ShoppingCart row : rows) {
+            String field = itemField(row.getDishId(), row.getSetmealId(), row.getDishFlavor());
+            ShoppingCart item = merged.get(field);
+            if (item == null) {
+                merged.put(field, row);
+            } else {
+                item.setNumber(item.getNumber() + row.getNumber());
+            }
+        }
+        List<String> args = new ArrayList<>();
+        args.add(String.valueOf(TimeUnit.DAYS.toSeconds(cartProperties.getTtlDays())));
+        merged.forEach((field, item) -> {
+            args.add(field);
+            args.add(String.valueOf(item.getNumber()));
+            item.setId(null);
+            item.setNumber(null);
+            args.add(JSON.toJSONString(item));
+        });
+        Long loaded = stringRedisTemplate.execute(LOAD_SCRIPT, Arrays.asList(cartKey(userId), itemKey(userId)),
+                args.toArray());
+        if (loaded != null && loaded == 1 && !rows.isEmpty() && !cartProperties.isWriteBehind()) {
+            shoppingCartMapper.deleteByUserId(userId);
+        }
+    }
+
+    /**
+     * 取出一批等待写回数据库的用户id
+     *
+     * @param count
+     * @return
+     */
+    public List<Long> popDirtyUsers(int count) {
+        List<String> userIds = stringRedisTemplate.opsForSet().pop(DIRTY_KEY, count);
+        List<Long> list = new ArrayList<>();
+        if (userIds != null) {
+            userIds.forEach(userId -> list.add(Long.valueOf(userId)));
+        }
+        return list;
+    }
+
+    /**
+     * 修改购物车后刷新过期时间，并记录等待写回数据库
+     *
+     * @param userId
+     */
+    private void touch(Long userId) {
+        long ttlDays = cartProperties.getTtlDays();
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            stringConnection.expire(cartKey(userId), TimeUnit.DAYS.toSeconds(ttlDays));
+            stringConnection.expire(itemKey(userId), TimeUnit.DAYS.toSeconds(ttlDays));
+            if (cartProperties.isWriteBehind()) {
+                stringConnection.sAdd(DIRTY_KEY, String.valueOf(userId));
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 记录用户的购物车等待写回数据库，写回失败时重新记录
+     *
+     * @param userId
+     */
+    public void markDirty(Long userId) {
+        if (cartProperties.isWriteBehind()) {
+            stringRedisTemplate.opsForSet().add(DIRTY_KEY, String.valueOf(userId));
+        }
+    }
+
+    /**
+     * 商品key：菜品为 d:菜品id:口味，套餐为 s:套餐id
+     *
+     * @param dishId
+     * @param setmealId
+     * @param dishFlavor
+     * @return
+     */
+    private String itemField(Long dishId, Long setmealId, String dishFlavor) {
+        if (dishId != null) {
+            return "d:" + dishId + ":" + (dishFlavor == null ? "" : dishFlavor);
+        }
+        return "s:" + setmealId;
+    }
+
+    private String cartKey(Long userId) {
+        return CART_KEY_PREFIX + userId;
+    }
+
+    private String itemKey(Long userId) {
+        return ITEM_KEY_PREFIX + userId;
+    }
+}
@@ -0,0 +1,75 @@
+package com.sky.config;
+
+import com.alibaba.fastjson.JSON;
+import com.sky.cache.CacheEvictMessage;
+import com.sky.cache.TwoLevelCacheManager;
+import com.sky.constant.CacheConstant;
+import com.sky.properties.MenuCacheProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 缓存配置类，使用本地Caffeine + redis的两级缓存替换spring cache默认的redis缓存
+ */
+@Configuration
+@Slf4j
+public class CacheConfiguration {
+
+    /**
+     * 创建两级缓存管理器，@Cacheable、@CacheEvict和菜品缓存都通过它读写
+     * 菜品缓存沿用原来的 dish_分类id 作为redis key，套餐缓存沿用spring cache默认的 setmealCache::分类id
+     * @param redisTemplate
+     * @param stringRedisTemplate
+     * @param menuCacheProperties
+     * @return
+     */
+    @Bean
+    public TwoLevelCacheManager cacheManager(RedisTemplate redisTemplate, StringRedisTemplate stringRedisTemplate,
+                                             MenuCacheProperties menuCacheProperties) {
+        log.info("开始创建两级缓存管理器：{}", menuCacheProperties);
+        TwoLevelCacheManager cacheManager = new TwoLevelCacheManager(redisTemplate, stringRedisTemplate,
+                menuCacheProperties, CacheConstant.EVICT_CHANNEL);
+        cacheManager.setKeyPrefix(CacheConstant.DISH_CACHE, CacheConstant.DISH_KEY_PREFIX);
+        //两个缓存的key都是分类id，登记到分类标签下，可以按分类一起失效
+        cacheManager.setKeyTagPrefix(CacheConstant.DISH_CACHE, CacheConstant.CATEGORY_TAG_PREFIX);
+        cacheManager.setKeyTagPrefix(CacheConstant.SETMEAL_CACHE, CacheConstant.CATEGORY_TAG_PREFIX);
+        return cacheManager;
+    }
+
+    /**
+     * 项目启动后，把引入标签之前已经存在的菜品和套餐缓存登记到标签中，保证清空缓存时不会遗漏
+     * @param cacheManager
+     * @return
+     */
+    @Bean
+    public ApplicationRunner cacheTagIndexRunner(TwoLevelCacheManager cacheManager) {
+        return args -> cacheManager.indexExistingKeys(CacheConstant.DISH_CACHE, CacheConstant.SETMEAL_CACHE);
+    }
+
+    /**
+     * 创建redis消息监听容器，订阅缓存失效频道，收到消息后删除本节点的本地缓存
+     * @param redisConnectionFactory
+     * @param cacheManager
+     * @return
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory redisConnectionFactory,
+                                                                       TwoLevelCacheManager cacheManager) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        container.addMessageListener((message, pattern) -> {
+            String body = new String(message.getBody(), StandardCharsets.UTF_8);
+            cacheManager.onEvictMessage(JSON.parseObject(body, CacheEvictMessage.class));
+        }, new ChannelTopic(CacheConstant.EVICT_CHANNEL));
+        return container;
+    }
+}
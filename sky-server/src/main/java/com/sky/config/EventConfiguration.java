@@ -0,0 +1,36 @@
+package com.sky.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * 订单事件线程池配置，监听器在这个线程池中异步处理事件，不占用业务请求线程
+ */
+@Configuration
+@EnableAsync
+@Slf4j
+public class EventConfiguration {
+
+    public static final String ORDER_EVENT_EXECUTOR = "orderEventExecutor";
+
+    /**
+     * 有界队列，队列满时丢弃事件并记录日志，推送和计数丢失不影响订单数据
+     *
+     * @return
+     */
+    @Bean(ORDER_EVENT_EXECUTOR)
+    public ThreadPoolTaskExecutor orderEventExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(4);
+        executor.setMaxPoolSize(4);
+        executor.setQueueCapacity(2000);
+        executor.setThreadNamePrefix("order-event-");
+        executor.setRejectedExecutionHandler((runnable, pool) -> log.warn("订单事件队列已满，丢弃事件"));
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(10);
+        return executor;
+    }
+}
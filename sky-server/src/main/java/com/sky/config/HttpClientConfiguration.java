@@ -0,0 +1,32 @@
+package com.sky.config;
+
+import com.sky.properties.HttpClientProperties;
+import com.sky.utils.HttpClientUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+/**
+ * HttpClient连接池配置类，按配置创建HttpClientUtil共用的连接池，应用关闭时释放连接
+ */
+@Configuration
+@Slf4j
+public class HttpClientConfiguration {
+
+    @Autowired
+    private HttpClientProperties httpClientProperties;
+
+    @PostConstruct
+    public void init() {
+        log.info("创建HttpClient连接池：{}", httpClientProperties);
+        HttpClientUtil.configure(httpClientProperties);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        HttpClientUtil.shutdown();
+    }
+}
@@ -1,5 +1,7 @@
 package com.sky.config;
 
+import com.sky.cache.RedisValueSerializer;
+import com.sky.properties.MenuCacheProperties;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -23,13 +25,29 @@ public class RedisConfiguration {
      * @return
      */
     @Bean
-    public RedisTemplate redisTemplate(RedisConnectionFactory redisConnectionFactory){
+    public RedisTemplate redisTemplate(RedisConnectionFactory redisConnectionFactory, RedisValueSerializer redisValueSerializer){
         log.info("开始创建redis模板对象...");
         RedisTemplate redisTemplate = new RedisTemplate();
         //设置redis的连接工厂对象，该对象不用自己创建，因为starter依赖会创建好放到spring容器中
         redisTemplate.setConnectionFactory(redisConnectionFactory);
         //设置redis key的序列化器，自己创建Template对象主要目的就是为了设置键的序列化器，因为默认序列化器会造成乱码问题
         redisTemplate.setKeySerializer(new StringRedisSerializer());
+        //设置redis value的序列化器，不再使用默认的JDK序列化，缓存的菜品、套餐数据体积更小，读取更快
+        redisTemplate.setValueSerializer(redisValueSerializer);
+        redisTemplate.setHashKeySerializer(new StringRedisSerializer());
+        redisTemplate.setHashValueSerializer(redisValueSerializer);
         return redisTemplate;
     }
+
+    /**
+     * 创建redis value序列化器，格式通过 sky.cache.codec 配置，json或compact
+     * 原来用JDK序列化写入的数据按缓存未命中处理，重新查询后写入新格式
+     * @param menuCacheProperties
+     * @return
+     */
+    @Bean
+    public RedisValueSerializer redisValueSerializer(MenuCacheProperties menuCacheProperties) {
+        log.info("创建redis value序列化器：{}，压缩阈值：{}", menuCacheProperties.getCodec(), menuCacheProperties.getCompressThreshold());
+        return new RedisValueSerializer(menuCacheProperties.getCodec(), menuCacheProperties.getCompressThreshold());
+    }
 }
@@ -1,9 +1,16 @@
 package com.sky.config;
 
+import com.sky.websocket.WebSocketServer;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.web.socket.server.standard.ServerEndpointExporter;
 
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+
 /**
  * @author yixin
  * @date 2025/6/6
@@ -12,6 +19,21 @@ import org.springframework.web.socket.server.standard.ServerEndpointExporter;
 @Configuration
 public class WebSocketConfiguration {
 
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+    @Autowired
+    private WebSocketServer webSocketServer;
+
+    /**
+     * 订阅群发频道，任意节点发布的消息都发给连接在本节点的客户端
+     */
+    @PostConstruct
+    public void subscribeBroadcast() {
+        redisMessageListenerContainer.addMessageListener((message, pattern) ->
+                webSocketServer.sendToLocalClients(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(WebSocketServer.BROADCAST_CHANNEL));
+    }
+
     @Bean
     public ServerEndpointExporter serverEndpointExporter() {
         return new ServerEndpointExporter();
@@ -1,5 +1,7 @@
 package com.sky.controller.admin;
 
+import com.sky.cache.TwoLevelCacheManager;
+import com.sky.constant.CacheConstant;
 import com.sky.dto.CategoryDTO;
 import com.sky.dto.CategoryPageQueryDTO;
 import com.sky.entity.Category;
@@ -26,6 +28,8 @@ public class CategoryController {
 
     @Autowired
     private CategoryService categoryService;
+    @Autowired
+    private TwoLevelCacheManager cacheManager;
 
     /**
      * 新增分类
@@ -70,6 +74,8 @@ public class CategoryController {
     public Result<String> deleteById(Long id){
         log.info("删除分类：{}", id);
         categoryService.deleteById(id);
+        //按分类标签一起删除该分类的菜品缓存和套餐缓存
+        cacheManager.evictByTag(CacheConstant.CATEGORY_TAG_PREFIX + id);
         return Result.success();
     }
 
@@ -1,5 +1,6 @@
 package com.sky.controller.admin;
 
+import com.sky.constant.CacheConstant;
 import com.sky.dto.DishDTO;
 import com.sky.dto.DishPageQueryDTO;
 import com.sky.entity.Dish;
@@ -11,11 +12,14 @@ import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
-import java.util.Set;
 
 /**
  * @author yixin
@@ -31,7 +35,7 @@ public class DishController {
     @Autowired
     private DishService dishService;
     @Autowired
-    private RedisTemplate redisTemplate;
+    private CacheManager cacheManager;
 
     /**
      * 新增菜品
@@ -47,7 +51,7 @@ public class DishController {
         dishService.saveWithFlavor(dishDTO);
         //新增菜品后，需要删除当前菜品所属分类的缓存数据
         log.info("清理缓存：{}", dishDTO.getCategoryId());
-        cleanCache("dish_" + dishDTO.getCategoryId());
+        cleanCache(Collections.singletonList(dishDTO.getCategoryId()));
         return Result.success();
     }
 
@@ -78,10 +82,11 @@ public class DishController {
     @ApiOperation("批量删除菜品")
     public Result delete(@RequestParam List<Long> ids) {
         log.info("批量删除菜品：{}", ids);
+        //批量删除影响的菜品可能是多个分类，删除前先查出涉及的分类，只清理这些分类的缓存
+        List<Long> categoryIds = dishService.getCategoryIdsByIds(ids);
         dishService.deleteBatch(ids);
-        //批量删除影响的菜品可能是多个分类，如果要精确删除，要需要去查涉及哪些分类，这里可以直接删除所有菜品缓存
-        log.info("清理缓存：{}", "dish_*");
-        cleanCache("dish_*");
+        log.info("清理缓存：{}", categoryIds);
+        cleanCache(categoryIds);
         return Result.success();
     }
 
@@ -111,11 +116,15 @@ public class DishController {
     @ApiOperation("修改菜品")
     public Result update(@RequestBody DishDTO dishDTO) {
         log.info("修改菜品：{}", dishDTO);
+        //修改操作可能涉及1份菜品缓存或者2份，修改前先查出原来的分类，修改后原分类和新分类的缓存都要清理
+        List<Long> categoryIds = new ArrayList<>(dishService.getCategoryIdsByIds(Collections.singletonList(dishDTO.getId())));
         //这里除了修改菜品，还可能修改菜品口味
         dishService.updateWithFlavors(dishDTO);
-        //修改操作可能涉及1份菜品缓存或者2份，因此直接删除所有菜品缓存
-        log.info("清理缓存：{}", "dish_*");
-        cleanCache("dish_*");
+        if (dishDTO.getCategoryId() != null && !categoryIds.contains(dishDTO.getCategoryId())) {
+            categoryIds.add(dishDTO.getCategoryId());
+        }
+        log.info("清理缓存：{}", categoryIds);
+        cleanCache(categoryIds);
         return Result.success();
     }
 
@@ -130,9 +139,10 @@ public class DishController {
     public Result setStatus(@PathVariable Integer status, Long id) {
         log.info("设置菜品状态：{}", status);
         dishService.startOrStop(status, id);
-        //如果要精确删除分类缓存的菜品，还需要去查这个菜品属于哪个分类，因此直接删除所有菜品缓存
-        log.info("清理缓存：{}", "dish_*");
-        cleanCache("dish_*");
+        //只清理这个菜品所属分类的缓存
+        List<Long> categoryIds = dishService.getCategoryIdsByIds(Collections.singletonList(id));
+        log.info("清理缓存：{}", categoryIds);
+        cleanCache(categoryIds);
         return Result.success();
     }
 
@@ -153,11 +163,14 @@ public class DishController {
     /**
      * 清理缓存中的菜品数据
      * 只在该类中使用，直接设置为私有方法
+     * 同时删除redis和本地缓存，并通知其他节点删除各自的本地缓存
      *
-     * @param pattern
+     * @param categoryIds 需要清理的分类id
      */
-    private void cleanCache(String pattern) {
-        Set keys = redisTemplate.keys(pattern);
-        redisTemplate.delete(keys);
+    private void cleanCache(Collection<Long> categoryIds) {
+        Cache dishCache = cacheManager.getCache(CacheConstant.DISH_CACHE);
+        for (Long categoryId : categoryIds) {
+            dishCache.evict(categoryId);
+        }
     }
 }
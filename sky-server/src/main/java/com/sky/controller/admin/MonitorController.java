@@ -0,0 +1,77 @@
+package com.sky.controller.admin;
+
+import com.sky.event.OrderEventMetrics;
+import com.sky.result.Result;
+import com.sky.task.ScheduledJobRunner;
+import com.sky.utils.HttpClientUtil;
+import com.sky.websocket.WebSocketServer;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * 运行状态监控接口
+ */
+@RestController
+@RequestMapping("/admin/monitor")
+@Api(tags = "运行状态监控接口")
+@Slf4j
+public class MonitorController {
+
+    @Autowired
+    private ScheduledJobRunner scheduledJobRunner;
+    @Autowired
+    private WebSocketServer webSocketServer;
+    @Autowired
+    private OrderEventMetrics orderEventMetrics;
+
+    /**
+     * 查询外部接口调用的HttpClient连接池状态
+     *
+     * @return 总体以及每个目标地址的租用中、空闲、等待连接数
+     */
+    @GetMapping("/http")
+    @ApiOperation("HttpClient连接池状态")
+    public Result<Map<String, Object>> httpPool() {
+        return Result.success(HttpClientUtil.getPoolStats());
+    }
+
+    /**
+     * 查询本节点定时任务的执行统计
+     *
+     * @return 每个任务的执行次数、跳过次数（由其他节点执行）、失败次数、耗时和租约令牌
+     */
+    @GetMapping("/jobs")
+    @ApiOperation("定时任务执行统计")
+    public Result<Map<String, Object>> jobs() {
+        return Result.success(scheduledJobRunner.getMetrics());
+    }
+
+    /**
+     * 查询本节点WebSocket会话的发送队列状态
+     *
+     * @return 每个会话排队中和被丢弃的消息数
+     */
+    @GetMapping("/websocket")
+    @ApiOperation("WebSocket会话状态")
+    public Result<Map<String, Object>> websocket() {
+        return Result.success(webSocketServer.getSessionStats());
+    }
+
+    /**
+     * 查询本节点启动以来各类订单事件的数量
+     *
+     * @return
+     */
+    @GetMapping("/order-events")
+    @ApiOperation("订单事件统计")
+    public Result<Map<String, Long>> orderEvents() {
+        return Result.success(orderEventMetrics.getCounts());
+    }
+}
@@ -4,6 +4,7 @@ import com.sky.dto.OrdersCancelDTO;
 import com.sky.dto.OrdersConfirmDTO;
 import com.sky.dto.OrdersPageQueryDTO;
 import com.sky.dto.OrdersRejectionDTO;
+import com.sky.result.CursorPageResult;
 import com.sky.result.PageResult;
 import com.sky.result.Result;
 import com.sky.service.OrderService;
@@ -41,6 +42,19 @@ public class OrderController {
         return Result.success(pageResult);
     }
 
+    /**
+     * 条件搜索订单，游标分页，翻到多深查询都一样快
+     * @param ordersPageQueryDTO
+     * @param cursor 上一页返回的nextCursor，查询第一页时不传
+     * @return
+     */
+    @GetMapping("/conditionSearchByCursor")
+    @ApiOperation("订单搜索（游标分页）")
+    public Result<CursorPageResult> conditionSearchByCursor(OrdersPageQueryDTO ordersPageQueryDTO, String cursor){
+        log.info("游标分页搜索订单：{}，游标：{}", ordersPageQueryDTO, cursor);
+        return Result.success(orderService.conditionSearchByCursor(ordersPageQueryDTO, cursor));
+    }
+
     /**
      * 各个状态的订单数量统计
      * 查询待接单、待派送、派送中的数量
@@ -1,6 +1,7 @@
 package com.sky.controller.admin;
 
 import com.sky.result.Result;
+import com.sky.service.BusinessStatsService;
 import com.sky.service.ReportService;
 import com.sky.vo.OrderReportVO;
 import com.sky.vo.SalesTop10ReportVO;
@@ -12,7 +13,9 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.servlet.http.HttpServletResponse;
@@ -30,6 +33,8 @@ import java.time.LocalDate;
 public class ReportController {
     @Autowired
     private ReportService reportService;
+    @Autowired
+    private BusinessStatsService businessStatsService;
 
     /**
      * 统计营业额数据
@@ -90,10 +95,38 @@ public class ReportController {
      * 导出运营数据报表
      * 因为这个功能需要将表格下载到客户端，需要一个输出流，输出流通过HttpServletResponse获取，所以在参数中定义一个HttpServletResponse
      * @param response
+     * @param begin 开始日期，可选
+     * @param end 结束日期，可选，和开始日期最多相差366天，包含订单明细时最多31天
+     * @param includeOrders 是否追加订单明细Sheet页
      */
     @GetMapping("/export")
     @ApiOperation("导出运营数据报表")
-    public void export(HttpServletResponse response){
-        reportService.exportBusinessData(response);
+    public void export(HttpServletResponse response,
+                       @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate begin,
+                       @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate end,
+                       @RequestParam(defaultValue = "false") boolean includeOrders){
+        //不传日期时导出最近30天的数据
+        if (begin == null || end == null) {
+            reportService.exportBusinessData(response);
+            return;
+        }
+        log.info("导出运营数据报表，开始日期：{}，结束日期：{}，包含订单明细：{}", begin, end, includeOrders);
+        reportService.exportBusinessData(begin, end, includeOrders, response);
+    }
+
+    /**
+     * 重算指定日期范围内的每日运营数据汇总，用于修正汇总偏差，首次上线的历史数据由建表脚本回填
+     * @param begin 开始日期，必填
+     * @param end 结束日期，必填，和开始日期最多相差366天
+     * @return
+     */
+    @PostMapping("/rebuildStats")
+    @ApiOperation("重算每日运营数据汇总")
+    public Result rebuildStats(
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate begin,
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate end) {
+        log.info("重算每日运营数据汇总，开始日期：{}，结束日期：{}", begin, end);
+        businessStatsService.rebuild(begin, end);
+        return Result.success();
     }
 }
@@ -2,8 +2,8 @@ package com.sky.controller.notify;
 import com.alibaba.druid.support.json.JSONUtils;
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
+import com.sky.order.PayNotifyProcessor;
 import com.sky.properties.WeChatProperties;
-import com.sky.service.OrderService;
 import com.wechat.pay.contrib.apache.httpclient.util.AesUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.http.entity.ContentType;
@@ -26,13 +26,14 @@ import java.util.HashMap;
 @RequestMapping("/notify")
 @Slf4j
 public class PayNotifyController {
-    @Autowired
-    private OrderService orderService;
     @Autowired
     private WeChatProperties weChatProperties;
+    @Autowired
+    private PayNotifyProcessor payNotifyProcessor;
 
     /**
      * 支付成功回调
+     * 先按通知id去重，重复的回调不再解密；解密后按微信支付交易号去重，记录到待处理hash后再应答，由线程池处理
      *
      * @param request
      */
@@ -42,6 +43,14 @@ public class PayNotifyController {
         String body = readData(request);
         log.info("支付成功回调：{}", body);
 
+        //回调通知id，微信重发同一个通知时id不变
+        String notifyId = JSON.parseObject(body).getString("id");
+        if (payNotifyProcessor.isDuplicateNotify(notifyId)) {
+            log.info("重复的支付回调通知：{}", notifyId);
+            responseToWeixin(response);
+            return;
+        }
+
         //数据解密
         String plainText = decryptData(body);
         log.info("解密后的文本：{}", plainText);
@@ -53,8 +62,8 @@ public class PayNotifyController {
         log.info("商户平台订单号：{}", outTradeNo);
         log.info("微信支付交易号：{}", transactionId);
 
-        //业务处理，修改订单状态、来单提醒
-        orderService.paySuccess(outTradeNo);
+        //业务处理，修改订单状态、来单提醒，记录到待处理hash后交给线程池处理，记录失败时抛出异常，微信稍后重发
+        payNotifyProcessor.accept(notifyId, transactionId, outTradeNo);
 
         //给微信响应
         responseToWeixin(response);
@@ -1,5 +1,6 @@
 package com.sky.controller.user;
 
+import com.sky.constant.CacheConstant;
 import com.sky.constant.StatusConstant;
 import com.sky.entity.Dish;
 import com.sky.result.Result;
@@ -9,7 +10,8 @@ import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
@@ -29,36 +31,30 @@ public class DishController {
     @Autowired
     private DishService dishService;
     @Autowired
-    private RedisTemplate redisTemplate;
+    private CacheManager cacheManager;
 
 
     /**
      * 根据分类id查询菜品
      * 使用redis一定要注意数据一致性
+     * 菜品缓存是两级缓存，先查本地缓存，再查redis中 dish_分类id 的数据，都没有才查询数据库
      * @param categoryId
      * @return
      */
     @GetMapping("/list")
     @ApiOperation("根据分类id查询菜品")
     public Result<List<DishVO>> list(Long categoryId) {
-        log.info("查询redis中菜品：{}", categoryId);
-        //构造redis中的key，规则dish_分类id
-        String key = "dish_" + categoryId;
-        //查询redis中是否存在菜品数据，放进去的是什么类型，取出来的就是什么类型
-        List<DishVO> list = (List<DishVO>) redisTemplate.opsForValue().get(key);
-        if (list != null && list.size() > 0) {
-            //如果存在，则直接返回
-            return Result.success(list);
-        }
-        //如果不存在，则查询数据库，将数据缓存到redis中
-        //构造查询条件
-        Dish dish = new Dish();
-        dish.setCategoryId(categoryId);
-        dish.setStatus(StatusConstant.ENABLE);//查询起售中的菜品
-        //查询数据库，将数据缓存到redis中
-        log.info("菜品不在redis中，查询数据库，并存入redis中");
-        list = dishService.listWithFlavor(dish);
-        redisTemplate.opsForValue().set(key, list);
+        log.info("查询缓存中菜品：{}", categoryId);
+        Cache dishCache = cacheManager.getCache(CacheConstant.DISH_CACHE);
+        List<DishVO> list = dishCache.get(categoryId, () -> {
+            //如果不存在，则查询数据库，将数据放入缓存中
+            //构造查询条件
+            Dish dish = new Dish();
+            dish.setCategoryId(categoryId);
+            dish.setStatus(StatusConstant.ENABLE);//查询起售中的菜品
+            log.info("菜品不在缓存中，查询数据库，并存入缓存中");
+            return dishService.listWithFlavor(dish);
+        });
         return Result.success(list);
     }
 }
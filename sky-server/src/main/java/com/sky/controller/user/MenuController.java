@@ -0,0 +1,76 @@
+package com.sky.controller.user;
+
+import com.sky.cache.MenuSnapshot;
+import com.sky.service.MenuService;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * 用户端菜单快照接口
+ */
+@RestController
+@RequestMapping("/user/menu")
+@Slf4j
+@Api(tags = "C端-菜单快照接口")
+public class MenuController {
+    @Autowired
+    private MenuService menuService;
+
+    /**
+     * 查询完整菜单：分类、分类下的菜品（含口味）和套餐（含套餐中的菜品），一次请求代替分类、菜品、套餐的多次请求
+     * 响应带强ETag，客户端带上If-None-Match请求时，菜单没有变化直接返回304
+     * 响应内容已经序列化好，直接写入输出流，不再经过消息转换器
+     * @param request
+     * @param response
+     */
+    @GetMapping
+    @ApiOperation("查询完整菜单")
+    public void menu(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        MenuSnapshot snapshot = menuService.getSnapshot();
+        response.setHeader(HttpHeaders.ETAG, snapshot.getEtag());
+        //客户端可以缓存，但每次使用前都要带ETag确认
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+        if (matches(request.getHeader(HttpHeaders.IF_NONE_MATCH), snapshot.getEtag())) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        byte[] body = snapshot.getBody();
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+        response.setContentLength(body.length);
+        ServletOutputStream out = response.getOutputStream();
+        out.write(body);
+        out.flush();
+    }
+
+    /**
+     * 判断If-None-Match中是否包含当前ETag，可能是逗号分隔的多个ETag或者*
+     * @param ifNoneMatch
+     * @param etag
+     * @return
+     */
+    private boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            if (value.equals("*") || value.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -2,10 +2,12 @@ package com.sky.controller.user;
 
 import com.sky.dto.OrdersPaymentDTO;
 import com.sky.dto.OrdersSubmitDTO;
+import com.sky.result.CursorPageResult;
 import com.sky.result.PageResult;
 import com.sky.result.Result;
 import com.sky.service.OrderService;
 import com.sky.vo.OrderPaymentVO;
+import com.sky.vo.OrderPlacementVO;
 import com.sky.vo.OrderSubmitVO;
 import com.sky.vo.OrderVO;
 import io.swagger.annotations.Api;
@@ -42,6 +44,17 @@ public class OrderController {
         return Result.success(orderSubmitVO);
     }
 
+    /**
+     * 查询异步下单的处理结果，状态不再是下单中时说明下单完成或失败
+     * @param id 订单id
+     * @return Result<OrderPlacementVO>
+     */
+    @GetMapping("/placement/{id}")
+    @ApiOperation("查询下单结果")
+    public Result<OrderPlacementVO> placement(@PathVariable Long id) {
+        return Result.success(orderService.getPlacement(id));
+    }
+
     /**
      * 订单支付
      * 调用微信支付版本
@@ -92,6 +105,20 @@ public class OrderController {
         return Result.success(pageResult);
     }
 
+    /**
+     * 历史订单游标分页查询，用于下拉加载更多
+     * @param cursor 上一页返回的nextCursor，查询第一页时不传
+     * @param pageSize 每页记录数
+     * @param status 订单状态 1待付款 2待接单 3已接单 4派送中 5已完成 6已取消
+     * @return Result<CursorPageResult>
+     */
+    @GetMapping("/historyOrdersByCursor")
+    @ApiOperation("历史订单游标分页查询")
+    public Result<CursorPageResult> pageByCursor(String cursor, int pageSize, Integer status){
+        log.info("历史订单游标分页查询，游标：{}", cursor);
+        return Result.success(orderService.pageQuery4UserByCursor(cursor, pageSize, status));
+    }
+
     /**
      * 根据订单id查询订单详情
      * @param id 订单id
@@ -0,0 +1,35 @@
+package com.sky.event;
+
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+
+/**
+ * 订单生命周期事件，在订单事务提交后由监听器在事件线程池中异步处理
+ */
+@Getter
+@ToString
+public class OrderEvent {
+
+    /**
+     * 事件类型：下单、支付、接单、拒单、取消、派送、完成、催单
+     */
+    public enum Type {
+        PLACED, PAID, CONFIRMED, REJECTED, CANCELLED, DELIVERED, COMPLETED, REMINDED
+    }
+
+    private final Type type;
+    //订单id
+    private final Long orderId;
+    //订单号，调用方手上没有订单号时为null
+    private final String orderNumber;
+    //事件发生时间
+    private final LocalDateTime time = LocalDateTime.now();
+
+    public OrderEvent(Type type, Long orderId, String orderNumber) {
+        this.type = type;
+        this.orderId = orderId;
+        this.orderNumber = orderNumber;
+    }
+}
@@ -0,0 +1,43 @@
+package com.sky.event;
+
+import com.sky.config.EventConfiguration;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 订单事件计数，统计本节点启动以来各类订单事件的数量
+ */
+@Component
+public class OrderEventMetrics {
+
+    private final Map<OrderEvent.Type, AtomicLong> counters = new EnumMap<>(OrderEvent.Type.class);
+
+    public OrderEventMetrics() {
+        for (OrderEvent.Type type : OrderEvent.Type.values()) {
+            counters.put(type, new AtomicLong());
+        }
+    }
+
+    @Async(EventConfiguration.ORDER_EVENT_EXECUTOR)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrderEvent(OrderEvent event) {
+        counters.get(event.getType()).incrementAndGet();
+    }
+
+    /**
+     * 各类事件的数量
+     *
+     * @return
+     */
+    public Map<String, Long> getCounts() {
+        Map<String, Long> map = new LinkedHashMap<>();
+        counters.forEach((type, count) -> map.put(type.name(), count.get()));
+        return map;
+    }
+}
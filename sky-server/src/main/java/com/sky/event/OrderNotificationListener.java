@@ -0,0 +1,49 @@
+package com.sky.event;
+
+import com.alibaba.fastjson.JSON;
+import com.sky.websocket.WebSocketServer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import com.sky.config.EventConfiguration;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 订单事件的WebSocket推送：支付成功时来单提醒，用户催单时催单提醒
+ */
+@Component
+@Slf4j
+public class OrderNotificationListener {
+
+    @Autowired
+    private WebSocketServer webSocketServer;
+
+    /**
+     * 事务提交后在事件线程池中推送，没有事务时（如催单）直接推送
+     * 前后端约定，服务端发送的数据格式为json，字段包括：type、orderId、content
+     * type为消息类型：1.来单提醒     2.客户催单
+     *
+     * @param event
+     */
+    @Async(EventConfiguration.ORDER_EVENT_EXECUTOR)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrderEvent(OrderEvent event) {
+        int type;
+        if (event.getType() == OrderEvent.Type.PAID) {
+            type = 1;
+        } else if (event.getType() == OrderEvent.Type.REMINDED) {
+            type = 2;
+        } else {
+            return;
+        }
+        Map<String, Object> map = new HashMap<>();
+        map.put("type", type);
+        map.put("orderId", event.getOrderId());
+        map.put("content", "订单号：" + event.getOrderNumber());
+        webSocketServer.sendToAllClient(JSON.toJSONString(map));
+    }
+}
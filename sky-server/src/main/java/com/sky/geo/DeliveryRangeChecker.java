@@ -0,0 +1,205 @@
+package com.sky.geo;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.sky.entity.AddressBook;
+import com.sky.exception.OrderBusinessException;
+import com.sky.properties.GeoProperties;
+import com.sky.utils.HttpClientUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 配送范围校验，调用百度地图API的结果都做缓存
+ * 店铺坐标启动时查询一次保存在内存中，用户地址坐标按地址簿字段缓存，路线距离按坐标对缓存
+ * 查路线前先用直线距离预判，明显在范围内或超出范围的地址不再调用路线规划
+ */
+@Component
+@Slf4j
+public class DeliveryRangeChecker {
+
+    private static final String GEOCODING_URL = "https://api.map.baidu.com/geocoding/v3";
+    private static final String DRIVING_URL = "https://api.map.baidu.com/directionlite/v1/driving";
+    //地址坐标缓存的key前缀，后面是规范化后地址的md5
+    private static final String ADDRESS_KEY_PREFIX = "geo:addr:";
+    //路线距离缓存的key前缀，后面是店铺坐标和用户坐标
+    private static final String ROUTE_KEY_PREFIX = "geo:route:";
+    //地球平均半径（米）
+    private static final double EARTH_RADIUS = 6371000;
+
+    @Value("${sky.shop.address}")
+    private String shopAddress;
+    @Value("${sky.baidu.ak}")
+    private String ak;
+    @Autowired
+    private GeoProperties geoProperties;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    //店铺坐标，格式为 纬度,经度
+    private volatile String shopLatLng;
+
+    /**
+     * 启动时解析店铺坐标，失败时不影响启动，第一次下单时再重试
+     */
+    @PostConstruct
+    public void init() {
+        try {
+            getShopLatLng();
+            log.info("店铺坐标：{}", shopLatLng);
+        } catch (Exception e) {
+            log.warn("启动时解析店铺地址失败：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 检查用户的收货地址是否超出配送范围，超出时抛出异常
+     *
+     * @param addressBook
+     */
+    public void check(AddressBook addressBook) {
+        String shop = getShopLatLng();
+        String user = getUserLatLng(addressBook);
+        //直线距离预判，路线距离不会小于直线距离，一般也不会超过直线距离的detourFactor倍
+        double straight = haversine(shop, user);
+        if (straight > geoProperties.getMaxDistance()) {
+            log.info("直线距离{}米，超出配送范围", (int) straight);
+            throw new OrderBusinessException("超出配送范围");
+        }
+        if (straight * geoProperties.getDetourFactor() <= geoProperties.getMaxDistance()) {
+            log.info("直线距离{}米，在配送范围内", (int) straight);
+            return;
+        }
+        if (getRouteDistance(shop, user) > geoProperties.getMaxDistance()) {
+            //配送距离超过最大配送距离
+            throw new OrderBusinessException("超出配送范围");
+        }
+    }
+
+    /**
+     * 获取店铺坐标，只查询一次
+     *
+     * @return
+     */
+    private String getShopLatLng() {
+        if (shopLatLng == null) {
+            synchronized (this) {
+                if (shopLatLng == null) {
+                    shopLatLng = geocode(shopAddress, "店铺地址解析失败");
+                }
+            }
+        }
+        return shopLatLng;
+    }
+
+    /**
+     * 获取用户收货地址的坐标，先查redis缓存
+     *
+     * @param addressBook
+     * @return
+     */
+    private String getUserLatLng(AddressBook addressBook) {
+        String address = addressBook.getCityName() + addressBook.getDistrictName() + addressBook.getDetail();
+        //省市区和详细地址规范化后作为缓存key，同一个地址只解析一次
+        String normalized = normalize(addressBook.getProvinceName()) + "|" + normalize(addressBook.getCityName())
+                + "|" + normalize(addressBook.getDistrictName()) + "|" + normalize(addressBook.getDetail());
+        String key = ADDRESS_KEY_PREFIX + DigestUtils.md5DigestAsHex(normalized.getBytes(StandardCharsets.UTF_8));
+        String latLng = stringRedisTemplate.opsForValue().get(key);
+        if (latLng == null) {
+            latLng = geocode(address, "收货地址解析失败");
+            stringRedisTemplate.opsForValue().set(key, latLng, geoProperties.getAddressTtlDays(), TimeUnit.DAYS);
+        }
+        return latLng;
+    }
+
+    /**
+     * 获取驾车路线距离（米），先查redis缓存
+     *
+     * @param origin
+     * @param destination
+     * @return
+     */
+    private int getRouteDistance(String origin, String destination) {
+        String key = ROUTE_KEY_PREFIX + origin + ":" + destination;
+        String cached = stringRedisTemplate.opsForValue().get(key);
+        if (cached != null) {
+            return Integer.parseInt(cached);
+        }
+        Map<String, String> map = new HashMap<>();
+        map.put("origin", origin);
+        map.put("destination", destination);
+        map.put("steps_info", "0");
+        map.put("ak", ak);
+        //路线规划
+        JSONObject jsonObject = JSON.parseObject(HttpClientUtil.doGet(DRIVING_URL, map));
+        if (jsonObject == null || !"0".equals(jsonObject.getString("status"))) {
+            throw new OrderBusinessException("配送路线规划失败");
+        }
+        //数据解析
+        JSONArray routes = jsonObject.getJSONObject("result").getJSONArray("routes");
+        int distance = routes.getJSONObject(0).getIntValue("distance");
+        stringRedisTemplate.opsForValue().set(key, String.valueOf(distance), geoProperties.getRouteTtlDays(), TimeUnit.DAYS);
+        return distance;
+    }
+
+    /**
+     * 调用地理编码接口解析地址坐标
+     *
+     * @param address
+     * @param errorMessage 解析失败时的提示
+     * @return 纬度,经度
+     */
+    private String geocode(String address, String errorMessage) {
+        Map<String, String> map = new HashMap<>();
+        map.put("address", address);
+        map.put("output", "json");
+        map.put("ak", ak);
+        JSONObject jsonObject = JSON.parseObject(HttpClientUtil.doGet(GEOCODING_URL, map));
+        if (jsonObject == null || !"0".equals(jsonObject.getString("status"))) {
+            throw new OrderBusinessException(errorMessage);
+        }
+        //数据解析，保留6位小数，相同地址得到相同的路线缓存key
+        JSONObject location = jsonObject.getJSONObject("result").getJSONObject("location");
+        return String.format("%.6f,%.6f", location.getDoubleValue("lat"), location.getDoubleValue("lng"));
+    }
+
+    /**
+     * 用haversine公式计算两个坐标之间的直线距离（米）
+     *
+     * @param from 纬度,经度
+     * @param to   纬度,经度
+     * @return
+     */
+    private double haversine(String from, String to) {
+        String[] a = from.split(",");
+        String[] b = to.split(",");
+        double lat1 = Math.toRadians(Double.parseDouble(a[0]));
+        double lat2 = Math.toRadians(Double.parseDouble(b[0]));
+        double dLat = lat2 - lat1;
+        double dLng = Math.toRadians(Double.parseDouble(b[1]) - Double.parseDouble(a[1]));
+        double h = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(lat1) * Math.cos(lat2) * Math.sin(dLng / 2) * Math.sin(dLng / 2);
+        return 2 * EARTH_RADIUS * Math.asin(Math.sqrt(h));
+    }
+
+    /**
+     * 去掉空白并统一大小写
+     *
+     * @param value
+     * @return
+     */
+    private String normalize(String value) {
+        return value == null ? "" : value.replaceAll("\\s+", "").toLowerCase();
+    }
+}
@@ -0,0 +1,74 @@
+package com.sky.mapper;
+
+import com.sky.entity.DailyBusinessStats;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Select;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 每日运营数据汇总
+ */
+@Mapper
+public interface DailyBusinessStatsMapper {
+
+    /**
+     * 查询日期区间内的汇总数据
+     * @param begin
+     * @param end
+     * @return
+     */
+    @Select("select * from daily_business_stats where stat_date >= #{begin} and stat_date <= #{end} order by stat_date")
+    List<DailyBusinessStats> getByDateRange(LocalDate begin, LocalDate end);
+
+    /**
+     * 订单状态流转时，增量更新订单下单日期对应的汇总数据
+     * 下单日期和金额直接在sql中从订单表读取，不需要先把订单查出来
+     * @param orderId
+     * @param fromStatus 原状态，新下单时为null
+     * @param toStatus 新状态
+     */
+    void applyOrderTransition(Long orderId, Integer fromStatus, Integer toStatus);
+
+    /**
+     * 一批订单发生相同的状态流转时，按下单日期分组后一次增量更新
+     * @param orderIds
+     * @param fromStatus 原状态
+     * @param toStatus 新状态
+     */
+    void applyOrderTransitionBatch(List<Long> orderIds, Integer fromStatus, Integer toStatus);
+
+    /**
+     * 新增用户时，增量更新注册日期对应的新增用户数
+     * @param statDate
+     */
+    @Insert("insert into daily_business_stats (stat_date, new_users, update_time) values (#{statDate}, 1, now()) " +
+            "on duplicate key update new_users = new_users + 1, update_time = now()")
+    void incrementNewUsers(LocalDate statDate);
+
+    /**
+     * 删除日期区间内的汇总数据，重算前调用
+     * @param begin
+     * @param end
+     */
+    @Delete("delete from daily_business_stats where stat_date >= #{begin} and stat_date <= #{end}")
+    void deleteByDateRange(LocalDate begin, LocalDate end);
+
+    /**
+     * 根据订单表重算时间区间内的订单汇总数据
+     * @param begin
+     * @param end
+     */
+    void rebuildOrders(LocalDateTime begin, LocalDateTime end);
+
+    /**
+     * 根据用户表重算时间区间内的新增用户数
+     * @param begin
+     * @param end
+     */
+    void rebuildNewUsers(LocalDateTime begin, LocalDateTime end);
+}
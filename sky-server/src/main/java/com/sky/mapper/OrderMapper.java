@@ -1,11 +1,16 @@
 package com.sky.mapper;
 
 import com.github.pagehelper.Page;
+import com.sky.dto.DailyStatisticsDTO;
 import com.sky.dto.GoodsSalesDTO;
+import com.sky.dto.OrderStatusCountDTO;
 import com.sky.dto.OrdersPageQueryDTO;
 import com.sky.entity.Orders;
+import com.sky.order.OrderTransition;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+import org.apache.ibatis.session.ResultHandler;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -32,12 +37,57 @@ public interface OrderMapper {
     @Select("select * from orders where number = #{orderNumber} and user_id= #{userId}")
     Orders getByNumberAndUserId(String orderNumber, Long userId);
 
+    /**
+     * 根据订单号查询订单，订单号全局唯一
+     * @param orderNumber
+     * @return
+     */
+    @Select("select * from orders where number = #{orderNumber}")
+    Orders getByNumber(String orderNumber);
+
+    /**
+     * 订单仍为待付款、未支付时，修改为已支付、待接单，返回修改的行数
+     * 重复的支付回调或重复点击支付时，只有第一次会修改成功；已取消、下单中的订单不会被修改
+     * @param id
+     * @param checkoutTime
+     * @return
+     */
+    @Update("update orders set status = 2, pay_status = 1, checkout_time = #{checkoutTime} " +
+            "where id = #{id} and pay_status = 0 and status = 1")
+    int updatePaid(Long id, LocalDateTime checkoutTime);
+
+    /**
+     * 订单已不是待付款（超时取消等）却收到了支付成功回调时，支付状态标记为退款，订单状态不变
+     * 下单中的订单随后会变为待付款，不标记退款
+     * @param id
+     * @return 修改的行数，订单已处理过支付结果时为0
+     */
+    @Update("update orders set pay_status = 2 where id = #{id} and pay_status = 0 and status not in (0, 1)")
+    int updateRefundForUnpayable(Long id);
+
     /**
      * 修改订单信息
      * @param orders
      */
     void update(Orders orders);
 
+    /**
+     * 订单状态为fromStatus时才修改为toStatus，返回修改的行数，用于避免并发修改覆盖
+     * @param id
+     * @param fromStatus
+     * @param toStatus
+     * @return
+     */
+    @Update("update orders set status = #{toStatus} where id = #{id} and status = #{fromStatus}")
+    int updateStatus(Long id, Integer fromStatus, Integer toStatus);
+
+    /**
+     * 订单状态为允许的原状态之一时才修改为新状态，同时修改取消原因、拒单原因等字段
+     * @param transition
+     * @return 修改的行数，0表示订单不存在或状态不允许
+     */
+    int updateByIdAndStatusIn(OrderTransition transition);
+
     /**
      * 分页条件查询
      * @param ordersPageQueryDTO
@@ -45,6 +95,16 @@ public interface OrderMapper {
      */
     Page<Orders> pageQuery(OrdersPageQueryDTO ordersPageQueryDTO);
 
+    /**
+     * 游标分页条件查询，查询排在游标之后的订单
+     * @param query 查询条件
+     * @param cursorTime 上一页最后一条订单的下单时间，查询第一页时为null
+     * @param cursorId 上一页最后一条订单的id
+     * @param limit
+     * @return
+     */
+    List<Orders> cursorQuery(OrdersPageQueryDTO query, LocalDateTime cursorTime, Long cursorId, int limit);
+
     /**
      * 根据id查询订单
      * @param id
@@ -54,12 +114,12 @@ public interface OrderMapper {
     Orders getById(Long id);
 
     /**
-     * 根据状态统计订单数量
-     * @param toBeConfirmed
+     * 根据id查询订单并加行锁，事务结束前其他事务不能修改这条订单
+     * @param id
      * @return
      */
-    @Select("select count(id) from orders where status = #{status}")
-    Integer countStatus(Integer toBeConfirmed);
+    @Select("select * from orders where id = #{id} for update")
+    Orders getByIdForUpdate(Long id);
 
     /**
      * 根据订单状态和下单时间查询订单
@@ -69,6 +129,37 @@ public interface OrderMapper {
     @Select("select * from orders where status = #{status} and order_time < #{orderTime}")
     List<Orders> getByStatusAndOrdertimeLT(Integer status, LocalDateTime orderTime);
 
+    /**
+     * 按id顺序查询一批状态为status、下单时间早于orderTime的订单id，并加行锁
+     * @param status
+     * @param orderTime
+     * @param afterId 只查询id大于afterId的订单，用于分批
+     * @param limit 每批最多的数量
+     * @return
+     */
+    @Select("select id from orders where status = #{status} and order_time < #{orderTime} and id > #{afterId} " +
+            "order by id limit #{limit} for update")
+    List<Long> getIdsByStatusAndOrdertimeLT(Integer status, LocalDateTime orderTime, Long afterId, int limit);
+
+    /**
+     * 从一批订单中查询状态仍为status的订单id，并加行锁
+     * @param ids
+     * @param status
+     * @return
+     */
+    List<Long> getIdsByIdsAndStatus(List<Long> ids, Integer status);
+
+    /**
+     * 批量修改订单状态，只修改状态仍为fromStatus的订单
+     * @param ids
+     * @param fromStatus
+     * @param toStatus
+     * @param cancelReason 取消原因，为null时不修改
+     * @param cancelTime 取消时间，为null时不修改
+     * @return
+     */
+    int updateStatusByIds(List<Long> ids, Integer fromStatus, Integer toStatus, String cancelReason, LocalDateTime cancelTime);
+
     /**
      * 根据动态条件查询统计营业额数据
      * @param map
@@ -83,10 +174,36 @@ public interface OrderMapper {
      */
     Integer countByMap(Map map);
 
+    /**
+     * 按订单状态分组统计下单时间区间内的订单数量
+     * @param begin 为null时不限制
+     * @param end 为null时不限制
+     * @return
+     */
+    List<OrderStatusCountDTO> countGroupByStatus(LocalDateTime begin, LocalDateTime end);
+
     /**
      * 查询商品销量排名
      * @param begin
      * @param end
      */
     List<GoodsSalesDTO> getSalesTop10(LocalDateTime begin, LocalDateTime end);
+
+    /**
+     * 按天分组统计时间区间内的订单总数、有效订单数和营业额
+     * 一条sql查出整个区间，没有订单的日期不会出现在结果中
+     * @param begin
+     * @param end
+     * @param status 有效订单对应的状态
+     * @return
+     */
+    List<DailyStatisticsDTO> getDailyStatistics(LocalDateTime begin, LocalDateTime end, Integer status);
+
+    /**
+     * 流式查询时间区间内的订单，逐行交给handler处理，不会把整个结果集加载到内存中
+     * @param begin
+     * @param end
+     * @param handler
+     */
+    void streamByOrderTime(LocalDateTime begin, LocalDateTime end, ResultHandler<Orders> handler);
 }
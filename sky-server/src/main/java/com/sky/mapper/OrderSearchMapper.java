@@ -0,0 +1,29 @@
+package com.sky.mapper;
+
+import org.apache.ibatis.annotations.Mapper;
+
+import java.util.List;
+
+/**
+ * 订单搜索索引，订单号、手机号按3个字符切分后保存在order_search_gram表中
+ */
+@Mapper
+public interface OrderSearchMapper {
+
+    /**
+     * 批量保存一个订单的n-gram，已存在的忽略
+     * @param orderId
+     * @param field 字段 1订单号 2手机号
+     * @param grams
+     */
+    void insertGrams(Long orderId, Integer field, List<String> grams);
+
+    /**
+     * 查询包含全部n-gram的订单id
+     * @param field 字段 1订单号 2手机号
+     * @param grams 关键字切分出的n-gram，已去重
+     * @param limit
+     * @return
+     */
+    List<Long> getOrderIdsByGrams(Integer field, List<String> grams, int limit);
+}
@@ -2,6 +2,7 @@ package com.sky.mapper;
 
 import com.github.pagehelper.Page;
 import com.sky.annotation.AutoFill;
+import com.sky.dto.SetmealDishItemDTO;
 import com.sky.dto.SetmealPageQueryDTO;
 import com.sky.entity.Setmeal;
 import com.sky.enumeration.OperationType;
@@ -94,4 +95,11 @@ public interface SetmealMapper {
      * @return
      */
     Integer countByMap(Map map);
-}
\ No newline at end of file
+
+    /**
+     * 根据套餐id集合批量查询菜品选项，一条sql查出多个套餐的菜品
+     * @param setmealIds
+     * @return
+     */
+    List<SetmealDishItemDTO> getDishItemsBySetmealIds(List<Long> setmealIds);
+}
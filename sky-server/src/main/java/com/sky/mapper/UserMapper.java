@@ -1,9 +1,12 @@
 package com.sky.mapper;
 
+import com.sky.dto.DailyStatisticsDTO;
 import com.sky.entity.User;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Select;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -42,4 +45,12 @@ public interface UserMapper {
      * @return
      */
     Integer countByMap(Map map);
+
+    /**
+     * 按天分组统计时间区间内的新增用户数
+     * @param begin
+     * @param end
+     * @return
+     */
+    List<DailyStatisticsDTO> getDailyNewUsers(LocalDateTime begin, LocalDateTime end);
 }
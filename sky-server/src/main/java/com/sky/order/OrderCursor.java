@@ -0,0 +1,66 @@
+package com.sky.order;
+
+import com.sky.constant.MessageConstant;
+import com.sky.entity.Orders;
+import com.sky.exception.OrderBusinessException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Base64;
+
+/**
+ * 订单列表的分页游标，记录上一页最后一条订单的下单时间和id，编码成不透明的字符串返回给前端
+ */
+public class OrderCursor {
+
+    private final LocalDateTime orderTime;
+    private final Long id;
+
+    public OrderCursor(LocalDateTime orderTime, Long id) {
+        this.orderTime = orderTime;
+        this.id = id;
+    }
+
+    public LocalDateTime getOrderTime() {
+        return orderTime;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    /**
+     * 根据一页的最后一条订单生成游标
+     *
+     * @param orders
+     * @return
+     */
+    public static String encode(Orders orders) {
+        long millis = orders.getOrderTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        String value = millis + ":" + orders.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析前端传回的游标，为空时表示查询第一页，返回null
+     *
+     * @param cursor
+     * @return
+     */
+    public static OrderCursor decode(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int index = value.indexOf(':');
+            LocalDateTime orderTime = LocalDateTime.ofInstant(
+                    Instant.ofEpochMilli(Long.parseLong(value.substring(0, index))), ZoneId.systemDefault());
+            return new OrderCursor(orderTime, Long.valueOf(value.substring(index + 1)));
+        } catch (Exception e) {
+            throw new OrderBusinessException(MessageConstant.ORDER_CURSOR_INVALID);
+        }
+    }
+}
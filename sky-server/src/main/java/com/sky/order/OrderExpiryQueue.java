@@ -0,0 +1,88 @@
+package com.sky.order;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 订单支付超时延迟队列，保存在redis的有序集合中，分数为到期时间的毫秒数
+ * 取出到期订单和从队列中删除在一个lua脚本中完成，多个节点同时消费时同一个订单只会被一个节点取到
+ */
+@Component
+@Slf4j
+public class OrderExpiryQueue {
+
+    private static final String QUEUE_KEY = "order:expiry";
+
+    //取出最多ARGV[2]个到期时间不晚于ARGV[1]的订单id，并从队列中删除
+    //DefaultRedisScript只接收Class，List<String>没有对应的Class对象，通过强转指定返回值的泛型
+    @SuppressWarnings("unchecked")
+    private static final RedisScript<List<String>> POLL_SCRIPT = new DefaultRedisScript<>(
+            "local ids = redis.call('zrangebyscore', KEYS[1], '-inf', ARGV[1], 'limit', 0, tonumber(ARGV[2])) " +
+            "if #ids > 0 then redis.call('zrem', KEYS[1], unpack(ids)) end " +
+            "return ids", (Class<List<String>>) (Class<?>) List.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 订单加入延迟队列，在事务中调用时等事务提交后再加入
+     *
+     * @param orderId
+     * @param dueTime 到期时间
+     */
+    public void schedule(Long orderId, LocalDateTime dueTime) {
+        double score = dueTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        afterCommit(() -> stringRedisTemplate.opsForZSet().add(QUEUE_KEY, String.valueOf(orderId), score));
+    }
+
+    /**
+     * 订单已支付或已取消，从延迟队列中删除，在事务中调用时等事务提交后再删除
+     * 事务回滚时订单仍是待支付，需要保留在队列中，到期后正常取消
+     *
+     * @param orderId
+     */
+    public void remove(Long orderId) {
+        afterCommit(() -> stringRedisTemplate.opsForZSet().remove(QUEUE_KEY, String.valueOf(orderId)));
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * 取出一批已到期的订单id，取出的订单同时从队列中删除
+     *
+     * @param limit 最多取出的数量
+     * @return
+     */
+    public List<Long> pollDue(int limit) {
+        List<String> ids = stringRedisTemplate.execute(POLL_SCRIPT, Collections.singletonList(QUEUE_KEY),
+                String.valueOf(System.currentTimeMillis()), String.valueOf(limit));
+        List<Long> list = new ArrayList<>();
+        if (ids != null) {
+            ids.forEach(id -> list.add(Long.valueOf(id)));
+        }
+        return list;
+    }
+}
@@ -0,0 +1,134 @@
+package com.sky.order;
+
+import com.sky.constant.MessageConstant;
+import com.sky.exception.OrderBusinessException;
+import com.sky.utils.SnowflakeIdGenerator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 订单号生成，每个节点通过redis租约获得一个唯一的雪花算法节点id
+ * 租约由单独的线程定时续期，不受其他定时任务影响；续期失败说明节点id已过期可能被其他节点使用，重新获取新的节点id
+ * 距离上次续期成功超过安全期限时停止生成订单号，避免和接手该节点id的节点生成重复的订单号
+ */
+@Component
+@Slf4j
+public class OrderNumberGenerator {
+
+    //节点id租约key前缀，value为持有租约的节点
+    private static final String WORKER_KEY_PREFIX = "order:worker:";
+    private static final Duration LEASE = Duration.ofSeconds(60);
+    //续期间隔
+    private static final long RENEW_INTERVAL_MILLIS = 20000;
+    //上次续期成功后，在租约过期前留出的安全时间，超过后不再生成订单号
+    private static final long LEASE_SAFETY_MILLIS = 10000;
+    //仍由自己持有时续期
+    private static final RedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('pexpire', KEYS[1], ARGV[2]) else return 0 end",
+            Long.class);
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+
+    //当前节点的标识
+    private final String nodeId = UUID.randomUUID().toString();
+    private SnowflakeIdGenerator idGenerator;
+    //租约有效的截止时间，System.nanoTime()
+    private volatile long leaseValidUntil;
+    private ScheduledExecutorService renewExecutor;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @PostConstruct
+    public void init() {
+        long start = System.nanoTime();
+        idGenerator = new SnowflakeIdGenerator(acquireWorkerId());
+        extendLease(start);
+        log.info("订单号节点id：{}", idGenerator.getWorkerId());
+        renewExecutor = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("order-worker-renew-"));
+        renewExecutor.scheduleWithFixedDelay(this::renew, RENEW_INTERVAL_MILLIS, RENEW_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 生成订单号，19位数字，按时间递增
+     * 只和新订单号之间按字符串比较有序，和13位的旧订单号混在一起时顺序不对，按时间排序使用order_time
+     *
+     * @return
+     */
+    public String nextOrderNumber() {
+        if (System.nanoTime() - leaseValidUntil > 0) {
+            log.error("订单号节点id租约未按时续期，暂停生成订单号：{}", idGenerator.getWorkerId());
+            throw new OrderBusinessException(MessageConstant.ORDER_NUMBER_UNAVAILABLE);
+        }
+        return idGenerator.nextDecimalString();
+    }
+
+    /**
+     * 每20秒续期节点id的租约，redis不可用时记录日志，下次继续尝试
+     */
+    void renew() {
+        long start = System.nanoTime();
+        try {
+            String key = WORKER_KEY_PREFIX + idGenerator.getWorkerId();
+            Long renewed = stringRedisTemplate.execute(RENEW_SCRIPT, Collections.singletonList(key),
+                    nodeId, String.valueOf(LEASE.toMillis()));
+            if (renewed == null || renewed == 0) {
+                long workerId = acquireWorkerId();
+                log.warn("订单号节点id租约已丢失，重新获取：{} -> {}", idGenerator.getWorkerId(), workerId);
+                idGenerator.setWorkerId(workerId);
+            }
+            extendLease(start);
+        } catch (Exception e) {
+            log.error("订单号节点id租约续期失败：{}", idGenerator.getWorkerId(), e);
+        }
+    }
+
+    /**
+     * 按续期请求发出的时间计算租约截止时间，减去安全时间
+     *
+     * @param start
+     */
+    private void extendLease(long start) {
+        leaseValidUntil = start + TimeUnit.MILLISECONDS.toNanos(LEASE.toMillis() - LEASE_SAFETY_MILLIS);
+    }
+
+    @PreDestroy
+    public void release() {
+        renewExecutor.shutdownNow();
+        stringRedisTemplate.execute(RELEASE_SCRIPT,
+                Collections.singletonList(WORKER_KEY_PREFIX + idGenerator.getWorkerId()), nodeId);
+    }
+
+    /**
+     * 从随机位置开始依次尝试，获取一个没有被其他节点持有的节点id
+     *
+     * @return
+     */
+    private long acquireWorkerId() {
+        int start = ThreadLocalRandom.current().nextInt(SnowflakeIdGenerator.MAX_WORKER_ID + 1);
+        for (int i = 0; i <= SnowflakeIdGenerator.MAX_WORKER_ID; i++) {
+            int workerId = (start + i) % (SnowflakeIdGenerator.MAX_WORKER_ID + 1);
+            if (Boolean.TRUE.equals(stringRedisTemplate.opsForValue()
+                    .setIfAbsent(WORKER_KEY_PREFIX + workerId, nodeId, LEASE))) {
+                return workerId;
+            }
+        }
+        throw new IllegalStateException("没有可用的订单号节点id");
+    }
+}
@@ -0,0 +1,117 @@
+package com.sky.order;
+
+import com.sky.entity.Orders;
+import com.sky.mapper.OrderSearchMapper;
+import com.sky.properties.OrderProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 订单号、手机号的n-gram搜索索引
+ * 下单时把订单号和手机号按连续3个字符切分保存，搜索时先根据关键字的n-gram查出候选订单，
+ * 避免 like '%关键字%' 对订单表全表扫描；订单号和手机号下单后不会再修改，只需要在插入订单时维护
+ */
+@Component
+public class OrderSearchIndex {
+
+    //订单号
+    public static final Integer FIELD_NUMBER = 1;
+    //手机号
+    public static final Integer FIELD_PHONE = 2;
+
+    private static final int GRAM_SIZE = 3;
+    //手机尾号的位数
+    private static final int PHONE_SUFFIX_LENGTH = 4;
+
+    @Autowired
+    private OrderSearchMapper orderSearchMapper;
+    @Autowired
+    private OrderProperties orderProperties;
+
+    /**
+     * 保存订单的搜索索引，和订单插入在同一个事务中
+     *
+     * @param orders
+     */
+    public void index(Orders orders) {
+        saveGrams(orders.getId(), FIELD_NUMBER, orders.getNumber());
+        saveGrams(orders.getId(), FIELD_PHONE, orders.getPhone());
+    }
+
+    /**
+     * 根据订单号、手机号关键字查询候选订单id
+     * 返回null表示无法使用索引（没有关键字、关键字少于3个字符、或候选订单太多），调用方直接模糊查询
+     *
+     * @param number 订单号关键字
+     * @param phone  手机号关键字
+     * @return
+     */
+    public List<Long> search(String number, String phone) {
+        List<Long> numberIds = search(FIELD_NUMBER, number);
+        //手机尾号直接用订单表的phone_suffix索引查询，不使用n-gram
+        List<Long> phoneIds = isPhoneSuffix(phone) ? null : search(FIELD_PHONE, phone);
+        if (numberIds == null) {
+            return phoneIds;
+        }
+        if (phoneIds != null) {
+            //两个关键字都有时取交集
+            numberIds.retainAll(new LinkedHashSet<>(phoneIds));
+        }
+        return numberIds;
+    }
+
+    /**
+     * 手机号关键字是否为手机尾号，正好是4位数字时按尾号查询
+     * 4位数字切分出的n-gram区分度太低，候选订单常常超过上限
+     *
+     * @param phone
+     * @return
+     */
+    public static boolean isPhoneSuffix(String phone) {
+        if (phone == null) {
+            return false;
+        }
+        return phone.trim().matches("\\d{" + PHONE_SUFFIX_LENGTH + "}");
+    }
+
+    private List<Long> search(Integer field, String keyword) {
+        List<String> grams = grams(keyword);
+        if (grams.isEmpty()) {
+            return null;
+        }
+        int maxCandidates = orderProperties.getSearchMaxCandidates();
+        //多查一条，判断候选订单是否超过上限
+        List<Long> ids = orderSearchMapper.getOrderIdsByGrams(field, grams, maxCandidates + 1);
+        return ids.size() > maxCandidates ? null : ids;
+    }
+
+    private void saveGrams(Long orderId, Integer field, String value) {
+        List<String> grams = grams(value);
+        if (!grams.isEmpty()) {
+            orderSearchMapper.insertGrams(orderId, field, grams);
+        }
+    }
+
+    /**
+     * 按连续3个字符切分，去掉重复的n-gram；不足3个字符时返回空集合
+     *
+     * @param value
+     * @return
+     */
+    private static List<String> grams(String value) {
+        if (value == null) {
+            return new ArrayList<>();
+        }
+        value = value.trim();
+        Set<String> grams = new LinkedHashSet<>();
+        for (int i = 0; i + GRAM_SIZE <= value.length(); i++) {
+            grams.add(value.substring(i, i + GRAM_SIZE));
+        }
+        return new ArrayList<>(grams);
+    }
+}
@@ -0,0 +1,61 @@
+package com.sky.order;
+
+import com.sky.constant.MessageConstant;
+import com.sky.entity.Orders;
+import com.sky.exception.OrderBusinessException;
+import com.sky.mapper.OrderMapper;
+import com.sky.service.BusinessStatsService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+
+/**
+ * 订单状态机，每次状态流转用一条 status in (允许的原状态) 的update完成，不再先查询订单再判断状态
+ * 根据修改的行数判断是否流转成功，并发操作同一个订单时只有一个会成功；只有流转失败时才查询订单，用于返回准确的错误信息
+ * 允许多个原状态时需要知道流转前的状态，先在事务中用select ... for update锁定订单读取当前状态
+ */
+@Component
+@Slf4j
+public class OrderStateMachine {
+
+    @Autowired
+    private OrderMapper orderMapper;
+    @Autowired
+    private BusinessStatsService businessStatsService;
+
+    /**
+     * 订单从允许的原状态之一流转为orders中的状态，并增量更新每日运营数据汇总
+     * 允许多个原状态时会锁定订单，必须在事务中调用
+     *
+     * @param orders       要修改的字段，id和status必填
+     * @param fromStatuses 允许的原状态
+     * @return 订单流转前的状态
+     */
+    public Integer transition(Orders orders, Integer... fromStatuses) {
+        Integer fromStatus;
+        if (fromStatuses.length == 1) {
+            fromStatus = fromStatuses[0];
+        } else {
+            //锁定订单读取当前状态，事务提交前其他操作不能修改这条订单
+            Orders current = orderMapper.getByIdForUpdate(orders.getId());
+            if (current == null) {
+                throw new OrderBusinessException(MessageConstant.ORDER_NOT_FOUND);
+            }
+            if (!Arrays.asList(fromStatuses).contains(current.getStatus())) {
+                throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
+            }
+            fromStatus = current.getStatus();
+        }
+        if (orderMapper.updateByIdAndStatusIn(new OrderTransition(orders, Arrays.asList(fromStatuses))) == 0) {
+            //流转失败，查询订单区分订单不存在和状态不允许
+            if (orderMapper.getById(orders.getId()) == null) {
+                throw new OrderBusinessException(MessageConstant.ORDER_NOT_FOUND);
+            }
+            throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
+        }
+        businessStatsService.onOrderStatusChanged(orders.getId(), null, fromStatus, orders.getStatus());
+        return fromStatus;
+    }
+}
@@ -0,0 +1,245 @@
+package com.sky.order;
+
+import com.sky.dto.OrderStatusCountDTO;
+import com.sky.mapper.OrderMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 订单状态计数器，保存在redis的hash中，字段为订单状态，值为订单数量
+ * order:status:count:all 为全部订单，order:status:count:yyyy-MM-dd 为当天下单的订单
+ * 订单状态流转的事务提交后原子地加减计数，工作台轮询时直接读取，不再查询订单表；下单日期由调用方传入，
+ * 或从下单时写入redis的订单下单日期索引中读取，更新计数时不查询数据库；
+ * 计数只在hash已存在时加减，hash不存在（redis数据丢失、新的一天）时在读取时按订单表重算，并由定时任务定期校正
+ */
+@Component
+@Slf4j
+public class OrderStatusCounter {
+
+    private static final String KEY_PREFIX = "order:status:count:";
+    private static final String ALL_KEY = KEY_PREFIX + "all";
+    //hash中记录上次校正时间的字段
+    private static final String RECONCILED_FIELD = "reconciledAt";
+    //按天计数保留的天数
+    private static final long DAY_KEY_TTL_DAYS = 2;
+    //订单下单日期索引，下单时写入，保留时间和按天计数相同
+    private static final String ORDER_DATE_KEY_PREFIX = "order:date:";
+
+    //KEYS为全部订单和下单日期的计数，ARGV[1]原状态（新下单时为空串）ARGV[2]新状态 ARGV[3]订单数量
+    private static final RedisScript<Long> TRANSITION_SCRIPT = new DefaultRedisScript<>(
+            "for _, key in ipairs(KEYS) do " +
+            "  if redis.call('exists', key) == 1 then " +
+            "    if ARGV[1] ~= '' then redis.call('hincrby', key, ARGV[1], -tonumber(ARGV[3])) end " +
+            "    redis.call('hincrby', key, ARGV[2], tonumber(ARGV[3])) " +
+            "  end " +
+            "end " +
+            "return 1", Long.class);
+
+    //用订单表的统计结果整体替换计数，ARGV[1]过期秒数（0表示不过期），之后为字段和值
+    private static final RedisScript<Long> REPLACE_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('del', KEYS[1]) " +
+            "for i = 2, #ARGV, 2 do redis.call('hset', KEYS[1], ARGV[i], ARGV[i + 1]) end " +
+            "if tonumber(ARGV[1]) > 0 then redis.call('expire', KEYS[1], tonumber(ARGV[1])) end " +
+            "return 1", Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private OrderMapper orderMapper;
+
+    /**
+     * 订单状态流转后更新计数，在事务中调用时等事务提交后再更新
+     * 下单日期为null时从redis的订单下单日期索引中读取，索引中没有说明订单不是最近两天下单的，只更新全部订单的计数
+     *
+     * @param orderId
+     * @param orderDate  下单日期，调用方没有查询订单时为null
+     * @param fromStatus 原状态，新下单时为null
+     * @param toStatus   新状态
+     */
+    public void onTransition(Long orderId, LocalDate orderDate, Integer fromStatus, Integer toStatus) {
+        afterCommit(() -> {
+            LocalDate date = orderDate;
+            if (fromStatus == null) {
+                //新下单时记录下单日期，后续状态流转不需要再查询订单
+                stringRedisTemplate.opsForValue().set(ORDER_DATE_KEY_PREFIX + orderId, date.toString(),
+                        DAY_KEY_TTL_DAYS, TimeUnit.DAYS);
+            } else if (date == null) {
+                String cached = stringRedisTemplate.opsForValue().get(ORDER_DATE_KEY_PREFIX + orderId);
+                date = cached == null ? null : LocalDate.parse(cached);
+            }
+            applyTransition(date, fromStatus, toStatus, 1);
+        });
+    }
+
+    /**
+     * 一批订单发生相同的状态流转后更新计数，下单日期从redis的订单下单日期索引中批量读取
+     *
+     * @param orderIds
+     * @param fromStatus
+     * @param toStatus
+     */
+    public void onTransitions(List<Long> orderIds, Integer fromStatus, Integer toStatus) {
+        afterCommit(() -> {
+            List<String> keys = new ArrayList<>();
+            orderIds.forEach(id -> keys.add(ORDER_DATE_KEY_PREFIX + id));
+            List<String> dates = stringRedisTemplate.opsForValue().multiGet(keys);
+            //按下单日期分组，不在索引中的订单日期为空串，只更新全部订单的计数
+            Map<String, Long> dateCounts = new HashMap<>();
+            for (int i = 0; i < orderIds.size(); i++) {
+                String date = dates == null || dates.get(i) == null ? "" : dates.get(i);
+                dateCounts.merge(date, 1L, Long::sum);
+            }
+            dateCounts.forEach((date, count) ->
+                    applyTransition(date.isEmpty() ? null : LocalDate.parse(date), fromStatus, toStatus, count));
+        });
+    }
+
+    /**
+     * 查询全部订单中各状态的数量
+     *
+     * @return key为订单状态
+     */
+    public Map<Integer, Integer> getAllCounts() {
+        return getCounts(ALL_KEY, null);
+    }
+
+    /**
+     * 查询今天下单的订单中各状态的数量
+     *
+     * @return key为订单状态
+     */
+    public Map<Integer, Integer> getTodayCounts() {
+        LocalDate today = LocalDate.now();
+        return getCounts(dayKey(today), today);
+    }
+
+    /**
+     * 按订单表重新统计，覆盖全部订单和今天的计数，由定时任务定期调用
+     */
+    public void reconcile() {
+        Map<Integer, Integer> allCounts = getCounts(ALL_KEY, null);
+        Map<Integer, Integer> reconciled = reload(ALL_KEY, null);
+        if (!allCounts.equals(reconciled)) {
+            log.warn("订单状态计数与订单表不一致，已校正，计数：{}，订单表：{}", allCounts, reconciled);
+        }
+        reload(dayKey(LocalDate.now()), LocalDate.now());
+    }
+
+    /**
+     * 读取计数，hash不存在时按订单表统计后写入；redis不可用时直接查询订单表
+     *
+     * @param key
+     * @param date 统计的下单日期，null表示全部订单
+     * @return
+     */
+    private Map<Integer, Integer> getCounts(String key, LocalDate date) {
+        Map<Object, Object> entries;
+        try {
+            entries = stringRedisTemplate.opsForHash().entries(key);
+        } catch (Exception e) {
+            log.error("读取订单状态计数失败，改为查询订单表", e);
+            return toMap(countByStatus(date));
+        }
+        if (entries.isEmpty()) {
+            return reload(key, date);
+        }
+        Map<Integer, Integer> counts = new HashMap<>();
+        entries.forEach((field, value) -> {
+            //计数减到0的状态不返回，和订单表分组统计的结果保持一致
+            if (!RECONCILED_FIELD.equals(field) && !"0".equals(value)) {
+                counts.put(Integer.valueOf(field.toString()), Integer.valueOf(value.toString()));
+            }
+        });
+        return counts;
+    }
+
+    /**
+     * 按订单表统计各状态的数量，整体替换redis中的计数
+     *
+     * @param key
+     * @param date 统计的下单日期，null表示全部订单
+     * @return
+     */
+    private Map<Integer, Integer> reload(String key, LocalDate date) {
+        Map<Integer, Integer> counts = toMap(countByStatus(date));
+        List<String> args = new ArrayList<>();
+        args.add(String.valueOf(date == null ? 0 : TimeUnit.DAYS.toSeconds(DAY_KEY_TTL_DAYS)));
+        counts.forEach((status, count) -> {
+            args.add(String.valueOf(status));
+            args.add(String.valueOf(count));
+        });
+        args.add(RECONCILED_FIELD);
+        args.add(String.valueOf(System.currentTimeMillis()));
+        try {
+            stringRedisTemplate.execute(REPLACE_SCRIPT, Arrays.asList(key), args.toArray());
+        } catch (Exception e) {
+            log.error("写入订单状态计数失败：{}", key, e);
+        }
+        return counts;
+    }
+
+    private List<OrderStatusCountDTO> countByStatus(LocalDate date) {
+        if (date == null) {
+            return orderMapper.countGroupByStatus(null, null);
+        }
+        return orderMapper.countGroupByStatus(LocalDateTime.of(date, LocalTime.MIN), LocalDateTime.of(date, LocalTime.MAX));
+    }
+
+    private void applyTransition(LocalDate orderDate, Integer fromStatus, Integer toStatus, long count) {
+        List<String> keys = orderDate == null ? Collections.singletonList(ALL_KEY) : Arrays.asList(ALL_KEY, dayKey(orderDate));
+        stringRedisTemplate.execute(TRANSITION_SCRIPT, keys,
+                fromStatus == null ? "" : String.valueOf(fromStatus), String.valueOf(toStatus), String.valueOf(count));
+    }
+
+    /**
+     * 事务提交后再更新redis，计数由定时任务定期校正，这里失败不影响订单业务
+     *
+     * @param action
+     */
+    private void afterCommit(Runnable action) {
+        Runnable apply = () -> {
+            try {
+                action.run();
+            } catch (Exception e) {
+                log.error("更新订单状态计数失败", e);
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply.run();
+                }
+            });
+        } else {
+            apply.run();
+        }
+    }
+
+    private static Map<Integer, Integer> toMap(List<OrderStatusCountDTO> list) {
+        Map<Integer, Integer> counts = new HashMap<>();
+        list.forEach(item -> counts.put(item.getStatus(), item.getCount()));
+        return counts;
+    }
+
+    private static String dayKey(LocalDate date) {
+        return KEY_PREFIX + date;
+    }
+}
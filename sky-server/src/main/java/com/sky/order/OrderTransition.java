@@ -0,0 +1,23 @@
+package com.sky.order;
+
+import com.sky.entity.Orders;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 订单状态流转的参数
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderTransition {
+
+    //要修改的字段，id和status必填
+    private Orders orders;
+
+    //允许的原状态
+    private List<Integer> fromStatuses;
+}
@@ -0,0 +1,182 @@
+package com.sky.order;
+
+import com.sky.exception.OrderBusinessException;
+import com.sky.exception.OrderPlacingException;
+import com.sky.properties.OrderProperties;
+import com.sky.service.OrderService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 支付回调处理，微信会重复发送同一个回调，用redis去重后再交给线程池处理
+ * 应答微信之前先把回调记录到待处理hash中，处理成功后才删除；处理失败、队列已满、节点宕机或停机时记录仍然保留，
+ * 由定时任务重新处理，应答后不会丢失支付结果
+ */
+@Component
+@Slf4j
+public class PayNotifyProcessor {
+
+    //回调通知id去重key前缀
+    private static final String NOTIFY_KEY_PREFIX = "pay:notify:";
+    //微信支付交易号去重key前缀
+    private static final String TRANSACTION_KEY_PREFIX = "pay:txn:";
+    //待处理的支付回调，字段为微信支付交易号，值为 商户订单号|接收时间毫秒数
+    private static final String PENDING_KEY = "pay:pending";
+    //处理失败时的最多尝试次数，仍然失败时留给定时任务
+    private static final int MAX_ATTEMPTS = 3;
+    //停机时等待线程池处理完已接收回调的最长时间
+    private static final long SHUTDOWN_WAIT_SECONDS = 30;
+
+    //交易号第一次出现时记录待处理回调，同时写入通知id和交易号的去重标记，三个操作原子执行
+    //KEYS[1]交易号去重key KEYS[2]通知id去重key KEYS[3]待处理hash，ARGV[1]去重标记过期毫秒数 ARGV[2]交易号 ARGV[3]待处理记录
+    private static final RedisScript<Long> ACCEPT_SCRIPT = new DefaultRedisScript<>(
+            "local accepted = 0 " +
+            "if redis.call('set', KEYS[1], '1', 'NX', 'PX', ARGV[1]) then " +
+            "  redis.call('hset', KEYS[3], ARGV[2], ARGV[3]) " +
+            "  accepted = 1 " +
+            "end " +
+            "redis.call('set', KEYS[2], '1', 'PX', ARGV[1]) " +
+            "return accepted", Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private OrderService orderService;
+    @Autowired
+    private OrderProperties orderProperties;
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void init() {
+        executor = new ThreadPoolExecutor(orderProperties.getPayNotifyThreads(), orderProperties.getPayNotifyThreads(),
+                60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(orderProperties.getPayNotifyQueueSize()),
+                new CustomizableThreadFactory("pay-notify-"), new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * 停机时不再接收新任务，等待队列中已接收的回调处理完；超时未处理完的仍在待处理hash中，由其他节点或重启后的定时任务处理
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(SHUTDOWN_WAIT_SECONDS, TimeUnit.SECONDS)) {
+            log.warn("停机时仍有{}个支付回调未处理完，留给定时任务重新处理", executor.getQueue().size());
+        }
+    }
+
+    /**
+     * 回调通知是否已经接收过，已接收的通知不需要再解密
+     *
+     * @param notifyId 回调通知的id，同一个通知重发时id不变，为空时无法判断
+     * @return
+     */
+    public boolean isDuplicateNotify(String notifyId) {
+        return notifyId != null && Boolean.TRUE.equals(stringRedisTemplate.hasKey(NOTIFY_KEY_PREFIX + notifyId));
+    }
+
+    /**
+     * 接收支付成功的回调，记录到待处理hash后交给线程池处理，同一个微信支付交易号只接收一次
+     * 方法正常返回后才能应答微信，redis不可用时抛出异常，由微信稍后重发
+     *
+     * @param notifyId
+     * @param transactionId 微信支付交易号
+     * @param outTradeNo    商户订单号
+     */
+    public void accept(String notifyId, String transactionId, String outTradeNo) {
+        Duration ttl = Duration.ofHours(orderProperties.getPayNotifyDedupeHours());
+        String notifyKey = NOTIFY_KEY_PREFIX + (notifyId == null ? transactionId : notifyId);
+        Long accepted = stringRedisTemplate.execute(ACCEPT_SCRIPT,
+                Arrays.asList(TRANSACTION_KEY_PREFIX + transactionId, notifyKey, PENDING_KEY),
+                String.valueOf(ttl.toMillis()), transactionId, outTradeNo + "|" + System.currentTimeMillis());
+        if (accepted == null || accepted == 0) {
+            log.info("重复的支付回调，交易号：{}", transactionId);
+            return;
+        }
+        try {
+            executor.execute(() -> process(transactionId, outTradeNo));
+        } catch (RejectedExecutionException e) {
+            //已记录到待处理hash中，由定时任务处理
+            log.warn("支付回调处理队列已满，交由定时任务处理，交易号：{}", transactionId);
+        }
+    }
+
+    /**
+     * 重新处理接收时间早于指定秒数、仍未处理成功的回调，由定时任务调用
+     * 修改订单为已支付是条件更新，和线程池同时处理同一个回调也不会重复修改
+     *
+     * @return 本次处理成功的数量
+     */
+    public int processPending() {
+        long deadline = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(orderProperties.getPayNotifyRedriveSeconds());
+        Map<Object, Object> pending = stringRedisTemplate.opsForHash().entries(PENDING_KEY);
+        int processed = 0;
+        for (Map.Entry<Object, Object> entry : pending.entrySet()) {
+            String value = entry.getValue().toString();
+            int index = value.lastIndexOf('|');
+            if (Long.parseLong(value.substring(index + 1)) > deadline) {
+                continue;
+            }
+            if (processOnce(entry.getKey().toString(), value.substring(0, index))) {
+                processed++;
+            }
+        }
+        return processed;
+    }
+
+    /**
+     * 修改订单为已支付，失败时重试，仍然失败时保留待处理记录
+     *
+     * @param transactionId
+     * @param outTradeNo
+     */
+    private void process(String transactionId, String outTradeNo) {
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            if (processOnce(transactionId, outTradeNo)) {
+                return;
+            }
+            try {
+                Thread.sleep(1000L * attempt);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        log.error("支付回调多次处理失败，交由定时任务重新处理，订单号：{}", outTradeNo);
+    }
+
+    private boolean processOnce(String transactionId, String outTradeNo) {
+        try {
+            orderService.paySuccess(outTradeNo);
+            stringRedisTemplate.opsForHash().delete(PENDING_KEY, transactionId);
+            return true;
+        } catch (OrderPlacingException e) {
+            //订单还在下单中，保留待处理记录，稍后重试
+            log.info("支付回调对应的订单还在下单中，稍后重新处理，订单号：{}", outTradeNo);
+            return false;
+        } catch (OrderBusinessException e) {
+            //订单不存在，重试也无法处理，删除记录并记录错误日志，人工核对
+            log.error("支付回调对应的订单不存在，订单号：{}，交易号：{}", outTradeNo, transactionId);
+            stringRedisTemplate.opsForHash().delete(PENDING_KEY, transactionId);
+            return true;
+        } catch (Exception e) {
+            log.error("处理支付回调失败，订单号：{}，交易号：{}", outTradeNo, transactionId, e);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.sky.service;
+
+import com.sky.dto.DailyStatisticsDTO;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 每日运营数据汇总服务
+ */
+public interface BusinessStatsService {
+
+    /**
+     * 按天查询日期区间内的运营数据，每天一条，没有数据的日期补0
+     * @param begin
+     * @param end
+     * @return
+     */
+    List<DailyStatisticsDTO> getDailyStatistics(LocalDate begin, LocalDate end);
+
+    /**
+     * 订单状态流转后，增量更新汇总数据
+     * @param orderId
+     * @param orderDate 下单日期，调用方没有查询订单时为null
+     * @param fromStatus 原状态，新下单时为null
+     * @param toStatus 新状态
+     */
+    void onOrderStatusChanged(Long orderId, LocalDate orderDate, Integer fromStatus, Integer toStatus);
+
+    /**
+     * 一批订单发生相同的状态流转后，增量更新汇总数据
+     * @param orderIds
+     * @param fromStatus 原状态
+     * @param toStatus 新状态
+     */
+    void onOrdersStatusChanged(List<Long> orderIds, Integer fromStatus, Integer toStatus);
+
+    /**
+     * 新增用户后，增量更新汇总数据
+     * @param createTime 用户注册时间
+     */
+    void onUserCreated(LocalDateTime createTime);
+
+    /**
+     * 根据订单表和用户表重算日期区间内的汇总数据，用于纠正偏差，分段在多个事务中执行，一次最多366天
+     * @param begin
+     * @param end
+     */
+    void rebuild(LocalDate begin, LocalDate end);
+}
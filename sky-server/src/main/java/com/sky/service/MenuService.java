@@ -0,0 +1,20 @@
+package com.sky.service;
+
+import com.sky.cache.MenuSnapshot;
+
+/**
+ * 用户端菜单快照
+ */
+public interface MenuService {
+
+    /**
+     * 获取当前版本的菜单快照，同一个版本只构建一次
+     * @return
+     */
+    MenuSnapshot getSnapshot();
+
+    /**
+     * 菜品、套餐、分类修改后递增菜单版本，在事务提交后执行
+     */
+    void bumpVersion();
+}
@@ -1,8 +1,10 @@
 package com.sky.service;
 
 import com.sky.dto.*;
+import com.sky.result.CursorPageResult;
 import com.sky.result.PageResult;
 import com.sky.vo.OrderPaymentVO;
+import com.sky.vo.OrderPlacementVO;
 import com.sky.vo.OrderStatisticsVO;
 import com.sky.vo.OrderSubmitVO;
 import com.sky.vo.OrderVO;
@@ -21,6 +23,20 @@ public interface OrderService {
      */
     OrderSubmitVO submitOrder(OrdersSubmitDTO ordersSubmitDTO);
 
+    /**
+     * 查询异步下单的处理结果
+     * @param id
+     * @return
+     */
+    OrderPlacementVO getPlacement(Long id);
+
+    /**
+     * 取消还在下单中的订单
+     * @param id
+     * @param reason
+     */
+    void cancelPlacement(Long id, String reason);
+
     /**
      * 订单支付
      * @param ordersPaymentDTO
@@ -43,6 +59,15 @@ public interface OrderService {
      */
     PageResult pageQuery4User(int pageNum, int pageSize, Integer status);
 
+    /**
+     * 用户端历史订单游标分页查询
+     * @param cursor 上一页返回的游标，查询第一页时为空
+     * @param pageSize
+     * @param status
+     * @return
+     */
+    CursorPageResult pageQuery4UserByCursor(String cursor, int pageSize, Integer status);
+
     /**
      * 根据订单id查询订单详情
      * @param id
@@ -69,6 +94,14 @@ public interface OrderService {
      */
     PageResult conditionSearch(OrdersPageQueryDTO ordersPageQueryDTO);
 
+    /**
+     * 条件搜索订单，游标分页
+     * @param ordersPageQueryDTO
+     * @param cursor 上一页返回的游标，查询第一页时为空
+     * @return
+     */
+    CursorPageResult conditionSearchByCursor(OrdersPageQueryDTO ordersPageQueryDTO, String cursor);
+
     /**
      * 统计各个状态的订单数量
      * @return
@@ -52,4 +52,13 @@ public interface ReportService {
      * @param response
      */
     void exportBusinessData(HttpServletResponse response);
+
+    /**
+     * 导出指定日期区间的运营数据报表
+     * @param begin
+     * @param end
+     * @param includeOrders 是否追加订单明细
+     * @param response
+     */
+    void exportBusinessData(LocalDate begin, LocalDate end, boolean includeOrders, HttpServletResponse response);
 }
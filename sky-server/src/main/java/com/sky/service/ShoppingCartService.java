@@ -34,4 +34,10 @@ public interface ShoppingCartService {
      * @param shoppingCartDTO
      */
     void sub(ShoppingCartDTO shoppingCartDTO);
+
+    /**
+     * 把redis中用户的购物车写回数据库
+     * @param userId
+     */
+    void writeBack(Long userId);
 }
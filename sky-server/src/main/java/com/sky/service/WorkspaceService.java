@@ -1,11 +1,13 @@
 package com.sky.service;
 
+import com.sky.dto.DailyStatisticsDTO;
 import com.sky.vo.BusinessDataVO;
 import com.sky.vo.DishOverViewVO;
 import com.sky.vo.OrderOverViewVO;
 import com.sky.vo.SetmealOverViewVO;
 
 import java.time.LocalDateTime;
+import java.util.List;
 
 /**
  * @author yixin
@@ -22,6 +24,13 @@ public interface WorkspaceService {
      */
     BusinessDataVO getBusinessData(LocalDateTime begin, LocalDateTime end);
 
+    /**
+     * 根据已经查询出的按天统计数据汇总营业数据，不再访问数据库
+     * @param dailyList
+     * @return
+     */
+    BusinessDataVO getBusinessData(List<DailyStatisticsDTO> dailyList);
+
     /**
      * 查询订单管理数据
      * @return
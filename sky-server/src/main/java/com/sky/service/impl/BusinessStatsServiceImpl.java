@@ -0,0 +1,208 @@
+package com.sky.service.impl;
+
+import com.sky.constant.MessageConstant;
+import com.sky.dto.DailyStatisticsDTO;
+import com.sky.entity.DailyBusinessStats;
+import com.sky.entity.Orders;
+import com.sky.exception.ReportBusinessException;
+import com.sky.mapper.DailyBusinessStatsMapper;
+import com.sky.mapper.OrderMapper;
+import com.sky.mapper.UserMapper;
+import com.sky.order.OrderStatusCounter;
+import com.sky.service.BusinessStatsService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 每日运营数据汇总服务
+ * 已经结束的日期读取汇总表，每天只有一行数据；今天及以后的日期数据还在变化，直接按天分组查询订单表和用户表
+ */
+@Service
+@Slf4j
+public class BusinessStatsServiceImpl implements BusinessStatsService {
+
+    @Autowired
+    private DailyBusinessStatsMapper dailyBusinessStatsMapper;
+    @Autowired
+    private OrderMapper orderMapper;
+    @Autowired
+    private UserMapper userMapper;
+    @Autowired
+    private OrderStatusCounter orderStatusCounter;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    //重算汇总数据时每个事务处理的天数
+    private static final int REBUILD_CHUNK_DAYS = 31;
+    //一次最多重算的天数，更早的历史数据由建表脚本回填
+    private static final int MAX_REBUILD_DAYS = 366;
+
+    private TransactionTemplate requiresNewTransaction;
+
+    @PostConstruct
+    public void init() {
+        requiresNewTransaction = new TransactionTemplate(transactionManager);
+        requiresNewTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * 按天查询日期区间内的运营数据，每天一条，没有数据的日期补0
+     *
+     * @param begin
+     * @param end
+     * @return
+     */
+    public List<DailyStatisticsDTO> getDailyStatistics(LocalDate begin, LocalDate end) {
+        LocalDate today = LocalDate.now();
+        Map<LocalDate, DailyStatisticsDTO> dailyMap = new HashMap<>();
+        //1.已经结束的日期，读取汇总表
+        if (begin.isBefore(today)) {
+            LocalDate closedEnd = end.isBefore(today) ? end : today.minusDays(1);
+            for (DailyBusinessStats stats : dailyBusinessStatsMapper.getByDateRange(begin, closedEnd)) {
+                dailyMap.put(stats.getStatDate(), DailyStatisticsDTO.builder()
+                        .date(stats.getStatDate())
+                        .turnover(stats.getTurnover().doubleValue())
+                        .orderCount(stats.getTotalOrders())
+                        .validOrderCount(stats.getValidOrders())
+                        .newUsers(stats.getNewUsers())
+                        .build());
+            }
+        }
+        //2.今天及以后的日期，按天分组查询订单表和用户表
+        if (!end.isBefore(today)) {
+            LocalDateTime openBegin = LocalDateTime.of(begin.isAfter(today) ? begin : today, LocalTime.MIN);
+            LocalDateTime openEnd = LocalDateTime.of(end, LocalTime.MAX);
+            for (DailyStatisticsDTO daily : orderMapper.getDailyStatistics(openBegin, openEnd, Orders.COMPLETED)) {
+                dailyMap.put(daily.getDate(), daily);
+            }
+            for (DailyStatisticsDTO daily : userMapper.getDailyNewUsers(openBegin, openEnd)) {
+                dailyMap.computeIfAbsent(daily.getDate(), date -> DailyStatisticsDTO.builder().date(date).build())
+                        .setNewUsers(daily.getNewUsers());
+            }
+        }
+        //3.按日期补齐，没有数据的日期各项数据为0
+        List<DailyStatisticsDTO> dailyList = new ArrayList<>();
+        for (LocalDate date = begin; !date.isAfter(end); date = date.plusDays(1)) {
+            DailyStatisticsDTO daily = dailyMap.get(date);
+            dailyList.add(DailyStatisticsDTO.builder()
+                    .date(date)
+                    .turnover(daily == null || daily.getTurnover() == null ? 0.0 : daily.getTurnover())
+                    .orderCount(daily == null || daily.getOrderCount() == null ? 0 : daily.getOrderCount())
+                    .validOrderCount(daily == null || daily.getValidOrderCount() == null ? 0 : daily.getValidOrderCount())
+                    .newUsers(daily == null || daily.getNewUsers() == null ? 0 : daily.getNewUsers())
+                    .build());
+        }
+        return dailyList;
+    }
+
+    /**
+     * 订单状态流转后，增量更新汇总数据，业务事务提交后执行
+     *
+     * @param orderId
+     * @param orderDate  下单日期，调用方没有查询订单时为null，由订单状态计数器从redis中读取
+     * @param fromStatus 原状态，新下单时为null
+     * @param toStatus   新状态
+     */
+    public void onOrderStatusChanged(Long orderId, LocalDate orderDate, Integer fromStatus, Integer toStatus) {
+        afterCommit(() -> dailyBusinessStatsMapper.applyOrderTransition(orderId, fromStatus, toStatus));
+        //同步更新redis中的订单状态计数，事务提交后生效
+        orderStatusCounter.onTransition(orderId, orderDate, fromStatus, toStatus);
+    }
+
+    /**
+     * 一批订单发生相同的状态流转后，增量更新汇总数据，业务事务提交后执行
+     *
+     * @param orderIds
+     * @param fromStatus 原状态
+     * @param toStatus   新状态
+     */
+    public void onOrdersStatusChanged(List<Long> orderIds, Integer fromStatus, Integer toStatus) {
+        if (orderIds == null || orderIds.isEmpty()) {
+            return;
+        }
+        afterCommit(() -> dailyBusinessStatsMapper.applyOrderTransitionBatch(orderIds, fromStatus, toStatus));
+        //按下单日期分组更新订单状态计数
+        orderStatusCounter.onTransitions(orderIds, fromStatus, toStatus);
+    }
+
+    /**
+     * 新增用户后，增量更新汇总数据
+     *
+     * @param createTime 用户注册时间
+     */
+    public void onUserCreated(LocalDateTime createTime) {
+        afterCommit(() -> dailyBusinessStatsMapper.incrementNewUsers(createTime.toLocalDate()));
+    }
+
+    /**
+     * 根据订单表和用户表重算日期区间内的汇总数据
+     * 按REBUILD_CHUNK_DAYS天分段，每段在单独的事务中先删除旧数据，再按天分组重新插入，避免一个大事务长时间锁住汇总表
+     *
+     * @param begin
+     * @param end
+     */
+    public void rebuild(LocalDate begin, LocalDate end) {
+        if (begin.isAfter(end)) {
+            throw new ReportBusinessException(MessageConstant.DATE_RANGE_ERROR);
+        }
+        if (ChronoUnit.DAYS.between(begin, end) >= MAX_REBUILD_DAYS) {
+            throw new ReportBusinessException(MessageConstant.DATE_RANGE_TOO_LONG);
+        }
+        log.info("重算每日运营数据汇总：{} 至 {}", begin, end);
+        for (LocalDate chunkBegin = begin; !chunkBegin.isAfter(end); chunkBegin = chunkBegin.plusDays(REBUILD_CHUNK_DAYS)) {
+            LocalDate chunkEnd = chunkBegin.plusDays(REBUILD_CHUNK_DAYS - 1);
+            LocalDate to = chunkEnd.isAfter(end) ? end : chunkEnd;
+            LocalDate from = chunkBegin;
+            requiresNewTransaction.executeWithoutResult(status -> {
+                LocalDateTime beginTime = LocalDateTime.of(from, LocalTime.MIN);
+                LocalDateTime endTime = LocalDateTime.of(to, LocalTime.MAX);
+                dailyBusinessStatsMapper.deleteByDateRange(from, to);
+                dailyBusinessStatsMapper.rebuildOrders(beginTime, endTime);
+                dailyBusinessStatsMapper.rebuildNewUsers(beginTime, endTime);
+            });
+        }
+    }
+
+    /**
+     * 汇总数据的增量更新在业务事务提交后，用单独的短事务执行
+     * 同一天的订单都会更新汇总表的同一行，放在业务事务中会让当天所有订单写操作排队等待这一行的锁直到提交
+     * 增量更新失败时只记录日志，由每天凌晨的重算纠正
+     *
+     * @param action
+     */
+    private void afterCommit(Runnable action) {
+        Runnable apply = () -> {
+            try {
+                requiresNewTransaction.executeWithoutResult(status -> action.run());
+            } catch (Exception e) {
+                log.error("增量更新每日运营数据汇总失败", e);
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply.run();
+                }
+            });
+        } else {
+            apply.run();
+        }
+    }
+}
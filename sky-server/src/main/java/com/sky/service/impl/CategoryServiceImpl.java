@@ -14,6 +14,7 @@ import com.sky.mapper.DishMapper;
 import com.sky.mapper.SetmealMapper;
 import com.sky.result.PageResult;
 import com.sky.service.CategoryService;
+import com.sky.service.MenuService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -34,6 +35,8 @@ public class CategoryServiceImpl implements CategoryService {
     private DishMapper dishMapper;
     @Autowired
     private SetmealMapper setmealMapper;
+    @Autowired
+    private MenuService menuService;
 
     /**
      * 分类相关业务规则
@@ -72,6 +75,8 @@ public class CategoryServiceImpl implements CategoryService {
 
         //调用mapper层进行插入
         categoryMapper.insert(category);
+        //菜单数据变化，递增菜单版本
+        menuService.bumpVersion();
     }
 
     /**
@@ -109,6 +114,8 @@ public class CategoryServiceImpl implements CategoryService {
 
         //删除分类数据
         categoryMapper.deleteById(id);
+        //菜单数据变化，递增菜单版本
+        menuService.bumpVersion();
     }
 
     /**
@@ -126,6 +133,8 @@ public class CategoryServiceImpl implements CategoryService {
 //        category.setUpdateUser(BaseContext.getCurrentId());
 
         categoryMapper.update(category);
+        //菜单数据变化，递增菜单版本
+        menuService.bumpVersion();
     }
 
     /**
@@ -143,6 +152,8 @@ public class CategoryServiceImpl implements CategoryService {
 //                .updateUser(BaseContext.getCurrentId())
                 .build();
         categoryMapper.update(category);
+        //菜单数据变化，递增菜单版本
+        menuService.bumpVersion();
     }
 
     /**
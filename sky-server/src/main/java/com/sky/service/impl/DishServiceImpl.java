@@ -14,6 +14,7 @@ import com.sky.mapper.DishMapper;
 import com.sky.mapper.SetmealDishMapper;
 import com.sky.result.PageResult;
 import com.sky.service.DishService;
+import com.sky.service.MenuService;
 import com.sky.vo.DishVO;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
@@ -22,7 +23,10 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 
 /**
@@ -40,6 +44,8 @@ public class DishServiceImpl implements DishService {
     private DishFlavorMapper dishFlavorMapper;
     @Autowired
     private SetmealDishMapper setmealDishMapper;
+    @Autowired
+    private MenuService menuService;
 
     /**
      * 新增菜品对应的口味数据
@@ -68,6 +74,8 @@ public class DishServiceImpl implements DishService {
             //向口味表插入n条数据，可以批量插入，不一定是一条一条插入
             dishFlavorMapper.insertBatch(flavors);
         }
+        //菜单数据变化，递增菜单版本
+        menuService.bumpVersion();
     }
 
     /**
@@ -118,6 +126,8 @@ public class DishServiceImpl implements DishService {
         //优化后，根据菜品id集合，批量删除菜品关联的口味数据
         //sql: delete from dish_flavor where dish_id in (?,?,?)
         dishFlavorMapper.deleteByDishIds(ids);
+        //菜单数据变化，递增菜单版本
+        menuService.bumpVersion();
     }
 
     /**
@@ -128,13 +138,8 @@ public class DishServiceImpl implements DishService {
     public DishVO getByIdWithFlavors(Long id) {
         //根据id查询菜品数据
         Dish dish = dishMapper.getById(id);
-        //根据dishId查询口味数据
-        List<DishFlavor> dishFlavors = dishFlavorMapper.getByDishId(id);
-        //将查询的数据封装到DishVO
-        DishVO dishVO = new DishVO();
-        BeanUtils.copyProperties(dish, dishVO);
-        dishVO.setFlavors(dishFlavors);
-        return dishVO;
+        //查询口味数据并封装到DishVO，和批量查询共用一个方法
+        return toDishVOWithFlavors(Collections.singletonList(dish)).get(0);
     }
 
     /**
@@ -159,6 +164,8 @@ public class DishServiceImpl implements DishService {
             //向口味表插入n条数据，可以批量插入，不一定是一条一条插入
             dishFlavorMapper.insertBatch(flavors);
         }
+        //菜单数据变化，递增菜单版本
+        menuService.bumpVersion();
     }
 
     /**
@@ -182,20 +189,33 @@ public class DishServiceImpl implements DishService {
      */
     public List<DishVO> listWithFlavor(Dish dish) {
         List<Dish> dishList = dishMapper.getByCategoryId(dish);
+        //一次查出分类下所有菜品的口味，不再每个菜品单独查询
+        return toDishVOWithFlavors(dishList);
+    }
 
+    /**
+     * 批量查询菜品的口味数据，并和菜品一起封装成DishVO
+     * 所有菜品的口味通过一条in查询查出，再在内存中按菜品id分组
+     * @param dishList
+     * @return
+     */
+    private List<DishVO> toDishVOWithFlavors(List<Dish> dishList) {
         List<DishVO> dishVOList = new ArrayList<>();
+        if (dishList == null || dishList.isEmpty()) {
+            return dishVOList;
+        }
+        //根据菜品id集合查询口味，按菜品id分组
+        List<Long> dishIds = dishList.stream().map(Dish::getId).collect(Collectors.toList());
+        Map<Long, List<DishFlavor>> flavorMap = dishFlavorMapper.getByDishIds(dishIds).stream()
+                .collect(Collectors.groupingBy(DishFlavor::getDishId));
 
         for (Dish d : dishList) {
             DishVO dishVO = new DishVO();
-            BeanUtils.copyProperties(d,dishVO);
-
-            //根据菜品id查询对应的口味
-            List<DishFlavor> flavors = dishFlavorMapper.getByDishId(d.getId());
-
-            dishVO.setFlavors(flavors);
+            BeanUtils.copyProperties(d, dishVO);
+            //没有口味的菜品返回空集合，和原来单个查询的结果一致
+            dishVO.setFlavors(flavorMap.getOrDefault(d.getId(), new ArrayList<>()));
             dishVOList.add(dishVO);
         }
-
         return dishVOList;
     }
 
@@ -210,5 +230,19 @@ public class DishServiceImpl implements DishService {
                 .status(status)
                 .build();
         dishMapper.update(dish);
+        //菜单数据变化，递增菜单版本
+        menuService.bumpVersion();
+    }
+
+    /**
+     * 根据菜品id集合查询菜品所属的分类id
+     * @param ids
+     * @return
+     */
+    public List<Long> getCategoryIdsByIds(List<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return dishMapper.getCategoryIdsByIds(ids);
     }
 }
@@ -0,0 +1,221 @@
+package com.sky.service.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sky.cache.MenuSnapshot;
+import com.sky.constant.StatusConstant;
+import com.sky.dto.SetmealDishItemDTO;
+import com.sky.entity.Category;
+import com.sky.entity.Dish;
+import com.sky.entity.DishFlavor;
+import com.sky.entity.Setmeal;
+import com.sky.json.JacksonObjectMapper;
+import com.sky.mapper.CategoryMapper;
+import com.sky.mapper.DishFlavorMapper;
+import com.sky.mapper.DishMapper;
+import com.sky.mapper.SetmealMapper;
+import com.sky.result.Result;
+import com.sky.service.MenuService;
+import com.sky.vo.DishItemVO;
+import com.sky.vo.DishVO;
+import com.sky.vo.MenuCategoryVO;
+import com.sky.vo.MenuSetmealVO;
+import com.sky.vo.MenuVO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 用户端菜单快照
+ * 菜单版本号保存在redis中，菜品、套餐、分类修改后递增；每个版本的快照只构建一次，序列化后的内容保存在redis中供所有节点共用，
+ * 本节点再保留一份当前版本的快照，请求时只需要读取一次版本号
+ */
+@Service
+@Slf4j
+public class MenuServiceImpl implements MenuService {
+
+    //菜单版本号的key
+    private static final String VERSION_KEY = "menu:version";
+    //菜单快照的key前缀，完整的key为 menu:snapshot:版本号
+    private static final String SNAPSHOT_KEY_PREFIX = "menu:snapshot:";
+    //旧版本的快照不再使用，一天后自动删除
+    private static final long SNAPSHOT_TTL_SECONDS = TimeUnit.DAYS.toSeconds(1);
+
+    @Autowired
+    private CategoryMapper categoryMapper;
+    @Autowired
+    private DishMapper dishMapper;
+    @Autowired
+    private DishFlavorMapper dishFlavorMapper;
+    @Autowired
+    private SetmealMapper setmealMapper;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    //和消息转换器使用同一种json格式
+    private final ObjectMapper objectMapper = new JacksonObjectMapper();
+    //本节点当前版本的快照
+    private volatile MenuSnapshot snapshot;
+
+    /**
+     * 获取当前版本的菜单快照
+     *
+     * @return
+     */
+    public MenuSnapshot getSnapshot() {
+        long version = getVersion();
+        MenuSnapshot current = snapshot;
+        if (current != null && current.getVersion() == version) {
+            return current;
+        }
+        //同一个节点同时只构建一次
+        synchronized (this) {
+            current = snapshot;
+            if (current != null && current.getVersion() == version) {
+                return current;
+            }
+            byte[] body = getOrBuild(version);
+            current = new MenuSnapshot(version, buildEtag(version, body), body);
+            snapshot = current;
+            return current;
+        }
+    }
+
+    /**
+     * 递增菜单版本，在事务中调用时等事务提交后再递增，避免其他请求用新版本号构建出旧数据
+     */
+    public void bumpVersion() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    incrementVersion();
+                }
+            });
+        } else {
+            incrementVersion();
+        }
+    }
+
+    private void incrementVersion() {
+        Long version = stringRedisTemplate.opsForValue().increment(VERSION_KEY);
+        log.info("菜单版本更新：{}", version);
+    }
+
+    private long getVersion() {
+        String version = stringRedisTemplate.opsForValue().get(VERSION_KEY);
+        return version == null ? 0L : Long.parseLong(version);
+    }
+
+    /**
+     * 优先读取redis中其他节点已经构建好的快照，没有再查询数据库构建
+     * 写入redis时只有第一个写入的节点成功，其他节点以redis中的内容为准，保证所有节点同一版本的ETag一致
+     *
+     * @param version
+     * @return
+     */
+    private byte[] getOrBuild(long version) {
+        byte[] key = (SNAPSHOT_KEY_PREFIX + version).getBytes(StandardCharsets.UTF_8);
+        byte[] body = stringRedisTemplate.execute((RedisCallback<byte[]>) connection -> connection.stringCommands().get(key));
+        if (body != null) {
+            return body;
+        }
+        byte[] built = serialize(buildMenu(version));
+        Boolean saved = stringRedisTemplate.execute((RedisCallback<Boolean>) connection -> connection.stringCommands()
+                .set(key, built, Expiration.seconds(SNAPSHOT_TTL_SECONDS), RedisStringCommands.SetOption.SET_IF_ABSENT));
+        if (Boolean.TRUE.equals(saved)) {
+            log.info("构建菜单快照：版本{}，{}字节", version, built.length);
+            return built;
+        }
+        body = stringRedisTemplate.execute((RedisCallback<byte[]>) connection -> connection.stringCommands().get(key));
+        return body != null ? body : built;
+    }
+
+    /**
+     * 查询所有启用的分类、起售的菜品和套餐，每类数据一条sql，在内存中按分类组装
+     *
+     * @param version
+     * @return
+     */
+    private MenuVO buildMenu(long version) {
+        //1.启用的分类
+        List<Category> categories = categoryMapper.list(null);
+        //2.起售的菜品和口味
+        List<Dish> dishes = dishMapper.getByCategoryId(Dish.builder().status(StatusConstant.ENABLE).build());
+        Map<Long, List<DishFlavor>> flavorMap = dishes.isEmpty() ? Collections.emptyMap()
+                : dishFlavorMapper.getByDishIds(dishes.stream().map(Dish::getId).collect(Collectors.toList())).stream()
+                .collect(Collectors.groupingBy(DishFlavor::getDishId));
+        Map<Long, List<DishVO>> dishMap = dishes.stream().map(dish -> {
+            DishVO dishVO = new DishVO();
+            BeanUtils.copyProperties(dish, dishVO);
+            dishVO.setFlavors(flavorMap.getOrDefault(dish.getId(), new ArrayList<>()));
+            return dishVO;
+        }).collect(Collectors.groupingBy(DishVO::getCategoryId));
+        //3.起售的套餐和套餐中的菜品
+        Setmeal setmealQuery = new Setmeal();
+        setmealQuery.setStatus(StatusConstant.ENABLE);
+        List<Setmeal> setmeals = setmealMapper.list(setmealQuery);
+        Map<Long, List<SetmealDishItemDTO>> itemMap = setmeals.isEmpty() ? Collections.emptyMap()
+                : setmealMapper.getDishItemsBySetmealIds(setmeals.stream().map(Setmeal::getId).collect(Collectors.toList())).stream()
+                .collect(Collectors.groupingBy(SetmealDishItemDTO::getSetmealId));
+        Map<Long, List<MenuSetmealVO>> setmealMap = setmeals.stream().map(setmeal -> {
+            MenuSetmealVO setmealVO = new MenuSetmealVO();
+            BeanUtils.copyProperties(setmeal, setmealVO);
+            List<DishItemVO> items = itemMap.getOrDefault(setmeal.getId(), Collections.emptyList()).stream().map(item -> {
+                DishItemVO dishItemVO = new DishItemVO();
+                BeanUtils.copyProperties(item, dishItemVO);
+                return dishItemVO;
+            }).collect(Collectors.toList());
+            setmealVO.setItems(items);
+            return setmealVO;
+        }).collect(Collectors.groupingBy(MenuSetmealVO::getCategoryId));
+        //4.按分类组装
+        List<MenuCategoryVO> categoryVOList = categories.stream().map(category -> MenuCategoryVO.builder()
+                .id(category.getId())
+                .type(category.getType())
+                .name(category.getName())
+                .sort(category.getSort())
+                .dishes(dishMap.getOrDefault(category.getId(), new ArrayList<>()))
+                .setmeals(setmealMap.getOrDefault(category.getId(), new ArrayList<>()))
+                .build()).collect(Collectors.toList());
+        return MenuVO.builder()
+                .version(version)
+                .categories(categoryVOList)
+                .build();
+    }
+
+    private byte[] serialize(MenuVO menuVO) {
+        try {
+            return objectMapper.writeValueAsBytes(Result.success(menuVO));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("菜单快照序列化失败", e);
+        }
+    }
+
+    /**
+     * 强ETag：版本号加内容摘要
+     *
+     * @param version
+     * @param body
+     * @return
+     */
+    private String buildEtag(long version, byte[] body) {
+        return "\"" + version + "-" + DigestUtils.md5DigestAsHex(body) + "\"";
+    }
+}
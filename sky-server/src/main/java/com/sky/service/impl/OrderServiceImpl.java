@@ -1,39 +1,63 @@
 package com.sky.service.impl;
 
-import com.alibaba.fastjson.JSON;
-import com.alibaba.fastjson.JSONArray;
 import com.alibaba.fastjson.JSONObject;
 import com.github.pagehelper.Page;
 import com.github.pagehelper.PageHelper;
+import com.sky.cart.RedisCartStore;
 import com.sky.constant.MessageConstant;
 import com.sky.context.BaseContext;
 import com.sky.dto.*;
+import com.sky.event.OrderEvent;
 import com.sky.entity.*;
 import com.sky.exception.AddressBookBusinessException;
 import com.sky.exception.OrderBusinessException;
+import com.sky.exception.OrderPlacingException;
 import com.sky.exception.ShoppingCartBusinessException;
+import com.sky.geo.DeliveryRangeChecker;
 import com.sky.mapper.*;
+import com.sky.order.OrderCursor;
+import com.sky.order.OrderExpiryQueue;
+import com.sky.order.OrderNumberGenerator;
+import com.sky.order.OrderSearchIndex;
+import com.sky.order.OrderStateMachine;
+import com.sky.order.OrderStatusCounter;
+import com.sky.properties.OrderProperties;
+import com.sky.result.CursorPageResult;
 import com.sky.result.PageResult;
 import com.sky.result.Result;
+import com.sky.service.BusinessStatsService;
 import com.sky.service.OrderService;
-import com.sky.utils.HttpClientUtil;
 import com.sky.utils.WeChatPayUtil;
 import com.sky.vo.OrderPaymentVO;
+import com.sky.vo.OrderPlacementVO;
 import com.sky.vo.OrderStatisticsVO;
 import com.sky.vo.OrderSubmitVO;
 import com.sky.vo.OrderVO;
-import com.sky.websocket.WebSocketServer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.CollectionUtils;
+import org.springframework.util.DigestUtils;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -44,10 +68,8 @@ import java.util.stream.Collectors;
 @Slf4j
 @Service
 public class OrderServiceImpl implements OrderService {
-    @Value("${sky.shop.address}")
-    private String shopAddress;
-    @Value("${sky.baidu.ak}")
-    private String ak;
+    //游标分页总数缓存的key前缀
+    private static final String ORDER_COUNT_KEY_PREFIX = "order:count:";
     @Autowired
     private OrderMapper orderMapper;
     @Autowired
@@ -55,18 +77,43 @@ public class OrderServiceImpl implements OrderService {
     @Autowired
     private AddressBookMapper addressBookMapper;
     @Autowired
-    private ShoppingCartMapper shoppingCartMapper;
+    private RedisCartStore redisCartStore;
     @Autowired
     private UserMapper userMapper;
     @Autowired
     private WeChatPayUtil weChatPayUtil;
     @Autowired
-    private WebSocketServer webSocketServer;
+    private ApplicationEventPublisher eventPublisher;
+    @Autowired
+    private BusinessStatsService businessStatsService;
+    @Autowired
+    private DeliveryRangeChecker deliveryRangeChecker;
+    @Autowired
+    private OrderExpiryQueue orderExpiryQueue;
+    @Autowired
+    private OrderNumberGenerator orderNumberGenerator;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private OrderSearchIndex orderSearchIndex;
+    @Autowired
+    private OrderStatusCounter orderStatusCounter;
+    @Autowired
+    private OrderStateMachine orderStateMachine;
+    @Autowired
+    private OrderProperties orderProperties;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    //异步下单线程池
+    private ThreadPoolExecutor placementExecutor;
+    //异步下单的事务，队列满时会在提交回调中由请求线程执行，所以总是开启新事务
+    private TransactionTemplate placementTransaction;
 
     /**
      * 用户下单，订单提交
      * 主要涉及用户订单表和订单明细表，并且订单表和订单明细表是一对多的关系
      * 这些判断提交前端也能做校验
+     * 开启异步下单时，只保存一条下单中的订单就返回，剩下的步骤交给下单线程池完成
      *
      * @param ordersSubmitDTO
      * @return
@@ -79,32 +126,154 @@ public class OrderServiceImpl implements OrderService {
         if (addressBook == null) {
             throw new AddressBookBusinessException(MessageConstant.ADDRESS_BOOK_IS_NULL);
         }
-        log.info("准备检查位置是否合理，用户地址：{}", addressBook);
-        //检查用户的收获地址是否超出配送范围
-        checkOutOfRange(addressBook.getCityName() + addressBook.getDistrictName() + addressBook.getDetail());
-        log.info("调用百度地图API，检测结果为：位置合理");
-        //处理购物车数据为空，先获取用户id，并构造一个购物车对象，然后调用mapper根据id查购物车数据
+        //处理购物车数据为空，先获取用户id，然后从redis中查询用户的购物车数据
         Long userId = BaseContext.getCurrentId();
-        ShoppingCart shoppingCart = ShoppingCart.builder()
-                .userId(userId)
-                .build();
-        List<ShoppingCart> shoppingCartList = shoppingCartMapper.list(shoppingCart);
+        List<ShoppingCart> shoppingCartList = redisCartStore.list(userId);
         if (shoppingCartList == null || shoppingCartList.size() == 0) {
             throw new ShoppingCartBusinessException(MessageConstant.SHOPPING_CART_IS_NULL);
         }
-        //2.向订单表插入1条数据
-        //先把DTO有的拷贝过来，然后检查哪些没有，再去设置
+        if (!orderProperties.isAsyncPlacement()) {
+            //同步下单，在请求线程中完成所有步骤
+            checkAddressInRange(addressBook);
+            Orders orders = buildOrders(ordersSubmitDTO, addressBook, userId, Orders.PENDING_PAYMENT);
+            orderMapper.insert(orders);
+            orderSearchIndex.index(orders);
+            //增量更新每日运营数据汇总
+            businessStatsService.onOrderStatusChanged(orders.getId(), orders.getOrderTime().toLocalDate(), null, Orders.PENDING_PAYMENT);
+            eventPublisher.publishEvent(new OrderEvent(OrderEvent.Type.PLACED, orders.getId(), orders.getNumber()));
+            insertOrderDetails(orders, shoppingCartList, userId);
+            //加入支付超时延迟队列，到期未支付时自动取消
+            orderExpiryQueue.schedule(orders.getId(), orders.getOrderTime().plusMinutes(orderProperties.getPaymentTimeoutMinutes()));
+            return buildOrderSubmitVO(orders);
+        }
+        //2.异步下单，先保存一条下单中的订单，购物车数据在这里取好快照，后面用户再修改购物车也不影响本次下单
+        Orders orders = buildOrders(ordersSubmitDTO, addressBook, userId, Orders.PLACING);
+        orderMapper.insert(orders);
+        orderSearchIndex.index(orders);
+        businessStatsService.onOrderStatusChanged(orders.getId(), orders.getOrderTime().toLocalDate(), null, Orders.PLACING);
+        //3.事务提交后再交给下单线程池，保证后台线程能查到这条订单
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                placementExecutor.execute(() -> completePlacement(orders, addressBook, shoppingCartList, userId));
+            }
+        });
+        return buildOrderSubmitVO(orders);
+    }
+
+    /**
+     * 查询异步下单的处理结果
+     *
+     * @param id
+     * @return
+     */
+    public OrderPlacementVO getPlacement(Long id) {
+        Orders orders = orderMapper.getById(id);
+        //只能查询自己的订单
+        if (orders == null || !orders.getUserId().equals(BaseContext.getCurrentId())) {
+            throw new OrderBusinessException(MessageConstant.ORDER_NOT_FOUND);
+        }
+        return OrderPlacementVO.builder()
+                .id(orders.getId())
+                .orderNumber(orders.getNumber())
+                .status(orders.getStatus())
+                .reason(Orders.CANCELLED.equals(orders.getStatus()) ? orders.getCancelReason() : null)
+                .build();
+    }
+
+    /**
+     * 在下单线程池中完成异步下单：校验配送范围、插入订单明细、清空购物车，然后把订单改为待付款
+     * 校验失败时取消订单，购物车保留
+     *
+     * @param orders
+     * @param addressBook
+     * @param shoppingCartList
+     * @param userId 后台线程中没有登录用户，需要显式传入
+     */
+    private void completePlacement(Orders orders, AddressBook addressBook, List<ShoppingCart> shoppingCartList, Long userId) {
+        try {
+            checkAddressInRange(addressBook);
+            placementTransaction.executeWithoutResult(status -> {
+                //订单已经被超时任务取消时，不再继续
+                if (orderMapper.updateStatus(orders.getId(), Orders.PLACING, Orders.PENDING_PAYMENT) == 0) {
+                    return;
+                }
+                businessStatsService.onOrderStatusChanged(orders.getId(), orders.getOrderTime().toLocalDate(), Orders.PLACING, Orders.PENDING_PAYMENT);
+                eventPublisher.publishEvent(new OrderEvent(OrderEvent.Type.PLACED, orders.getId(), orders.getNumber()));
+                insertOrderDetails(orders, shoppingCartList, userId);
+                orderExpiryQueue.schedule(orders.getId(), orders.getOrderTime().plusMinutes(orderProperties.getPaymentTimeoutMinutes()));
+            });
+            log.info("异步下单完成，订单号：{}", orders.getNumber());
+        } catch (Exception e) {
+            log.error("异步下单失败，订单号：{}", orders.getNumber(), e);
+            String reason = e instanceof OrderBusinessException ? e.getMessage() : "下单失败，请重试";
+            cancelPlacement(orders.getId(), reason);
+        }
+    }
+
+    /**
+     * 取消还在下单中的订单
+     *
+     * @param id
+     * @param reason
+     */
+    public void cancelPlacement(Long id, String reason) {
+        placementTransaction.executeWithoutResult(status -> {
+            if (orderMapper.updateStatus(id, Orders.PLACING, Orders.CANCELLED) == 0) {
+                return;
+            }
+            businessStatsService.onOrderStatusChanged(id, null, Orders.PLACING, Orders.CANCELLED);
+            eventPublisher.publishEvent(new OrderEvent(OrderEvent.Type.CANCELLED, id, null));
+            Orders orders = Orders.builder()
+                    .id(id)
+                    .cancelReason(reason)
+                    .cancelTime(LocalDateTime.now())
+                    .build();
+            orderMapper.update(orders);
+        });
+    }
+
+    /**
+     * 检查用户的收获地址是否超出配送范围
+     *
+     * @param addressBook
+     */
+    private void checkAddressInRange(AddressBook addressBook) {
+        log.info("准备检查位置是否合理，用户地址：{}", addressBook);
+        deliveryRangeChecker.check(addressBook);
+        log.info("检测结果为：位置合理");
+    }
+
+    /**
+     * 构造订单数据，先把DTO有的拷贝过来，然后检查哪些没有，再去设置
+     *
+     * @param ordersSubmitDTO
+     * @param addressBook
+     * @param userId
+     * @param status
+     * @return
+     */
+    private Orders buildOrders(OrdersSubmitDTO ordersSubmitDTO, AddressBook addressBook, Long userId, Integer status) {
         Orders orders = new Orders();
         BeanUtils.copyProperties(ordersSubmitDTO, orders);
         orders.setOrderTime(LocalDateTime.now());
         orders.setPayStatus(Orders.UN_PAID);
-        orders.setStatus(Orders.PENDING_PAYMENT);
-        orders.setNumber(String.valueOf(System.currentTimeMillis()));
+        orders.setStatus(status);
+        orders.setNumber(orderNumberGenerator.nextOrderNumber());   //雪花算法生成，不会重复，按时间递增
         orders.setPhone(addressBook.getPhone());    //前面有查过地址博数据，所以这里可以直接用
         orders.setConsignee(addressBook.getConsignee());
         orders.setUserId(userId);
-        orderMapper.insert(orders);
-        //3.向订单明细表插入n条数据
+        return orders;
+    }
+
+    /**
+     * 向订单明细表插入n条数据，然后从用户的购物车中删除下单的商品
+     *
+     * @param orders
+     * @param shoppingCartList
+     * @param userId
+     */
+    private void insertOrderDetails(Orders orders, List<ShoppingCart> shoppingCartList, Long userId) {
         //使用批量插入，需要把订单数据放到list中
         List<OrderDetail> orderDetailList = new ArrayList<>();
         for (ShoppingCart cart : shoppingCartList) {
@@ -116,16 +285,41 @@ public class OrderServiceImpl implements OrderService {
         }
         //批量插入即可
         orderDetailMapper.insertBatch(orderDetailList);
-        //4.用户下单之后，清空当前用户的购物车数据
-        shoppingCartMapper.deleteByUserId(BaseContext.getCurrentId());
-        //5.封装一个VO对象，将数据封装起来并返回
-        OrderSubmitVO orderSubmitVO = OrderSubmitVO.builder()
+        //用户下单之后，从购物车中删除下单的商品，事务提交后才删除；下单过程中又加入的商品保留
+        redisCartStore.remove(userId, shoppingCartList);
+    }
+
+    /**
+     * 封装一个VO对象，将数据封装起来并返回
+     *
+     * @param orders
+     * @return
+     */
+    private OrderSubmitVO buildOrderSubmitVO(Orders orders) {
+        return OrderSubmitVO.builder()
                 .id(orders.getId())
                 .orderNumber(orders.getNumber())
                 .orderAmount(orders.getAmount())
                 .orderTime(orders.getOrderTime())
                 .build();
-        return orderSubmitVO;
+    }
+
+    /**
+     * 创建异步下单线程池，有界队列满时由请求线程自己执行，相当于退回同步下单
+     */
+    @PostConstruct
+    public void initPlacementExecutor() {
+        placementTransaction = new TransactionTemplate(transactionManager);
+        placementTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        placementExecutor = new ThreadPoolExecutor(orderProperties.getPlacementThreads(), orderProperties.getPlacementThreads(),
+                60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(orderProperties.getPlacementQueueSize()),
+                new CustomizableThreadFactory("order-placement-"), new ThreadPoolExecutor.CallerRunsPolicy());
+        placementExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void shutdownPlacementExecutor() {
+        placementExecutor.shutdown();
     }
 
     /**
@@ -160,6 +354,7 @@ public class OrderServiceImpl implements OrderService {
      * 无法完成微信支付的简易支付方法
      * @param ordersPaymentDTO
      */
+    @Transactional
     public void easyPay(OrdersPaymentDTO ordersPaymentDTO) {
         log.info("简易支付");
         // 获得用户id
@@ -173,53 +368,65 @@ public class OrderServiceImpl implements OrderService {
             // 不是待付款订单，无法进行支付，抛出异常
             throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
         }
-        // 订单没有异常，修改其状态
-        // 修改支付状态为已付款
-        orders.setPayStatus(Orders.PAID);
-        // 修改订单状态为待接单
-        orders.setStatus(Orders.TO_BE_CONFIRMED);
-        // 在数据库中修改
-        orderMapper.update(orders);
+        // 订单没有异常，修改支付状态为已付款、订单状态为待接单，条件更新，重复支付时不会重复处理
+        if (orderMapper.updatePaid(orders.getId(), LocalDateTime.now()) == 0) {
+            throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
+        }
+        businessStatsService.onOrderStatusChanged(orders.getId(), orders.getOrderTime().toLocalDate(), Orders.PENDING_PAYMENT, Orders.TO_BE_CONFIRMED);
+        //已支付，不再需要超时取消
+        orderExpiryQueue.remove(orders.getId());
 
         // 支付成功后，第一时间通知外卖商家（来单提醒）
-        // 通过WebSocket实现服务端向客户端推送消息（无需请求，直接通信，这就是WebSocket的优势之一）
-        // 客户端解析服务端推送的消息，判断是来单提送还是客户催单，并进行相应的消息提示和语音播报
-        // 前后端约定，服务端发送的数据格式为json，字段包括：type、orderId、content
-        // type为消息类型：1.来单提醒     2.客户催单
-        // orderId为订单id；content为消息内容
-        Map<Object, Object> map = new HashMap<>();
-        map.put("type", 1);
-        map.put("orderId", orders.getId());
-        map.put("content", "订单号：" + orderNumber);
-        // 通过WebSocket实现来单提醒，向客户端浏览器推送消息
-        webSocketServer.sendToAllClient(JSON.toJSONString(map));
+        // 发布支付事件，事务提交后由监听器通过WebSocket向商家推送来单提醒，不占用当前请求线程
+        eventPublisher.publishEvent(new OrderEvent(OrderEvent.Type.PAID, orders.getId(), orderNumber));
     }
 
     /**
      * 支付成功，修改订单状态，并进行来单提醒
+     * 支付回调中没有登录用户，只根据订单号查询；订单已支付时直接返回，重复回调不会重复处理
+     * 订单已不是待付款（如超时取消）时不恢复订单，标记为退款；还在下单中时抛出OrderPlacingException，稍后重试
      *
      * @param outTradeNo
      */
+    @Transactional
     public void paySuccess(String outTradeNo) {
-        //1.获取当前登录用户id
-        Long userId = BaseContext.getCurrentId();
-        //2.根据订单号查询当前用户的订单
-        Orders ordersDB = orderMapper.getByNumberAndUserId(outTradeNo, userId);
-        //3.根据订单id更新订单的状态、支付方式、支付状态、结账时间
-        Orders orders = Orders.builder()
-                .id(ordersDB.getId())
-                .status(Orders.TO_BE_CONFIRMED)
-                .payStatus(Orders.PAID)
-                .checkoutTime(LocalDateTime.now())
-                .build();
-        orderMapper.update(orders);
-        //4.通过websocket向前端发送推送消息
-        Map map = new HashMap();
-        map.put("type", 1);//消息类型，1表示来单提醒
-        map.put("orderId", orders.getId());
-        map.put("content", "订单号：" + outTradeNo);  //具体提示内容
-        //通过WebSocket实现来单提醒，向客户端浏览器推送消息
-        webSocketServer.sendToAllClient(JSON.toJSONString(map));
+        //1.根据订单号查询订单
+        Orders ordersDB = orderMapper.getByNumber(outTradeNo);
+        if (ordersDB == null) {
+            throw new OrderBusinessException(MessageConstant.ORDER_NOT_FOUND);
+        }
+        //2.根据订单id条件更新订单的状态、支付状态、结账时间，只有待付款、未支付的订单会被修改
+        if (orderMapper.updatePaid(ordersDB.getId(), LocalDateTime.now()) == 0) {
+            //3.条件更新失败时锁定订单，按当前状态处理，期间订单状态不会再变化
+            Orders current = orderMapper.getByIdForUpdate(ordersDB.getId());
+            if (!Orders.UN_PAID.equals(current.getPayStatus())) {
+                log.info("订单已处理过支付结果，忽略重复回调：{}", outTradeNo);
+                return;
+            }
+            //还在下单中，抛出异常由支付回调处理稍后重试，下单完成变为待付款后再修改为已支付
+            if (Orders.PLACING.equals(current.getStatus())) {
+                throw new OrderPlacingException(MessageConstant.ORDER_PLACING);
+            }
+            //加锁前刚刚变为待付款，再修改一次
+            if (!Orders.PENDING_PAYMENT.equals(current.getStatus())
+                    || orderMapper.updatePaid(ordersDB.getId(), LocalDateTime.now()) == 0) {
+                //订单已超时取消，但用户已经付款，不改变订单状态，标记为退款并退还货款
+                orderMapper.updateRefundForUnpayable(ordersDB.getId());
+                log.warn("订单已不是待付款状态却收到支付成功回调，标记为退款，订单号：{}，订单状态：{}", outTradeNo, current.getStatus());
+                //调用微信支付退款接口，这里为简单模拟，不进行实际退款
+//                weChatPayUtil.refund(
+//                        ordersDB.getNumber(), //商户订单号
+//                        ordersDB.getNumber(), //商户退款单号
+//                        ordersDB.getAmount(),//退款金额，单位 元
+//                        ordersDB.getAmount());//原订单金额
+                return;
+            }
+        }
+        businessStatsService.onOrderStatusChanged(ordersDB.getId(), ordersDB.getOrderTime().toLocalDate(), Orders.PENDING_PAYMENT, Orders.TO_BE_CONFIRMED);
+        //已支付，不再需要超时取消
+        orderExpiryQueue.remove(ordersDB.getId());
+        //4.发布支付事件，事务提交后由监听器通过websocket向前端发送来单提醒
+        eventPublisher.publishEvent(new OrderEvent(OrderEvent.Type.PAID, ordersDB.getId(), outTradeNo));
     }
 
     /**
@@ -240,26 +447,28 @@ public class OrderServiceImpl implements OrderService {
         //2.调用分页条件查询，并使用插件的Page类接收
         Page<Orders> page = orderMapper.pageQuery(ordersPageQueryDTO);
         //3.但是注意前端要的数据，所以需要把page中的数据进行封装成VO类返回
-        List<OrderVO> orderVOList = new ArrayList<>();
-        //遍历page中的数据，进行封装。前提是取到了数据
-        if (page != null && page.size() > 0) {
-            for (Orders orders : page) {
-                //获取订单id
-                Long orderId = orders.getId();
-                //根据订单id查询订单明细
-                List<OrderDetail> orderDetails = orderDetailMapper.getByOrderId(orderId);
-                OrderVO orderVO = new OrderVO();
-                //先把orders已经有的属性拷贝到orderVO中
-                BeanUtils.copyProperties(orders, orderVO);
-                //再设置订单明细，这个属性在Orders类中没有，所以需要设置
-                orderVO.setOrderDetailList(orderDetails);
-                orderVOList.add(orderVO);
-            }
-        }
+        //一次查出这一页所有订单的明细，按订单id分组后设置到对应的OrderVO中
+        List<OrderVO> orderVOList = getOrderVOListWithDetails(page);
         //4.把封装好的list集合放到PageResult中，并返回
         return new PageResult(page.getTotal(), orderVOList);
     }
 
+    /**
+     * 用户端历史订单游标分页查询
+     *
+     * @param cursor
+     * @param pageSize
+     * @param status
+     * @return
+     */
+    public CursorPageResult pageQuery4UserByCursor(String cursor, int pageSize, Integer status) {
+        OrdersPageQueryDTO ordersPageQueryDTO = new OrdersPageQueryDTO();
+        ordersPageQueryDTO.setUserId(BaseContext.getCurrentId());
+        ordersPageQueryDTO.setStatus(status);
+        ordersPageQueryDTO.setPageSize(pageSize);
+        return cursorQuery(ordersPageQueryDTO, cursor, false);
+    }
+
     /**
      * 根据订单id查询订单详情
      *
@@ -287,39 +496,31 @@ public class OrderServiceImpl implements OrderService {
      *
      * @param id 订单id
      */
+    @Transactional
     public void userCancelById(Long id) throws Exception {
-        //1.先根据id获取当前订单信息
-        Orders ordersDB = orderMapper.getById(id);
-        //若订单不存在，则抛出异常
-        if (ordersDB == null) {
-            throw new OrderBusinessException(MessageConstant.ORDER_NOT_FOUND);
-        }
-        //2.查询当前订单状态，是否可以取消,待支付、待接单(需退款)可直接取消，已接单和派送中需要电话沟通商家
+        //1.待支付、待接单(需退款)可直接取消，已接单和派送中需要电话沟通商家
         //订单状态 1待付款 2待接单 3已接单 4派送中 5已完成 6已取消
-        if (ordersDB.getStatus() > 2) {
-            //订单状态不是待接单、待支付，则抛出异常
-            throw new OrderBusinessException((MessageConstant.ORDER_STATUS_ERROR));
-        }
-        //创建一个用于更新订单状态的对象
-        Orders orders = new Orders();
-        orders.setId(ordersDB.getId());
-        //若是待接单状态下，需要退款
-        if (ordersDB.getStatus().equals(Orders.TO_BE_CONFIRMED)) {
-            //调用微信支付退款接口，这里为简单模拟，不进行实际退款
+        //更新订单状态、取消原因和取消时间，带原状态条件，状态已变化时不会修改
+        Orders orders = Orders.builder()
+                .id(id)
+                .status(Orders.CANCELLED)
+                .cancelReason("用户取消")
+                .cancelTime(LocalDateTime.now())
+                .build();
+        //2.待支付、待接单的订单直接取消，都不是时抛出异常
+        Integer fromStatus = orderStateMachine.transition(orders, Orders.PENDING_PAYMENT, Orders.TO_BE_CONFIRMED);
+        //3.待接单的订单已支付，取消后需要退款，支付状态修改为退款
+        if (Orders.TO_BE_CONFIRMED.equals(fromStatus)) {
+            orderMapper.update(Orders.builder().id(id).payStatus(Orders.REFUND).build());
+            //调用微信支付退款接口，这里为简单模拟，不进行实际退款，实际退款时再根据id查询订单号和金额
+//            Orders ordersDB = orderMapper.getById(id);
 //            weChatPayUtil.refund(
 //                    ordersDB.getNumber(), //商户订单号
 //                    ordersDB.getNumber(), //商户退款单号
 //                    new BigDecimal(0.01),//退款金额，单位 元
 //                    new BigDecimal(0.01));//原订单金额
-            //支付状态修改为 退款
-            orders.setPayStatus(Orders.REFUND);
         }
-        //并不需要对待支付的进行一次判定，因为他是直接取消，如果不是其他的情况，直接修改字段即可。
-        //3.取消后，则调用方法更新订单状态、取消原因和取消时间
-        orders.setStatus(Orders.CANCELLED);
-        orders.setCancelReason("用户取消");
-        orders.setCancelTime(LocalDateTime.now());
-        orderMapper.update(orders);
+        eventPublisher.publishEvent(new OrderEvent(OrderEvent.Type.CANCELLED, id, null));
     }
 
     /**
@@ -347,8 +548,8 @@ public class OrderServiceImpl implements OrderService {
             shoppingCart.setCreateTime(LocalDateTime.now());
             return shoppingCart;
         }).collect(Collectors.toList());
-        //4.将购物车对象批量添加到数据库
-        shoppingCartMapper.insertBatch(shoppingCartList);
+        //4.将购物车对象批量添加到redis购物车，已有的商品数量累加
+        redisCartStore.addAll(userId, shoppingCartList);
     }
 
     /**
@@ -358,6 +559,10 @@ public class OrderServiceImpl implements OrderService {
      * @return
      */
     public PageResult conditionSearch(OrdersPageQueryDTO ordersPageQueryDTO) {
+        //根据订单号、手机号从搜索索引中查出候选订单，没有符合条件的订单时直接返回
+        if (!resolveSearchCandidates(ordersPageQueryDTO)) {
+            return new PageResult(0, new ArrayList<>());
+        }
         //1.使用分页插件，两行代码，实现分页功能
         PageHelper.startPage(ordersPageQueryDTO.getPage(), ordersPageQueryDTO.getPageSize());
         Page<Orders> page = orderMapper.pageQuery(ordersPageQueryDTO);
@@ -367,6 +572,87 @@ public class OrderServiceImpl implements OrderService {
         return new PageResult(page.getTotal(), orderVOList);
     }
 
+    /**
+     * 条件搜索订单，游标分页
+     *
+     * @param ordersPageQueryDTO
+     * @param cursor
+     * @return
+     */
+    public CursorPageResult conditionSearchByCursor(OrdersPageQueryDTO ordersPageQueryDTO, String cursor) {
+        return cursorQuery(ordersPageQueryDTO, cursor, true);
+    }
+
+    /**
+     * 私有方法，游标分页查询订单
+     * 多查一条判断是否还有下一页；总数只在查询第一页时统计，并按查询条件在redis中缓存一分钟
+     *
+     * @param ordersPageQueryDTO 查询条件
+     * @param cursor             上一页返回的游标
+     * @param withDishes         是否拼接订单菜品信息，管理端需要
+     * @return
+     */
+    private CursorPageResult cursorQuery(OrdersPageQueryDTO ordersPageQueryDTO, String cursor, boolean withDishes) {
+        if (!resolveSearchCandidates(ordersPageQueryDTO)) {
+            return new CursorPageResult(0L, new ArrayList<>(), null, false);
+        }
+        int pageSize = ordersPageQueryDTO.getPageSize() > 0 ? Math.min(ordersPageQueryDTO.getPageSize(), 100) : 10;
+        OrderCursor orderCursor = OrderCursor.decode(cursor);
+        List<Orders> ordersList = orderMapper.cursorQuery(ordersPageQueryDTO,
+                orderCursor == null ? null : orderCursor.getOrderTime(),
+                orderCursor == null ? null : orderCursor.getId(), pageSize + 1);
+        boolean hasMore = ordersList.size() > pageSize;
+        if (hasMore) {
+            ordersList = ordersList.subList(0, pageSize);
+        }
+        List<OrderVO> orderVOList = getOrderVOListWithDetails(ordersList);
+        if (withDishes) {
+            for (OrderVO orderVO : orderVOList) {
+                orderVO.setOrderDishes(getOrderDishesStr(orderVO.getOrderDetailList()));
+            }
+        }
+        Long total = orderCursor == null ? countCached(ordersPageQueryDTO) : null;
+        String nextCursor = hasMore ? OrderCursor.encode(ordersList.get(ordersList.size() - 1)) : null;
+        return new CursorPageResult(total, orderVOList, nextCursor, hasMore);
+    }
+
+    /**
+     * 根据订单号、手机号关键字从搜索索引中查出候选订单id，设置到查询条件中
+     * 关键字太短或区分度太低时不使用索引，仍然模糊查询；手机号关键字是4位数字时按手机尾号查询
+     *
+     * @param ordersPageQueryDTO
+     * @return 没有任何候选订单时返回false
+     */
+    private boolean resolveSearchCandidates(OrdersPageQueryDTO ordersPageQueryDTO) {
+        if (OrderSearchIndex.isPhoneSuffix(ordersPageQueryDTO.getPhone())) {
+            ordersPageQueryDTO.setPhoneSuffix(ordersPageQueryDTO.getPhone().trim());
+        }
+        List<Long> ids = orderSearchIndex.search(ordersPageQueryDTO.getNumber(), ordersPageQueryDTO.getPhone());
+        ordersPageQueryDTO.setIds(ids);
+        return ids == null || !ids.isEmpty();
+    }
+
+    /**
+     * 统计符合条件的订单总数，按查询条件缓存一分钟，列表翻页时不需要精确的总数
+     *
+     * @param ordersPageQueryDTO
+     * @return
+     */
+    private Long countCached(OrdersPageQueryDTO ordersPageQueryDTO) {
+        String conditions = ordersPageQueryDTO.getNumber() + "|" + ordersPageQueryDTO.getPhone() + "|"
+                + ordersPageQueryDTO.getUserId() + "|" + ordersPageQueryDTO.getStatus() + "|"
+                + ordersPageQueryDTO.getBeginTime() + "|" + ordersPageQueryDTO.getEndTime();
+        String key = ORDER_COUNT_KEY_PREFIX + DigestUtils.md5DigestAsHex(conditions.getBytes(StandardCharsets.UTF_8));
+        String cached = stringRedisTemplate.opsForValue().get(key);
+        if (cached != null) {
+            return Long.valueOf(cached);
+        }
+        //PageHelper只执行count查询，不查询数据
+        long total = PageHelper.count(() -> orderMapper.pageQuery(ordersPageQueryDTO));
+        stringRedisTemplate.opsForValue().set(key, String.valueOf(total), 1, TimeUnit.MINUTES);
+        return total;
+    }
+
     /**
      * 私有方法，为conditionSearch条件搜索订单方法提供，获取订单菜品信息
      *
@@ -374,35 +660,50 @@ public class OrderServiceImpl implements OrderService {
      * @return
      */
     private List<OrderVO> getOrderVOList(Page<Orders> page) {
-        //1.需要返回订单菜品信息，自定义OrderVO接收响应给前端的结果
+        //1.一次查出这一页所有订单的明细，并设置到OrderVO中
+        List<OrderVO> orderVOList = getOrderVOListWithDetails(page);
+        //2.将每个订单的菜品信息拼接为字符串
+        for (OrderVO orderVO : orderVOList) {
+            orderVO.setOrderDishes(getOrderDishesStr(orderVO.getOrderDetailList()));
+        }
+        return orderVOList;
+    }
+
+    /**
+     * 私有方法，将一页订单封装成带订单明细的OrderVO
+     * 这一页所有订单的明细通过一条in查询查出，再在内存中按订单id分组，不再每个订单单独查询
+     *
+     * @param ordersList 分页查询后的订单
+     * @return
+     */
+    private List<OrderVO> getOrderVOListWithDetails(List<Orders> ordersList) {
         List<OrderVO> orderVOList = new ArrayList<>();
-        //2.获取条件查询后的数据
-        List<Orders> ordersList = page.getResult();
-        //3.判断ordersList是否为空，不为空则遍历ordersList，将订单菜品信息封装到OrderVO中
-        if (!CollectionUtils.isEmpty(ordersList)) {
-            for (Orders orders : ordersList) {
-                //将共同字段复制到OrderVO
-                OrderVO orderVO = new OrderVO();
-                BeanUtils.copyProperties(orders, orderVO);
-                //获取订单菜品信息
-                String orderDishes = getOrderDishesStr(orders);
-                //将订单菜品信息封装到orderVO中，并添加到orderVOList
-                orderVO.setOrderDishes(orderDishes);
-                orderVOList.add(orderVO);
-            }
+        if (CollectionUtils.isEmpty(ordersList)) {
+            return orderVOList;
+        }
+        //1.根据这一页的订单id集合查询订单明细，按订单id分组
+        List<Long> orderIds = ordersList.stream().map(Orders::getId).collect(Collectors.toList());
+        Map<Long, List<OrderDetail>> orderDetailMap = orderDetailMapper.getByOrderIds(orderIds).stream()
+                .collect(Collectors.groupingBy(OrderDetail::getOrderId));
+        //2.将订单和对应的明细封装到OrderVO中
+        for (Orders orders : ordersList) {
+            OrderVO orderVO = new OrderVO();
+            //先把orders已经有的属性拷贝到orderVO中
+            BeanUtils.copyProperties(orders, orderVO);
+            //再设置订单明细，这个属性在Orders类中没有，所以需要设置
+            orderVO.setOrderDetailList(orderDetailMap.getOrDefault(orders.getId(), new ArrayList<>()));
+            orderVOList.add(orderVO);
         }
         return orderVOList;
     }
 
     /**
-     * 私有方法，为getOrderVOList方法提供，根据订单id获取菜品信息字符串
+     * 私有方法，为getOrderVOList方法提供，将订单明细拼接为菜品信息字符串
      *
-     * @param orders
+     * @param orderDetailList 订单明细
      * @return
      */
-    private String getOrderDishesStr(Orders orders) {
-        // 查询订单菜品详情信息（订单中的菜品和数量）
-        List<OrderDetail> orderDetailList = orderDetailMapper.getByOrderId(orders.getId());
+    private String getOrderDishesStr(List<OrderDetail> orderDetailList) {
         // 将每一条订单菜品信息拼接为字符串（格式：宫保鸡丁*3；）
         List<String> orderDishList = orderDetailList.stream().map(x -> {
             String orderDish = x.getName() + "*" + x.getNumber() + ";";
@@ -418,10 +719,11 @@ public class OrderServiceImpl implements OrderService {
      * @return
      */
     public OrderStatisticsVO statistics() {
-        // 根据状态，分别查询出待接单、待派送、派送中的订单数量
-        Integer toBeConfirmed = orderMapper.countStatus(Orders.TO_BE_CONFIRMED);
-        Integer confirmed = orderMapper.countStatus(Orders.CONFIRMED);
-        Integer deliveryInProgress = orderMapper.countStatus(Orders.DELIVERY_IN_PROGRESS);
+        // 从redis的订单状态计数中读取待接单、待派送、派送中的订单数量，不再查询订单表
+        Map<Integer, Integer> counts = orderStatusCounter.getAllCounts();
+        Integer toBeConfirmed = counts.getOrDefault(Orders.TO_BE_CONFIRMED, 0);
+        Integer confirmed = counts.getOrDefault(Orders.CONFIRMED, 0);
+        Integer deliveryInProgress = counts.getOrDefault(Orders.DELIVERY_IN_PROGRESS, 0);
         // 将查询出的数据封装到orderStatisticsVO中，然后返回给前端
         OrderStatisticsVO orderStatisticsVO = new OrderStatisticsVO();
         orderStatisticsVO.setToBeConfirmed(toBeConfirmed);
@@ -435,13 +737,16 @@ public class OrderServiceImpl implements OrderService {
      *
      * @param ordersConfirmDTO
      */
+    @Transactional
     public void confirm(OrdersConfirmDTO ordersConfirmDTO) {
         //mapper层操作需要对应的实体类，所以把实体类需要的属性从DTO中拿一下
         Orders orders = Orders.builder()
                 .id(ordersConfirmDTO.getId())
                 .status(Orders.CONFIRMED)
                 .build();
-        orderMapper.update(orders);
+        //接单只能从待接单状态发起，多个管理端同时接单时只有一个成功
+        orderStateMachine.transition(orders, Orders.TO_BE_CONFIRMED);
+        eventPublisher.publishEvent(new OrderEvent(OrderEvent.Type.CONFIRMED, orders.getId(), null));
     }
 
     /**
@@ -454,33 +759,25 @@ public class OrderServiceImpl implements OrderService {
      * @param ordersRejectionDTO
      * @throws Exception
      */
+    @Transactional
     public void rejection(OrdersRejectionDTO ordersRejectionDTO) throws Exception {
-        //1.先查询订单
-        Orders ordersDB = orderMapper.getById(ordersRejectionDTO.getId());
+        //1.拒单需要退款，根据订单id更新订单状态、拒单原因、取消时间
+        Orders orders = new Orders();
+        orders.setId(ordersRejectionDTO.getId());
+        orders.setStatus(Orders.CANCELLED);
+        orders.setRejectionReason(ordersRejectionDTO.getRejectionReason());
+        orders.setCancelTime(LocalDateTime.now());
         //2.只有订单处于“待接单”状态时，也就是状态2，才可以执行拒单操作
-        if (!ordersDB.getStatus().equals(Orders.TO_BE_CONFIRMED)) {
-            throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
-        }
-        //3.若为已支付，则调用微信支付退款接口
-        //获取支付状态
-        Integer payStatus = ordersDB.getPayStatus();
-        if (payStatus == Orders.PAID) {
-            //用户已支付，需要退款，这里进行模拟，不用实际退款
+        orderStateMachine.transition(orders, Orders.TO_BE_CONFIRMED);
+        //3.待接单的订单一定已支付，需要退款，这里进行模拟，不用实际退款，实际退款时再根据id查询订单号和金额
+//            Orders ordersDB = orderMapper.getById(ordersRejectionDTO.getId());
 //            String refund = weChatPayUtil.refund(
 //                    ordersDB.getNumber(),
 //                    ordersDB.getNumber(),
 //                    new BigDecimal(0.01),
 //                    new BigDecimal(0.01));
 //            log.info("申请退款：{}", refund);
-        }
-        //4.拒单需要退款，根据订单id更新订单状态、拒单原因、取消时间
-        Orders orders = new Orders();
-        orders.setId(ordersDB.getId());
-        orders.setStatus(Orders.CANCELLED);
-        orders.setRejectionReason(ordersRejectionDTO.getRejectionReason());
-        orders.setCancelTime(LocalDateTime.now());
-        //更新订单
-        orderMapper.update(orders);
+        eventPublisher.publishEvent(new OrderEvent(OrderEvent.Type.REJECTED, orders.getId(), null));
     }
 
     /**
@@ -490,13 +787,20 @@ public class OrderServiceImpl implements OrderService {
      * @param ordersCancelDTO
      * @throws Exception
      */
+    @Transactional
     public void cancel(OrdersCancelDTO ordersCancelDTO) throws Exception {
-        //1.根据id查询订单
-        Orders ordersDB = orderMapper.getById(ordersCancelDTO.getId());
-        //2.获取支付状态，若为已支付，则调用微信支付退款接口
-        Integer payStatus = ordersDB.getPayStatus();
-        if (payStatus == Orders.PAID) {
-            //用户已支付，需要退款，这里进行模拟，不用实际退款
+        //1.管理端取消订单，根据订单id更新订单状态、取消原因、取消时间
+        Orders orders = new Orders();
+        orders.setId(ordersCancelDTO.getId());
+        orders.setStatus(Orders.CANCELLED);
+        orders.setCancelReason(ordersCancelDTO.getCancelReason());
+        orders.setCancelTime(LocalDateTime.now());
+        //2.已完成、已取消的订单不能再取消
+        Integer fromStatus = orderStateMachine.transition(orders, Orders.TO_BE_CONFIRMED, Orders.CONFIRMED,
+                Orders.DELIVERY_IN_PROGRESS, Orders.PENDING_PAYMENT);
+        //3.待付款之后的状态都已支付，需要退款，这里进行模拟，不用实际退款，实际退款时再根据id查询订单号和金额
+        if (!Orders.PENDING_PAYMENT.equals(fromStatus)) {
+//            Orders ordersDB = orderMapper.getById(ordersCancelDTO.getId());
 //            String refund = weChatPayUtil.refund(
 //                    ordersDB.getNumber(),
 //                    ordersDB.getNumber(),
@@ -504,13 +808,7 @@ public class OrderServiceImpl implements OrderService {
 //                    new BigDecimal(0.01));
 //            log.info("申请退款：{}", refund);
         }
-        //3.管理端取消订单需要退款，根据订单id更新订单状态、取消原因、取消时间
-        Orders orders = new Orders();
-        orders.setId(ordersCancelDTO.getId());
-        orders.setStatus(Orders.CANCELLED);
-        orders.setCancelReason(ordersCancelDTO.getCancelReason());
-        orders.setCancelTime(LocalDateTime.now());
-        orderMapper.update(orders);
+        eventPublisher.publishEvent(new OrderEvent(OrderEvent.Type.CANCELLED, orders.getId(), null));
     }
 
     /**
@@ -518,19 +816,15 @@ public class OrderServiceImpl implements OrderService {
      *
      * @param id
      */
+    @Transactional
     public void delivery(Long id) {
-        // 1.根据id查询订单
-        Orders ordersDB = orderMapper.getById(id);
-        //2.校验订单是否存在，并且状态为已接单，也就是状态3
-        if (ordersDB == null || !ordersDB.getStatus().equals(Orders.CONFIRMED)) {
-            throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
-        }
         //mapper类需要表对应的实体类
         Orders orders = new Orders();
-        orders.setId(ordersDB.getId());
-        //3.更新订单状态,状态转为派送中
+        orders.setId(id);
+        //1.更新订单状态,状态转为派送中，只有已接单的订单，也就是状态3，才能派送
         orders.setStatus(Orders.DELIVERY_IN_PROGRESS);
-        orderMapper.update(orders);
+        orderStateMachine.transition(orders, Orders.CONFIRMED);
+        eventPublisher.publishEvent(new OrderEvent(OrderEvent.Type.DELIVERED, orders.getId(), null));
     }
 
     /**
@@ -538,75 +832,16 @@ public class OrderServiceImpl implements OrderService {
      *
      * @param id
      */
+    @Transactional
     public void complete(Long id) {
-        //1.根据id查询订单
-        Orders ordersDB = orderMapper.getById(id);
-        //2.校验订单是否存在，并且状态为派送中，也就是状态4
-        if (ordersDB == null || !ordersDB.getStatus().equals(Orders.DELIVERY_IN_PROGRESS)) {
-            throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
-        }
         //创建实体类orders对象
         Orders orders = new Orders();
-        orders.setId(ordersDB.getId());
-        //3.更新订单状态,状态转为完成
+        orders.setId(id);
+        //1.更新订单状态,状态转为完成，只有派送中的订单，也就是状态4，才能完成
         orders.setStatus(Orders.COMPLETED);
         orders.setDeliveryTime(LocalDateTime.now());
-        orderMapper.update(orders);
-    }
-
-    /**
-     * 检查客户的收货地址是否超出配送范围
-     *
-     * @param address
-     */
-    private void checkOutOfRange(String address) {
-        //初始化地图API请求参数
-        Map map = new HashMap();
-        map.put("address", shopAddress);
-        map.put("output", "json");
-        map.put("ak", ak);
-        //获取店铺的经纬度坐标
-        String shopCoordinate = HttpClientUtil.doGet("https://api.map.baidu.com/geocoding/v3", map);
-        JSONObject jsonObject = JSON.parseObject(shopCoordinate);
-        if (!jsonObject.getString("status").equals("0")) {
-            throw new OrderBusinessException("店铺地址解析失败");
-        }
-        //数据解析
-        JSONObject location = jsonObject.getJSONObject("result").getJSONObject("location");
-        String lat = location.getString("lat");
-        String lng = location.getString("lng");
-        //店铺经纬度坐标
-        String shopLngLat = lat + "," + lng;
-        map.put("address", address);
-        //获取用户收货地址的经纬度坐标
-        String userCoordinate = HttpClientUtil.doGet("https://api.map.baidu.com/geocoding/v3", map);
-        jsonObject = JSON.parseObject(userCoordinate);
-        if (!jsonObject.getString("status").equals("0")) {
-            throw new OrderBusinessException("收货地址解析失败");
-        }
-        //数据解析
-        location = jsonObject.getJSONObject("result").getJSONObject("location");
-        lat = location.getString("lat");
-        lng = location.getString("lng");
-        //用户收货地址经纬度坐标
-        String userLngLat = lat + "," + lng;
-        map.put("origin", shopLngLat);
-        map.put("destination", userLngLat);
-        map.put("steps_info", "0");
-        //路线规划
-        String json = HttpClientUtil.doGet("https://api.map.baidu.com/directionlite/v1/driving", map);
-        jsonObject = JSON.parseObject(json);
-        if (!jsonObject.getString("status").equals("0")) {
-            throw new OrderBusinessException("配送路线规划失败");
-        }
-        //数据解析
-        JSONObject result = jsonObject.getJSONObject("result");
-        JSONArray jsonArray = (JSONArray) result.get("routes");
-        Integer distance = (Integer) ((JSONObject) jsonArray.get(0)).get("distance");
-        if (distance > 5000) {
-            //配送距离超过5000米
-            throw new OrderBusinessException("超出配送范围");
-        }
+        orderStateMachine.transition(orders, Orders.DELIVERY_IN_PROGRESS);
+        eventPublisher.publishEvent(new OrderEvent(OrderEvent.Type.COMPLETED, orders.getId(), null));
     }
 
     /**
@@ -619,11 +854,7 @@ public class OrderServiceImpl implements OrderService {
         if (orders == null) {
             throw new OrderBusinessException(MessageConstant.ORDER_NOT_FOUND);
         }
-        //2.基于WebSocket实现催单
-        Map map = new HashMap();
-        map.put("type", 2);//2代表用户催单
-        map.put("orderId", id);
-        map.put("content", "订单号：" + orders.getNumber());
-        webSocketServer.sendToAllClient(JSON.toJSONString(map));
+        //2.发布催单事件，由监听器基于WebSocket实现催单
+        eventPublisher.publishEvent(new OrderEvent(OrderEvent.Type.REMINDED, id, orders.getNumber()));
     }
 }
@@ -1,14 +1,24 @@
 package com.sky.service.impl;
 
+import com.sky.constant.MessageConstant;
+import com.sky.dto.DailyStatisticsDTO;
 import com.sky.dto.GoodsSalesDTO;
 import com.sky.entity.Orders;
+import com.sky.exception.ReportBusinessException;
 import com.sky.mapper.OrderMapper;
 import com.sky.mapper.UserMapper;
+import com.sky.service.BusinessStatsService;
 import com.sky.service.ReportService;
 import com.sky.service.WorkspaceService;
 import com.sky.vo.*;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.poi.util.StringUtil;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.xssf.streaming.SXSSFRow;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFRow;
 import org.apache.poi.xssf.usermodel.XSSFSheet;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
@@ -22,7 +32,10 @@ import java.io.InputStream;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -34,46 +47,45 @@ import java.util.stream.Collectors;
  * @description
  */
 @Service
+@Slf4j
 public class ReportServiceImpl implements ReportService {
+    //模板中明细数据从第8行开始，单元格从第2列到第7列
+    private static final int DETAIL_FIRST_ROW = 7;
+    private static final int DETAIL_LAST_CELL = 6;
+    //订单状态名称，下标对应订单状态值
+    private static final String[] ORDER_STATUS_NAMES = {"", "待付款", "待接单", "已接单", "派送中", "已完成", "已取消"};
+    //支付状态名称，下标对应支付状态值
+    private static final String[] PAY_STATUS_NAMES = {"未支付", "已支付", "退款"};
+    private static final DateTimeFormatter EXPORT_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    //导出报表的最大天数
+    private static final int MAX_EXPORT_DAYS = 366;
+    //包含订单明细时的最大天数，订单明细使用流式查询，导出期间一直占用一个数据库连接
+    private static final int MAX_EXPORT_ORDER_DAYS = 31;
+
     @Autowired
     private OrderMapper orderMapper;
     @Autowired
     private UserMapper userMapper;
     @Autowired
     private WorkspaceService workspaceService;
+    @Autowired
+    private BusinessStatsService businessStatsService;
 
     /**
      * 统计时间区间内的营业额
      * 营业额实际上查询的是订单表中的金额字段，所以要查询的订单状态为已完成，且在指定时间范围内
+     * 按天取出整个区间的数据，已结束的日期读取每日汇总表，不再扫描订单表
      *
      * @param begin
      * @param end
      * @return
      */
     public TurnoverReportVO getTurnoverStatistics(LocalDate begin, LocalDate end) {
-        //1.先计算日期列表dateList，将时间区间内的每一天加进去
-        List<LocalDate> dateList = new ArrayList<>();
-        for (LocalDate date = begin; !date.isAfter(end); date = date.plusDays(1)) {
-            dateList.add(date);
-        }
-        //2.再计算金额列表turnoverList
-        //VO类中是LocalDateTime，这种带有时分秒，而LocalDate只有年月日
-        List<Double> turnoverList = new ArrayList<>();
-        for (LocalDate date : dateList) {
-            //需要查询date日期对应的营业额
-            //获取一天中的起始时间和结束时间，也就是0点0分0秒和23点59分59秒
-            LocalDateTime beginTime = LocalDateTime.of(date, LocalTime.MIN);
-            LocalDateTime endTime = LocalDateTime.of(date, LocalTime.MAX);
-            //select sum(amount) from orders where order_time >= beginTime and order_time < endTime and status = 5(已完成)
-            Map map = new HashMap<>();
-            map.put("begin", beginTime);
-            map.put("end", endTime);
-            map.put("status", Orders.COMPLETED);
-            Double turnover = orderMapper.sumByMap(map);
-            //如果turnover为null，说明该日期没有订单，设置为0.0
-            turnover = turnover == null ? 0.0 : turnover;
-            turnoverList.add(turnover);
-        }
+        //1.按天查询整个区间的统计数据，已结束的日期读取汇总表，没有数据的日期已补0
+        List<DailyStatisticsDTO> dailyList = businessStatsService.getDailyStatistics(begin, end);
+        //2.从每天的统计数据中取出日期列表和营业额列表
+        List<LocalDate> dateList = dailyList.stream().map(DailyStatisticsDTO::getDate).collect(Collectors.toList());
+        List<Double> turnoverList = dailyList.stream().map(DailyStatisticsDTO::getTurnover).collect(Collectors.toList());
         //3.将VO需要的两个属性数据封装为VO类
         TurnoverReportVO reportVO = TurnoverReportVO.builder()
                 //使用commons-lang3中的StringUtils工具类进行拼接
@@ -85,33 +97,27 @@ public class ReportServiceImpl implements ReportService {
 
     /**
      * 根据时间区间统计用户数量
+     * 新增用户数按天取出，总用户数 = 区间开始前的用户总数 + 区间内新增用户数的累加
      *
      * @param begin
      * @param end
      * @return
      */
     public UserReportVO getUserStatistics(LocalDate begin, LocalDate end) {
-        //1.先计算日期列表dateList，将时间区间内的每一天加进去
-        List<LocalDate> dateList = new ArrayList<>();
-        for (LocalDate date = begin; !date.isAfter(end); date = date.plusDays(1)) {
-            dateList.add(date);
-        }
-        //2.再计算新增用户列表newUserList，以及总用户列表totalUserList
-        List<Integer> newUserList = new ArrayList<>(); //新增用户数
+        //1.按天查询区间内的统计数据，取出日期列表和每天的新增用户数
+        List<DailyStatisticsDTO> dailyList = businessStatsService.getDailyStatistics(begin, end);
+        List<LocalDate> dateList = dailyList.stream().map(DailyStatisticsDTO::getDate).collect(Collectors.toList());
+        List<Integer> newUserList = dailyList.stream().map(DailyStatisticsDTO::getNewUsers).collect(Collectors.toList()); //新增用户数
+        //2.查询区间开始之前的用户总数，作为累加的起点
+        //总用户数量 select count(id) from user where create_time <= ?
+        Integer totalUser = getUserCount(null, LocalDateTime.of(begin.minusDays(1), LocalTime.MAX));
+        //3.计算总用户列表totalUserList
         List<Integer> totalUserList = new ArrayList<>(); //总用户数
-        //获取指定时间区间内的用户数量
-        for (LocalDate date : dateList) {
-            LocalDateTime beginTime = LocalDateTime.of(date, LocalTime.MIN);
-            LocalDateTime endTime = LocalDateTime.of(date, LocalTime.MAX);
-            //用一个动态sql兼容这两个sql即可
-            //新增用户数量 select count(id) from user where create_time > ? and create_time < ?
-            Integer newUser = getUserCount(beginTime, endTime);
-            //总用户数量 select count(id) from user where  create_time < ?
-            Integer totalUser = getUserCount(null, endTime);
-            newUserList.add(newUser);
+        for (Integer newUser : newUserList) {
+            totalUser += newUser;
             totalUserList.add(totalUser);
         }
-        //3.将VO需要的两个属性数据封装为VO类
+        //4.将VO需要的数据封装为VO类
         return UserReportVO.builder()
                 .dateList(StringUtils.join(dateList, ","))
                 .newUserList(StringUtils.join(newUserList, ","))
@@ -141,30 +147,16 @@ public class ReportServiceImpl implements ReportService {
      * @return
      */
     public OrderReportVO getOrderStatistics(LocalDate begin, LocalDate end) {
-        //1.计算日期列表dateList，将时间区间内的每一天加进去
-        List<LocalDate> dateList = new ArrayList<>();
-        for (LocalDate date = begin; !date.isAfter(end); date = date.plusDays(1)) {
-            dateList.add(date);
-        }
-        //2.计算订单总数量，有效订单数量，订单完成率
-        //创建每天订单总数集合和每天有效订单数集合
-        List<Integer> orderCountList = new ArrayList<>();
-        List<Integer> validOrderCountList = new ArrayList<>();
-        for (LocalDate date : dateList) {
-            //LocalDate->LocalDateTime，获取一天中的起始时间和结束时间，也就是0点0分0秒和23点59分59秒
-            LocalDateTime beginTime = LocalDateTime.of(date, LocalTime.MIN);
-            LocalDateTime endTime = LocalDateTime.of(date, LocalTime.MAX);
-            //查询每天的总订单数 select count(id) from orders where order_time > ? and order_time < ?
-            Integer orderCount = getOrderCount(beginTime, endTime, null);
-            //查询每天的有效订单数 select count(id) from orders where order_time > ? and order_time < ? and status = ?
-            Integer validOrderCount = getOrderCount(beginTime, endTime, Orders.COMPLETED);
-            orderCountList.add(orderCount);
-            validOrderCountList.add(validOrderCount);
-        }
+        //1.按天查询整个区间的统计数据，已结束的日期读取汇总表，没有数据的日期已补0
+        List<DailyStatisticsDTO> dailyList = businessStatsService.getDailyStatistics(begin, end);
+        //2.取出日期列表、每天订单总数集合和每天有效订单数集合
+        List<LocalDate> dateList = dailyList.stream().map(DailyStatisticsDTO::getDate).collect(Collectors.toList());
+        List<Integer> orderCountList = dailyList.stream().map(DailyStatisticsDTO::getOrderCount).collect(Collectors.toList());
+        List<Integer> validOrderCountList = dailyList.stream().map(DailyStatisticsDTO::getValidOrderCount).collect(Collectors.toList());
         //时间区间内的总订单数，不用再次查数据库，遍历orderCountList集合，使用stream流的reduce合并求和即可
-        Integer totalOrderCount = orderCountList.stream().reduce(Integer::sum).get();
+        Integer totalOrderCount = orderCountList.stream().reduce(0, Integer::sum);
         //时间区间内的总有效订单数
-        Integer validOrderCount = validOrderCountList.stream().reduce(Integer::sum).get();
+        Integer validOrderCount = validOrderCountList.stream().reduce(0, Integer::sum);
         //订单完成率
         Double orderCompletionRate = 0.0;
         //如果总订单数不为0，则计算订单完成率
@@ -182,21 +174,6 @@ public class ReportServiceImpl implements ReportService {
 
     }
 
-    /**
-     * 提取出私有方法，提高复用性，根据时间区间统计订单数量
-     *
-     * @param begin
-     * @param end
-     * @return
-     */
-    private Integer getOrderCount(LocalDateTime begin, LocalDateTime end, Integer status) {
-        Map map = new HashMap();
-        map.put("begin", begin);
-        map.put("end", end);
-        map.put("status", status);
-        return orderMapper.countByMap(map);
-    }
-
     /**
      * 统计销量top10
      * 查询两张表orderDetail(查名字和份数)和order表(用于查状态)
@@ -231,55 +208,176 @@ public class ReportServiceImpl implements ReportService {
      * @param response
      **/
     public void exportBusinessData(HttpServletResponse response) {
-        LocalDate begin = LocalDate.now().minusDays(30);
-        LocalDate end = LocalDate.now().minusDays(1);
-        //1.查询最近30天的概览运营数据
-        //因为在workspaceService中，已经封装了根据时间区间查询的概览运营数据，所以直接调用即可
-        BusinessDataVO businessData = workspaceService.getBusinessData(LocalDateTime.of(begin, LocalTime.MIN), LocalDateTime.of(end, LocalTime.MAX));
+        exportBusinessData(LocalDate.now().minusDays(30), LocalDate.now().minusDays(1), false, response);
+    }
+
+    /**
+     * 导出指定日期区间的运营数据报表
+     * 整个区间的数据一次性按天查出，不再每天单独查询；写入时使用SXSSF流式工作簿，内存中只保留最近的少量行，
+     * 其余行写入临时文件，所以导出一整年的数据或大量订单明细时内存占用也基本不变
+     *
+     * @param begin         开始日期
+     * @param end           结束日期
+     * @param includeOrders 是否追加订单明细Sheet页
+     * @param response
+     */
+    public void exportBusinessData(LocalDate begin, LocalDate end, boolean includeOrders, HttpServletResponse response) {
+        //日期区间在写响应之前校验，校验失败时正常返回错误信息
+        if (begin.isAfter(end)) {
+            throw new ReportBusinessException(MessageConstant.DATE_RANGE_ERROR);
+        }
+        if (ChronoUnit.DAYS.between(begin, end) >= (includeOrders ? MAX_EXPORT_ORDER_DAYS : MAX_EXPORT_DAYS)) {
+            throw new ReportBusinessException(MessageConstant.DATE_RANGE_TOO_LONG);
+        }
+        //1.一次查询出整个区间每天的运营数据，概览数据由每天的数据汇总得到
+        List<DailyStatisticsDTO> dailyList = businessStatsService.getDailyStatistics(begin, end);
+        BusinessDataVO businessData = workspaceService.getBusinessData(dailyList);
         //创建输入流源地址Excel模板文件对象，getClass获取类对象，getClassLoader获取类加载器，getResourceAsStream从类路径下读取资源，最后这个方法会返回一个输入流
         InputStream inputStream = this.getClass().getClassLoader().getResourceAsStream("template/运营数据报表模板.xlsx");
-        //2.使用POI提供的工具类，将Excel表格数据填充到Excel表格中
+        SXSSFWorkbook excel = null;
         try {
-            //基于提供好的模板文件创建一个新的Excel表格对象
-            XSSFWorkbook excel = new XSSFWorkbook(inputStream);
-            //获得Excel文件中的一个Sheet页
-            XSSFSheet sheet = excel.getSheet("Sheet1");
+            if (inputStream == null) {
+                throw new IOException("报表模板不存在");
+            }
+            //2.模板只有几十行，先用XSSF填充表头和概览数据
+            XSSFWorkbook template = new XSSFWorkbook(inputStream);
+            XSSFSheet templateSheet = template.getSheet("Sheet1");
             //填充数据--时间，获取第2行第2个单元格，并设置值，因为模板文件行已经存在
-            sheet.getRow(1).getCell(1).setCellValue(begin + "至" + end);
+            templateSheet.getRow(1).getCell(1).setCellValue(begin + "至" + end);
             //获得第4行
-            XSSFRow row = sheet.getRow(3);
+            XSSFRow row = templateSheet.getRow(3);
             //获取单元格
             row.getCell(2).setCellValue(businessData.getTurnover());    //营业额
             row.getCell(4).setCellValue(businessData.getOrderCompletionRate()); //订单完成率
             row.getCell(6).setCellValue(businessData.getNewUsers());    //新增用户数
-            row = sheet.getRow(4);
+            row = templateSheet.getRow(4);
             row.getCell(2).setCellValue(businessData.getValidOrderCount()); //有效订单数
             row.getCell(4).setCellValue(businessData.getUnitPrice());   //平均客单价
+
+            //3.模板从第8行开始是明细行，记录第8行的行高和单元格样式后删除模板中的明细行，明细行交给流式工作簿重新生成
+            XSSFRow styleRow = templateSheet.getRow(DETAIL_FIRST_ROW);
+            short detailRowHeight = styleRow.getHeight();
+            CellStyle[] detailStyles = new CellStyle[DETAIL_LAST_CELL + 1];
+            for (int i = 1; i <= DETAIL_LAST_CELL; i++) {
+                detailStyles[i] = styleRow.getCell(i).getCellStyle();
+            }
+            for (int i = templateSheet.getLastRowNum(); i >= DETAIL_FIRST_ROW; i--) {
+                XSSFRow templateRow = templateSheet.getRow(i);
+                if (templateRow != null) {
+                    templateSheet.removeRow(templateRow);
+                }
+            }
+
+            //4.基于模板创建流式工作簿，内存中最多保留100行，超出的行写入临时文件
+            excel = new SXSSFWorkbook(template, 100);
+            excel.setCompressTempFiles(true);
+            SXSSFSheet sheet = excel.getSheet("Sheet1");
             //填充数据--明细
-            for (int i = 0; i < 30; i++) {
-                //计算要填充的日期
-                LocalDate date = begin.plusDays(i);
-                //查询date那一天的明细数据
-                businessData = workspaceService.getBusinessData(LocalDateTime.of(date, LocalTime.MIN), LocalDateTime.of(date, LocalTime.MAX));
-                //从模板文件可知，从第8行开始填充数据
-                row = sheet.getRow(7 + i);
-                row.getCell(1).setCellValue(date.toString());
-                row.getCell(2).setCellValue(businessData.getTurnover());
-                row.getCell(3).setCellValue(businessData.getValidOrderCount());
-                row.getCell(4).setCellValue(businessData.getOrderCompletionRate());
-                row.getCell(5).setCellValue(businessData.getUnitPrice());
-                row.getCell(6).setCellValue(businessData.getNewUsers());
+            int rowNum = DETAIL_FIRST_ROW;
+            for (DailyStatisticsDTO daily : dailyList) {
+                BusinessDataVO dailyData = workspaceService.getBusinessData(Collections.singletonList(daily));
+                SXSSFRow detailRow = sheet.createRow(rowNum++);
+                detailRow.setHeight(detailRowHeight);
+                createCell(detailRow, 1, detailStyles).setCellValue(daily.getDate().toString());
+                createCell(detailRow, 2, detailStyles).setCellValue(dailyData.getTurnover());
+                createCell(detailRow, 3, detailStyles).setCellValue(dailyData.getValidOrderCount());
+                createCell(detailRow, 4, detailStyles).setCellValue(dailyData.getOrderCompletionRate());
+                createCell(detailRow, 5, detailStyles).setCellValue(dailyData.getUnitPrice());
+                createCell(detailRow, 6, detailStyles).setCellValue(dailyData.getNewUsers());
+            }
+
+            //5.需要订单明细时，流式查询区间内的订单，查出一行写入一行
+            if (includeOrders) {
+                writeOrderSheet(excel, begin, end, detailStyles[1]);
             }
-            //3.通过输出流将文件下载到客户端浏览器中
+
+            //6.通过输出流将文件下载到客户端浏览器中
             //使用HttpServletResponse的getOutputStream方法获取输出流
             ServletOutputStream out = response.getOutputStream();
             excel.write(out);
-            //4.关闭资源
+            //7.关闭资源
             out.flush();
             out.close();
-            excel.close();
         } catch (IOException e) {
-            e.printStackTrace();
+            //不能返回一个空的成功响应；还没开始写文件时清空响应，返回错误信息，已经写出部分文件时抛出异常中断下载
+            log.error("导出运营数据报表失败，开始日期：{}，结束日期：{}", begin, end, e);
+            if (!response.isCommitted()) {
+                response.reset();
+            }
+            throw new ReportBusinessException(MessageConstant.REPORT_EXPORT_FAILED);
+        } finally {
+            if (excel != null) {
+                //删除流式工作簿产生的临时文件
+                excel.dispose();
+                try {
+                    excel.close();
+                } catch (IOException e) {
+                    log.warn("关闭导出的工作簿失败", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 追加订单明细Sheet页，订单通过流式查询逐行写入
+     *
+     * @param excel
+     * @param begin
+     * @param end
+     * @param cellStyle
+     */
+    private void writeOrderSheet(SXSSFWorkbook excel, LocalDate begin, LocalDate end, CellStyle cellStyle) {
+        SXSSFSheet sheet = excel.createSheet("订单明细");
+        String[] titles = {"订单号", "下单时间", "结账时间", "订单状态", "支付状态", "订单金额", "收货人", "手机号", "地址", "备注"};
+        SXSSFRow titleRow = sheet.createRow(0);
+        for (int i = 0; i < titles.length; i++) {
+            sheet.setColumnWidth(i, 20 * 256);
+            Cell cell = titleRow.createCell(i);
+            cell.setCellStyle(cellStyle);
+            cell.setCellValue(titles[i]);
+        }
+        int[] rowNum = {1};
+        orderMapper.streamByOrderTime(LocalDateTime.of(begin, LocalTime.MIN), LocalDateTime.of(end, LocalTime.MAX), context -> {
+            Orders orders = context.getResultObject();
+            SXSSFRow row = sheet.createRow(rowNum[0]++);
+            row.createCell(0).setCellValue(orders.getNumber());
+            row.createCell(1).setCellValue(orders.getOrderTime() == null ? "" : orders.getOrderTime().format(EXPORT_TIME_FORMATTER));
+            row.createCell(2).setCellValue(orders.getCheckoutTime() == null ? "" : orders.getCheckoutTime().format(EXPORT_TIME_FORMATTER));
+            row.createCell(3).setCellValue(getStatusName(ORDER_STATUS_NAMES, orders.getStatus()));
+            row.createCell(4).setCellValue(getStatusName(PAY_STATUS_NAMES, orders.getPayStatus()));
+            row.createCell(5).setCellValue(orders.getAmount() == null ? 0.0 : orders.getAmount().doubleValue());
+            row.createCell(6).setCellValue(orders.getConsignee());
+            row.createCell(7).setCellValue(orders.getPhone());
+            row.createCell(8).setCellValue(orders.getAddress());
+            row.createCell(9).setCellValue(orders.getRemark());
+        });
+    }
+
+    /**
+     * 创建明细单元格并设置模板中的样式
+     *
+     * @param row
+     * @param column
+     * @param styles
+     * @return
+     */
+    private Cell createCell(SXSSFRow row, int column, CellStyle[] styles) {
+        Cell cell = row.createCell(column);
+        cell.setCellStyle(styles[column]);
+        return cell;
+    }
+
+    /**
+     * 根据状态值取状态名称，状态值不在范围内时直接返回状态值
+     *
+     * @param names
+     * @param status
+     * @return
+     */
+    private String getStatusName(String[] names, Integer status) {
+        if (status == null) {
+            return "";
         }
+        return status >= 0 && status < names.length ? names[status] : status.toString();
     }
 }
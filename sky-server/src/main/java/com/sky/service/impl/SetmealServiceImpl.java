@@ -16,6 +16,7 @@ import com.sky.mapper.DishMapper;
 import com.sky.mapper.SetmealDishMapper;
 import com.sky.mapper.SetmealMapper;
 import com.sky.result.PageResult;
+import com.sky.service.MenuService;
 import com.sky.service.SetmealService;
 import com.sky.vo.DishItemVO;
 import com.sky.vo.SetmealVO;
@@ -43,6 +44,8 @@ public class SetmealServiceImpl implements SetmealService {
     private SetmealDishMapper setmealDishMapper;
     @Autowired
     private DishMapper dishMapper;
+    @Autowired
+    private MenuService menuService;
 
     /**
      * 新增套餐，同时保存套餐相关联的菜品
@@ -73,6 +76,8 @@ public class SetmealServiceImpl implements SetmealService {
 
         //保存套餐和菜品的关联关系
         setmealDishMapper.insertBatch(setmealDishes);
+        //菜单数据变化，递增菜单版本
+        menuService.bumpVersion();
     }
 
     /**
@@ -115,6 +120,8 @@ public class SetmealServiceImpl implements SetmealService {
             //删除套餐和菜品的关联关系
             setmealDishMapper.deleteBySetmealId(setmealId);
         });
+        //菜单数据变化，递增菜单版本
+        menuService.bumpVersion();
     }
 
     /**
@@ -165,6 +172,8 @@ public class SetmealServiceImpl implements SetmealService {
         });
         //3、重新插入套餐和菜品的关联关系，操作setmeal_dish表，执行insert
         setmealDishMapper.insertBatch(setmealDishes);
+        //菜单数据变化，递增菜单版本
+        menuService.bumpVersion();
     }
 
     /**
@@ -193,6 +202,8 @@ public class SetmealServiceImpl implements SetmealService {
                 .status(status)
                 .build();
         setmealMapper.update(setmeal);
+        //菜单数据变化，递增菜单版本
+        menuService.bumpVersion();
     }
 
     /**
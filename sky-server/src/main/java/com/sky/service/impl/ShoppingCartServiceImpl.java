@@ -1,5 +1,6 @@
 package com.sky.service.impl;
 
+import com.sky.cart.RedisCartStore;
 import com.sky.context.BaseContext;
 import com.sky.dto.ShoppingCartDTO;
 import com.sky.entity.Dish;
@@ -13,6 +14,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -27,39 +29,30 @@ import java.util.List;
 public class ShoppingCartServiceImpl implements ShoppingCartService {
 
     @Autowired
-    private ShoppingCartMapper shoppingCartMapper;
+    private RedisCartStore redisCartStore;
     @Autowired
     private DishMapper dishMapper;
     @Autowired
     private SetmealMapper setmealMapper;
+    @Autowired
+    private ShoppingCartMapper shoppingCartMapper;
 
     /**
-     * 添加购物车
+     * 添加购物车，数量保存在redis hash中，用HINCRBY原子加1
      *
      * @param shoppingCartDTO
      */
     public void addShoppingCart(ShoppingCartDTO shoppingCartDTO) {
-        // select * from shopping_cart where user_id = ? and dish_id/setmeal_id = ?
-        //判断当前待加入到购物车的数据是否已存在
-        ShoppingCart shoppingCart = new ShoppingCart();
-        BeanUtils.copyProperties(shoppingCartDTO, shoppingCart);
-        shoppingCart.setUserId(BaseContext.getCurrentId());
-        //获取当前用户的购物车数据
-        List<ShoppingCart> list = shoppingCartMapper.list(shoppingCart);
-        //若存在，数量加1，因为list查出来只可能有一个数据，因为dish_id/setmeal_id是唯一的
-        if (list != null && list.size() > 0) {
-            ShoppingCart cart = list.get(0);
-            //update shopping_cart set number = ? where id = ?
-            cart.setNumber(cart.getNumber() + 1);
-            shoppingCartMapper.updateNumberById(cart);
-        } else {
-            //若不存在，则添加到购物车，数量默认为1
-            //根据是套餐还是菜品，获取前端没有传过来的对应字段
-            //判断是菜品还是套餐
-            Long dishId = shoppingCartDTO.getDishId();
-            Long setmealId = shoppingCartDTO.getSetmealId();
+        Long userId = BaseContext.getCurrentId();
+        Long dishId = shoppingCartDTO.getDishId();
+        Long setmealId = shoppingCartDTO.getSetmealId();
+        //商品第一次加入购物车时才查询菜品或套餐，获取前端没有传过来的名称、图片、价格
+        redisCartStore.add(userId, dishId, setmealId, shoppingCartDTO.getDishFlavor(), () -> {
+            ShoppingCart shoppingCart = new ShoppingCart();
+            BeanUtils.copyProperties(shoppingCartDTO, shoppingCart);
+            shoppingCart.setUserId(userId);
             if (dishId != null) {
-                //说明本次添加的是菜品，先获取菜品数据，然后检查哪些字段需要赋值，然后插入
+                //说明本次添加的是菜品
                 Dish dish = dishMapper.getById(dishId);
                 shoppingCart.setName(dish.getName());
                 shoppingCart.setImage(dish.getImage());
@@ -71,12 +64,9 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
                 shoppingCart.setImage(setmeal.getImage());
                 shoppingCart.setAmount(setmeal.getPrice());
             }
-            //公共需要设置的字段
-            shoppingCart.setNumber(1);
             shoppingCart.setCreateTime(LocalDateTime.now());
-            //不管是菜品还是套餐，都需要添加到购物车
-            shoppingCartMapper.insert(shoppingCart);
-        }
+            return shoppingCart;
+        });
     }
 
     /**
@@ -85,46 +75,38 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
      * @return
      */
     public List<ShoppingCart> list() {
-        //select * from shopping_cart where user_id = ?
-        ShoppingCart shoppingCart = new ShoppingCart();
-        shoppingCart.setUserId(BaseContext.getCurrentId());
-        return shoppingCartMapper.list(shoppingCart);
+        return redisCartStore.list(BaseContext.getCurrentId());
     }
 
     /**
      * 清空购物车
      */
     public void clean() {
-        shoppingCartMapper.deleteByUserId(BaseContext.getCurrentId());
+        redisCartStore.clean(BaseContext.getCurrentId());
     }
 
     /**
-     * 删除购物车中一个商品
+     * 删除购物车中一个商品，数量减到0时从购物车中删除
      *
      * @param shoppingCartDTO
      */
     public void sub(ShoppingCartDTO shoppingCartDTO) {
-        //delete from shopping_cart where user_id = ? and dish_id/setmeal_id = ?
-        //设置查询条件，查询当前用户待删除的购物车数据
-        ShoppingCart shoppingCart = new ShoppingCart();
-        BeanUtils.copyProperties(shoppingCartDTO,shoppingCart);
-        shoppingCart.setUserId(BaseContext.getCurrentId());
-        List<ShoppingCart> list = shoppingCartMapper.list(shoppingCart);
-        //判断当前购物车中是否存在当前要删除的菜品或套餐
-        if(list != null && list.size() > 0){
-            //因为只会有一条数据，直接取出第一条就是当前待删除购物车的数据
-            shoppingCart = list.get(0);
-            //获取商品份数
-            Integer number = shoppingCart.getNumber();
-            //判断当前数据中商品份数是否为1
-            if(number == 1){
-                //当前商品在购物车中的份数为1，直接删除当前记录
-                shoppingCartMapper.deleteByShoppingCartId(shoppingCart.getId());
-            }else {
-                //当前商品在购物车中的份数不为1，修改份数即可
-                shoppingCart.setNumber(shoppingCart.getNumber() - 1);
-                shoppingCartMapper.updateNumberById(shoppingCart);
-            }
+        redisCartStore.sub(BaseContext.getCurrentId(), shoppingCartDTO.getDishId(),
+                shoppingCartDTO.getSetmealId(), shoppingCartDTO.getDishFlavor());
+    }
+
+    /**
+     * 把redis中用户的购物车写回数据库，数据库中的购物车只是redis的副本，直接整体替换
+     * 删除和插入在同一个事务中，插入失败时不会丢掉数据库中原来的购物车
+     *
+     * @param userId
+     */
+    @Transactional
+    public void writeBack(Long userId) {
+        List<ShoppingCart> shoppingCartList = redisCartStore.list(userId);
+        shoppingCartMapper.deleteByUserId(userId);
+        if (!shoppingCartList.isEmpty()) {
+            shoppingCartMapper.insertBatch(shoppingCartList);
         }
     }
 }
@@ -1,11 +1,13 @@
 package com.sky.service.impl;
 
 import com.sky.constant.StatusConstant;
+import com.sky.dto.DailyStatisticsDTO;
 import com.sky.entity.Orders;
 import com.sky.mapper.DishMapper;
-import com.sky.mapper.OrderMapper;
 import com.sky.mapper.SetmealMapper;
 import com.sky.mapper.UserMapper;
+import com.sky.order.OrderStatusCounter;
+import com.sky.service.BusinessStatsService;
 import com.sky.service.WorkspaceService;
 import com.sky.vo.BusinessDataVO;
 import com.sky.vo.DishOverViewVO;
@@ -16,8 +18,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
-import java.time.LocalTime;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -29,17 +31,20 @@ import java.util.Map;
 @Slf4j
 public class WorkspaceServiceImpl implements WorkspaceService {
 
-    @Autowired
-    private OrderMapper orderMapper;
     @Autowired
     private UserMapper userMapper;
     @Autowired
     private DishMapper dishMapper;
     @Autowired
     private SetmealMapper setmealMapper;
+    @Autowired
+    private BusinessStatsService businessStatsService;
+    @Autowired
+    private OrderStatusCounter orderStatusCounter;
 
     /**
      * 根据时间段统计营业数据
+     * 按天汇总，已结束的日期读取每日汇总表，今天的数据按天分组查询，时间段按整天计算
      * @param begin
      * @param end
      * @return
@@ -53,20 +58,25 @@ public class WorkspaceServiceImpl implements WorkspaceService {
          * 新增用户：当日新增用户的数量
          */
 
-        Map map = new HashMap();
-        map.put("begin",begin);
-        map.put("end",end);
+        List<DailyStatisticsDTO> dailyList = businessStatsService.getDailyStatistics(begin.toLocalDate(), end.toLocalDate());
+        return getBusinessData(dailyList);
+    }
 
+    /**
+     * 根据已经查询出的按天统计数据汇总营业数据
+     *
+     * @param dailyList
+     * @return
+     */
+    public BusinessDataVO getBusinessData(List<DailyStatisticsDTO> dailyList) {
         //查询总订单数
-        Integer totalOrderCount = orderMapper.countByMap(map);
+        Integer totalOrderCount = dailyList.stream().mapToInt(DailyStatisticsDTO::getOrderCount).sum();
 
-        map.put("status", Orders.COMPLETED);
         //营业额
-        Double turnover = orderMapper.sumByMap(map);
-        turnover = turnover == null? 0.0 : turnover;
+        Double turnover = dailyList.stream().mapToDouble(DailyStatisticsDTO::getTurnover).sum();
 
         //有效订单数
-        Integer validOrderCount = orderMapper.countByMap(map);
+        Integer validOrderCount = dailyList.stream().mapToInt(DailyStatisticsDTO::getValidOrderCount).sum();
 
         Double unitPrice = 0.0;
 
@@ -79,7 +89,7 @@ public class WorkspaceServiceImpl implements WorkspaceService {
         }
 
         //新增用户数
-        Integer newUsers = userMapper.countByMap(map);
+        Integer newUsers = dailyList.stream().mapToInt(DailyStatisticsDTO::getNewUsers).sum();
 
         return BusinessDataVO.builder()
                 .turnover(turnover)
@@ -97,34 +107,21 @@ public class WorkspaceServiceImpl implements WorkspaceService {
      * @return
      */
     public OrderOverViewVO getOrderOverView() {
-        Map map = new HashMap();
-        map.put("begin", LocalDateTime.now().with(LocalTime.MIN));
-        map.put("status", Orders.TO_BE_CONFIRMED);
-
-        //待接单
-        Integer waitingOrders = orderMapper.countByMap(map);
-
-        //待派送
-        map.put("status", Orders.CONFIRMED);
-        Integer deliveredOrders = orderMapper.countByMap(map);
-
-        //已完成
-        map.put("status", Orders.COMPLETED);
-        Integer completedOrders = orderMapper.countByMap(map);
-
-        //已取消
-        map.put("status", Orders.CANCELLED);
-        Integer cancelledOrders = orderMapper.countByMap(map);
-
-        //全部订单
-        map.put("status", null);
-        Integer allOrders = orderMapper.countByMap(map);
+        //今天下单的订单中各状态的数量，从redis的订单状态计数中读取，不再查询订单表
+        Map<Integer, Integer> counts = orderStatusCounter.getTodayCounts();
+        //全部订单，下单中的订单在订单列表中不显示，不计入
+        int allOrders = 0;
+        for (Map.Entry<Integer, Integer> entry : counts.entrySet()) {
+            if (!Orders.PLACING.equals(entry.getKey())) {
+                allOrders += entry.getValue();
+            }
+        }
 
         return OrderOverViewVO.builder()
-                .waitingOrders(waitingOrders)
-                .deliveredOrders(deliveredOrders)
-                .completedOrders(completedOrders)
-                .cancelledOrders(cancelledOrders)
+                .waitingOrders(counts.getOrDefault(Orders.TO_BE_CONFIRMED, 0))
+                .deliveredOrders(counts.getOrDefault(Orders.CONFIRMED, 0))
+                .completedOrders(counts.getOrDefault(Orders.COMPLETED, 0))
+                .cancelledOrders(counts.getOrDefault(Orders.CANCELLED, 0))
                 .allOrders(allOrders)
                 .build();
     }
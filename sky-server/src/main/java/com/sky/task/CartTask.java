@@ -0,0 +1,49 @@
+package com.sky.task;
+
+import com.sky.cart.RedisCartStore;
+import com.sky.properties.CartProperties;
+import com.sky.service.ShoppingCartService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 购物车定时任务，把redis中有修改的购物车写回数据库，sky.cart.write-behind开启时才执行
+ */
+@Component
+@Slf4j
+public class CartTask {
+    @Autowired
+    private RedisCartStore redisCartStore;
+    @Autowired
+    private ShoppingCartService shoppingCartService;
+    @Autowired
+    private CartProperties cartProperties;
+
+    /**
+     * 每30秒把一批有修改的购物车写回shopping_cart表
+     */
+    @Scheduled(fixedDelay = 30000)
+    public void writeBehind() {
+        if (!cartProperties.isWriteBehind()) {
+            return;
+        }
+        List<Long> userIds = redisCartStore.popDirtyUsers(cartProperties.getWriteBehindBatchSize());
+        if (userIds.isEmpty()) {
+            return;
+        }
+        log.info("购物车写回数据库，用户数：{}", userIds.size());
+        for (Long userId : userIds) {
+            try {
+                shoppingCartService.writeBack(userId);
+            } catch (Exception e) {
+                //写回失败时重新记录，下次再写回
+                log.error("购物车写回数据库失败，用户id：{}", userId, e);
+                redisCartStore.markDirty(userId);
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.sky.task;
+
+import java.time.LocalDateTime;
+import java.util.function.LongPredicate;
+
+/**
+ * 定时任务本次执行的上下文，包含本次获得的租约令牌和上次成功执行的时间
+ */
+public class JobContext {
+
+    private final String jobName;
+    private final long leaseToken;
+    private final LocalDateTime lastSuccessTime;
+    private final LongPredicate tokenChecker;
+
+    JobContext(String jobName, long leaseToken, LocalDateTime lastSuccessTime, LongPredicate tokenChecker) {
+        this.jobName = jobName;
+        this.leaseToken = leaseToken;
+        this.lastSuccessTime = lastSuccessTime;
+        this.tokenChecker = tokenChecker;
+    }
+
+    public String getJobName() {
+        return jobName;
+    }
+
+    /**
+     * 租约令牌，每次获得租约时递增，令牌更大的执行者才是当前的执行者
+     * 只在redis中比较，不会随数据库写入校验
+     *
+     * @return
+     */
+    public long getLeaseToken() {
+        return leaseToken;
+    }
+
+    /**
+     * 上次成功执行的时间，从未执行过时为null
+     *
+     * @return
+     */
+    public LocalDateTime getLastSuccessTime() {
+        return lastSuccessTime;
+    }
+
+    /**
+     * 本节点是否仍是当前的执行者，分批处理的任务在每批之前检查，租约已被其他节点取得时停止
+     * 检查和之后的写入之间租约仍可能过期，尽量减少重复执行，不保证互斥
+     *
+     * @return
+     */
+    public boolean isCurrent() {
+        return tokenChecker.test(leaseToken);
+    }
+}
@@ -2,13 +2,25 @@ package com.sky.task;
 
 import com.sky.constant.MessageConstant;
 import com.sky.entity.Orders;
+import com.sky.event.OrderEvent;
 import com.sky.mapper.OrderMapper;
+import com.sky.order.OrderExpiryQueue;
+import com.sky.order.PayNotifyProcessor;
+import com.sky.properties.OrderProperties;
+import com.sky.service.BusinessStatsService;
+import com.sky.service.OrderService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -21,25 +33,93 @@ import java.util.List;
 public class OrderTask {
     @Autowired
     private OrderMapper orderMapper;
+    @Autowired
+    private BusinessStatsService businessStatsService;
+    @Autowired
+    private OrderService orderService;
+    @Autowired
+    private OrderProperties orderProperties;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private OrderExpiryQueue orderExpiryQueue;
+    @Autowired
+    private ScheduledJobRunner jobRunner;
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    @Autowired
+    private PayNotifyProcessor payNotifyProcessor;
 
     /**
-     * 超时任务处理，定时任务每分钟触发一次
+     * 消费支付超时延迟队列，每秒触发一次，订单到期后立即取消
+     * 已支付的订单状态不再是待付款，条件更新时会被跳过
+     * 队列取出是原子的，多个节点可以同时消费，不需要租约
+     * 定时任务线程池有多个线程（spring.task.scheduling.pool.size），不会排在运行较久的任务后面
      */
-    @Scheduled(cron = "0 * * * * ?")
+    @Scheduled(fixedDelay = 1000)
+    public void processExpiredOrder() {
+        List<Long> dueIds = orderExpiryQueue.pollDue(orderProperties.getExpiryPollSize());
+        if (dueIds.isEmpty()) {
+            return;
+        }
+        LocalDateTime cancelTime = LocalDateTime.now();
+        List<Long> ids = transactionTemplate.execute(status -> {
+            List<Long> pendingIds = orderMapper.getIdsByIdsAndStatus(dueIds, Orders.PENDING_PAYMENT);
+            if (!pendingIds.isEmpty()) {
+                orderMapper.updateStatusByIds(pendingIds, Orders.PENDING_PAYMENT, Orders.CANCELLED, "订单超时，自动取消", cancelTime);
+                businessStatsService.onOrdersStatusChanged(pendingIds, Orders.PENDING_PAYMENT, Orders.CANCELLED);
+                publishEvents(pendingIds, OrderEvent.Type.CANCELLED);
+            }
+            return pendingIds;
+        });
+        log.info("延迟队列到期订单数：{}，超时取消订单数：{}", dueIds.size(), ids == null ? 0 : ids.size());
+    }
+
+    /**
+     * 重新处理已应答微信但仍未处理成功的支付回调（处理失败、队列已满、节点宕机），每30秒触发一次
+     */
+    @Scheduled(fixedDelay = 30000)
+    public void processPendingPayNotify() {
+        jobRunner.run("processPendingPayNotify", Duration.ofSeconds(25), context -> {
+            int processed = payNotifyProcessor.processPending();
+            if (processed > 0) {
+                log.info("重新处理支付回调数：{}", processed);
+            }
+        });
+    }
+
+    /**
+     * 超时任务处理，兜底处理延迟队列中丢失的订单（如redis数据丢失、节点取出后宕机），默认每10分钟触发一次
+     */
+    @Scheduled(cron = "${sky.order.timeout-scan-cron:0 0/10 * * * ?}")
     public void processTimeoutOrder() {
-        log.info("定时处理超时订单：{}", LocalDateTime.now());
-        //select * from orders where status = 1 and order_time < (当前时间-15分钟)
-        List<Orders> ordersList = orderMapper.getByStatusAndOrdertimeLT(Orders.PENDING_PAYMENT, LocalDateTime.now().plusMinutes(-15));
-        //判断是否有数据
-        if (ordersList != null && ordersList.size() > 0) {
-            for (Orders order : ordersList) {
-                //更新订单状态为已取消
-                order.setStatus(Orders.CANCELLED);
-                order.setCancelReason("订单超时，自动取消");
-                order.setCancelTime(LocalDateTime.now());
-                orderMapper.update(order);
+        jobRunner.run("processTimeoutOrder", Duration.ofMinutes(5), context -> {
+            log.info("定时处理超时订单：{}", LocalDateTime.now());
+            //update orders set status = 6 where status = 1 and order_time < (当前时间-15分钟)，按id分批执行
+            List<Long> ids = transitionInBatches(context, Orders.PENDING_PAYMENT, Orders.CANCELLED,
+                    LocalDateTime.now().plusMinutes(-orderProperties.getPaymentTimeoutMinutes()), "订单超时，自动取消");
+            if (!ids.isEmpty()) {
+                log.info("超时取消订单数：{}", ids.size());
             }
+        });
+    }
+
+    /**
+     * 异步下单时，节点宕机等原因导致一直处于下单中的订单，定时任务每分钟触发一次，直接取消
+     */
+    @Scheduled(cron = "30 * * * * ?")
+    public void processPlacingOrder() {
+        if (!orderProperties.isAsyncPlacement()) {
+            return;
         }
+        jobRunner.run("processPlacingOrder", Duration.ofSeconds(50), context -> {
+            List<Orders> ordersList = orderMapper.getByStatusAndOrdertimeLT(Orders.PLACING,
+                    LocalDateTime.now().plusMinutes(-orderProperties.getPlacementTimeoutMinutes()));
+            if (ordersList != null && ordersList.size() > 0) {
+                log.info("定时处理下单超时的订单：{}", ordersList.size());
+                ordersList.forEach(order -> orderService.cancelPlacement(order.getId(), "下单超时，自动取消"));
+            }
+        });
     }
 
     /**
@@ -47,13 +127,78 @@ public class OrderTask {
      */
     @Scheduled(cron = "0 0 1 * * ?")
     public void processDeliveryOrder() {
+        jobRunner.run("processDeliveryOrder", Duration.ofMinutes(30), this::completeDeliveryOrder);
+    }
+
+    /**
+     * 启动时检查每天执行的任务，超过一天没有成功执行说明停机错过了，立即补执行
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void catchUpMissedJobs() {
+        jobRunner.runIfOverdue("processDeliveryOrder", Duration.ofDays(1).plusHours(1), Duration.ofMinutes(30),
+                this::completeDeliveryOrder);
+    }
+
+    private void completeDeliveryOrder(JobContext context) {
         log.info("定时处理一直处于待派送状态的订单：{}", LocalDateTime.now());
-        List<Orders> ordersList = orderMapper.getByStatusAndOrdertimeLT(Orders.DELIVERY_IN_PROGRESS, LocalDateTime.now().plusMinutes(-60));
-        if(ordersList != null && ordersList.size() > 0){
-            ordersList.forEach(order -> {
-                order.setStatus(Orders.COMPLETED);
-                orderMapper.update(order);
+        List<Long> ids = transitionInBatches(context, Orders.DELIVERY_IN_PROGRESS, Orders.COMPLETED,
+                LocalDateTime.now().plusMinutes(-60), null);
+        if (!ids.isEmpty()) {
+            log.info("自动完成订单数：{}", ids.size());
+        }
+    }
+
+    /**
+     * 把下单时间早于orderTime的订单从fromStatus批量改为toStatus
+     * 按id顺序分批，每批在一个事务中先锁定订单再一条update修改，并同步更新每日运营数据汇总
+     * 每批之前检查租约令牌，租约过期被其他节点接手后停止
+     *
+     * @param context
+     * @param fromStatus
+     * @param toStatus
+     * @param orderTime
+     * @param cancelReason 取消原因，不是取消订单时为null
+     * @return 修改的订单id
+     */
+    private List<Long> transitionInBatches(JobContext context, Integer fromStatus, Integer toStatus, LocalDateTime orderTime, String cancelReason) {
+        int batchSize = orderProperties.getTimeoutBatchSize();
+        LocalDateTime cancelTime = cancelReason == null ? null : LocalDateTime.now();
+        List<Long> affectedIds = new ArrayList<>();
+        long afterId = 0;
+        while (true) {
+            if (!context.isCurrent()) {
+                log.warn("定时任务{}的租约已被其他节点接手，停止执行，令牌：{}", context.getJobName(), context.getLeaseToken());
+                break;
+            }
+            long from = afterId;
+            List<Long> ids = transactionTemplate.execute(status -> {
+                List<Long> batch = orderMapper.getIdsByStatusAndOrdertimeLT(fromStatus, orderTime, from, batchSize);
+                if (!batch.isEmpty()) {
+                    orderMapper.updateStatusByIds(batch, fromStatus, toStatus, cancelReason, cancelTime);
+                    businessStatsService.onOrdersStatusChanged(batch, fromStatus, toStatus);
+                    publishEvents(batch, Orders.CANCELLED.equals(toStatus) ? OrderEvent.Type.CANCELLED : OrderEvent.Type.COMPLETED);
+                }
+                return batch;
             });
+            if (ids == null || ids.isEmpty()) {
+                break;
+            }
+            affectedIds.addAll(ids);
+            afterId = ids.get(ids.size() - 1);
+            if (ids.size() < batchSize) {
+                break;
+            }
         }
+        return affectedIds;
+    }
+
+    /**
+     * 为批量修改的订单发布订单事件，事务提交后由监听器处理
+     *
+     * @param ids
+     * @param type
+     */
+    private void publishEvents(List<Long> ids, OrderEvent.Type type) {
+        ids.forEach(id -> eventPublisher.publishEvent(new OrderEvent(type, id, null)));
     }
 }
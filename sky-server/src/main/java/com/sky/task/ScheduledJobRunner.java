@@ -0,0 +1,171 @@
+package com.sky.task;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 多节点部署时的定时任务执行器，每次触发时通过redis租约保证只有一个节点执行
+ * 租约不主动释放，到期后自动失效，同一次触发中其他节点不会重复执行；每次获得租约时递增租约令牌
+ * 租约令牌只用于执行者在redis中自查是否已被其他节点接手，不会写入数据库，不能阻止已过期执行者的写入；
+ * 任务对订单的修改都是带原状态条件的update，两个执行者重叠时同一个订单也只会被修改一次
+ */
+@Component
+@Slf4j
+public class ScheduledJobRunner {
+
+    //租约key前缀，value为持有租约的节点
+    private static final String LEASE_KEY_PREFIX = "job:lease:";
+    //租约令牌key前缀
+    private static final String TOKEN_KEY_PREFIX = "job:token:";
+    //上次成功执行时间的key前缀，value为毫秒数
+    private static final String LAST_SUCCESS_KEY_PREFIX = "job:last:";
+
+    //获得租约并递增租约令牌，租约被其他节点持有时返回-1
+    private static final RedisScript<Long> ACQUIRE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('set', KEYS[1], ARGV[1], 'nx', 'px', ARGV[2]) then " +
+            "  return redis.call('incr', KEYS[2]) " +
+            "end " +
+            "return -1", Long.class);
+
+    //当前节点的标识
+    private final String nodeId = UUID.randomUUID().toString();
+    //本节点每个任务的执行统计
+    private final Map<String, JobMetrics> metricsMap = new ConcurrentHashMap<>();
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 获得租约后执行任务，没有获得租约说明本次已由其他节点执行，直接跳过
+     *
+     * @param jobName 任务名称
+     * @param lease   租约时长，应大于任务的执行时间并小于触发间隔
+     * @param job
+     * @return 本节点是否执行了任务并且执行成功，没有获得租约或任务抛出异常时返回false
+     */
+    public boolean run(String jobName, Duration lease, Consumer<JobContext> job) {
+        JobMetrics metrics = metricsMap.computeIfAbsent(jobName, name -> new JobMetrics());
+        Long token;
+        try {
+            token = stringRedisTemplate.execute(ACQUIRE_SCRIPT,
+                    Arrays.asList(LEASE_KEY_PREFIX + jobName, TOKEN_KEY_PREFIX + jobName),
+                    nodeId, String.valueOf(lease.toMillis()));
+        } catch (Exception e) {
+            //redis不可用时不执行，避免多个节点同时执行
+            log.error("获取定时任务租约失败：{}", jobName, e);
+            metrics.failures.incrementAndGet();
+            return false;
+        }
+        if (token == null || token < 0) {
+            metrics.skipped.incrementAndGet();
+            return false;
+        }
+        JobContext context = new JobContext(jobName, token, getLastSuccessTime(jobName), t -> isCurrent(jobName, t));
+        long start = System.currentTimeMillis();
+        try {
+            job.accept(context);
+            metrics.runs.incrementAndGet();
+            metrics.lastSuccessTime = start;
+            stringRedisTemplate.opsForValue().set(LAST_SUCCESS_KEY_PREFIX + jobName, String.valueOf(start));
+            return true;
+        } catch (Exception e) {
+            log.error("定时任务执行失败：{}", jobName, e);
+            metrics.failures.incrementAndGet();
+            return false;
+        } finally {
+            long duration = System.currentTimeMillis() - start;
+            metrics.lastDurationMillis = duration;
+            metrics.totalDurationMillis.addAndGet(duration);
+            metrics.lastLeaseToken = token;
+        }
+    }
+
+    /**
+     * 上次成功执行距今已超过interval时才执行，用于补执行停机期间错过的任务
+     *
+     * @param jobName
+     * @param interval 正常的执行间隔
+     * @param lease
+     * @param job
+     * @return 本节点是否执行了任务并且执行成功
+     */
+    public boolean runIfOverdue(String jobName, Duration interval, Duration lease, Consumer<JobContext> job) {
+        LocalDateTime lastSuccessTime = getLastSuccessTime(jobName);
+        if (lastSuccessTime != null && lastSuccessTime.plus(interval).isAfter(LocalDateTime.now())) {
+            return false;
+        }
+        log.info("补执行错过的定时任务：{}，上次成功执行时间：{}", jobName, lastSuccessTime);
+        return run(jobName, lease, job);
+    }
+
+    /**
+     * 本节点各个任务的执行统计
+     *
+     * @return
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        metricsMap.forEach((name, metrics) -> {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("runs", metrics.runs.get());
+            map.put("skipped", metrics.skipped.get());
+            map.put("failures", metrics.failures.get());
+            map.put("lastDurationMillis", metrics.lastDurationMillis);
+            map.put("totalDurationMillis", metrics.totalDurationMillis.get());
+            map.put("lastLeaseToken", metrics.lastLeaseToken);
+            map.put("lastSuccessTime", metrics.lastSuccessTime == 0 ? null : toLocalDateTime(metrics.lastSuccessTime));
+            result.put(name, map);
+        });
+        return result;
+    }
+
+    /**
+     * 令牌是否仍是该任务最新的租约令牌
+     *
+     * @param jobName
+     * @param token
+     * @return
+     */
+    private boolean isCurrent(String jobName, long token) {
+        String current = stringRedisTemplate.opsForValue().get(TOKEN_KEY_PREFIX + jobName);
+        return current != null && Long.parseLong(current) == token;
+    }
+
+    private LocalDateTime getLastSuccessTime(String jobName) {
+        String millis = stringRedisTemplate.opsForValue().get(LAST_SUCCESS_KEY_PREFIX + jobName);
+        return millis == null ? null : toLocalDateTime(Long.parseLong(millis));
+    }
+
+    private LocalDateTime toLocalDateTime(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+
+    /**
+     * 单个任务的执行统计
+     */
+    private static class JobMetrics {
+        private final AtomicLong runs = new AtomicLong();
+        private final AtomicLong skipped = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong totalDurationMillis = new AtomicLong();
+        private volatile long lastDurationMillis;
+        private volatile long lastLeaseToken;
+        private volatile long lastSuccessTime;
+    }
+}
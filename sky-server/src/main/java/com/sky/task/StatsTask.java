@@ -0,0 +1,58 @@
+package com.sky.task;
+
+import com.sky.order.OrderStatusCounter;
+import com.sky.service.BusinessStatsService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDate;
+
+/**
+ * 统计数据校正定时任务，增量维护的计数和汇总数据定期按订单表重算，纠正可能产生的偏差
+ */
+@Component
+@Slf4j
+public class StatsTask {
+
+    @Autowired
+    private OrderStatusCounter orderStatusCounter;
+    @Autowired
+    private BusinessStatsService businessStatsService;
+    @Autowired
+    private ScheduledJobRunner jobRunner;
+
+    /**
+     * 校正redis中的订单状态计数，默认每5分钟触发一次，按状态分组统计全部订单和今天的订单
+     */
+    @Scheduled(cron = "${sky.order.status-counter-reconcile-cron:0 0/5 * * * ?}")
+    public void reconcileOrderStatusCounter() {
+        jobRunner.run("reconcileOrderStatusCounter", Duration.ofMinutes(2), context -> orderStatusCounter.reconcile());
+    }
+
+    /**
+     * 重算前两天的每日运营数据汇总，定时任务每天凌晨3点触发一次
+     */
+    @Scheduled(cron = "0 0 3 * * ?")
+    public void rebuildDailyStats() {
+        jobRunner.run("rebuildDailyStats", Duration.ofMinutes(30), this::rebuildRecentDays);
+    }
+
+    /**
+     * 启动时检查，超过一天没有成功重算说明停机错过了，立即补执行
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void catchUpMissedJobs() {
+        jobRunner.runIfOverdue("rebuildDailyStats", Duration.ofDays(1).plusHours(1), Duration.ofMinutes(30),
+                this::rebuildRecentDays);
+    }
+
+    private void rebuildRecentDays(JobContext context) {
+        LocalDate today = LocalDate.now();
+        businessStatsService.rebuild(today.minusDays(2), today.minusDays(1));
+    }
+}
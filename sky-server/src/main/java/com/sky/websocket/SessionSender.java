@@ -0,0 +1,95 @@
+package com.sky.websocket;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.websocket.Session;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单个WebSocket会话的异步发送队列
+ * 消息先放入有界队列，再通过异步发送逐条发出，上一条发送完成后才发送下一条，调用方线程不会被慢客户端阻塞
+ * 队列满时丢弃最早的消息
+ */
+@Slf4j
+public class SessionSender {
+
+    private final String sid;
+    private final Session session;
+    private final BlockingQueue<String> queue;
+    //是否有消息正在发送
+    private final AtomicBoolean sending = new AtomicBoolean(false);
+    //队列满时丢弃的消息数
+    private final AtomicLong dropped = new AtomicLong();
+
+    public SessionSender(String sid, Session session, int capacity) {
+        this.sid = sid;
+        this.session = session;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    public Session getSession() {
+        return session;
+    }
+
+    public int getPending() {
+        return queue.size();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * 消息放入发送队列，不等待发送完成
+     *
+     * @param message
+     */
+    public void send(String message) {
+        while (!queue.offer(message)) {
+            //队列已满，丢弃最早的一条再放入
+            if (queue.poll() != null) {
+                dropped.incrementAndGet();
+                log.warn("客户端{}发送队列已满，丢弃最早的消息", sid);
+            }
+        }
+        drain();
+    }
+
+    /**
+     * 没有消息正在发送时，取出队首消息异步发送，发送完成后继续发送下一条
+     */
+    private void drain() {
+        while (sending.compareAndSet(false, true)) {
+            String message = queue.poll();
+            if (message == null) {
+                sending.set(false);
+                //释放标记后可能有新消息入队，再检查一次
+                if (queue.isEmpty()) {
+                    return;
+                }
+                continue;
+            }
+            if (!session.isOpen()) {
+                queue.clear();
+                sending.set(false);
+                return;
+            }
+            try {
+                session.getAsyncRemote().sendText(message, result -> {
+                    if (!result.isOK()) {
+                        log.warn("向客户端{}发送消息失败：{}", sid, result.getException().getMessage());
+                    }
+                    sending.set(false);
+                    drain();
+                });
+                return;
+            } catch (Exception e) {
+                log.warn("向客户端{}发送消息失败：{}", sid, e.getMessage());
+                sending.set(false);
+            }
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package com.sky.websocket;
 
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
 import javax.websocket.OnClose;
@@ -8,9 +11,9 @@ import javax.websocket.OnOpen;
 import javax.websocket.Session;
 import javax.websocket.server.PathParam;
 import javax.websocket.server.ServerEndpoint;
-import java.util.Collection;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author yixin
@@ -18,12 +21,27 @@ import java.util.Map;
  * @description WebSocket服务
  * @ServerEndpoint主要是将目前的类定义成一个websocket服务器端,
  * 注解的值将被用于监听用户连接的终端访问URL地址,客户端可以通过这个URL来连接到WebSocket服务器端
+ * 多节点部署时，群发消息先发布到redis频道，每个节点收到后再发给连接在本节点的客户端
  */
 @Component
 @ServerEndpoint("/ws/{sid}")
+@Slf4j
 public class WebSocketServer {
-    //存放会话对象
-    private static Map<String, Session> sessionMap = new HashMap();
+    //群发消息的redis频道
+    public static final String BROADCAST_CHANNEL = "sky:ws:broadcast";
+    //每个会话最多排队等待发送的消息数
+    private static final int SEND_QUEUE_SIZE = 100;
+
+    //存放会话对象，连接的建立和断开在容器的不同线程中执行，使用线程安全的map
+    private static final Map<String, SessionSender> sessionMap = new ConcurrentHashMap<>();
+
+    //端点对象由WebSocket容器为每个连接创建，不是spring注入的那个对象，所以保存在静态变量中
+    private static StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    public void setStringRedisTemplate(StringRedisTemplate stringRedisTemplate) {
+        WebSocketServer.stringRedisTemplate = stringRedisTemplate;
+    }
 
     /**
      * 连接建立成功调用的方法
@@ -32,8 +50,8 @@ public class WebSocketServer {
      */
     @OnOpen
     public void onOpen(Session session, @PathParam("sid") String sid) {
-        System.out.println("客户端：" + sid + "建立连接");
-        sessionMap.put(sid, session);
+        log.info("客户端：{}建立连接", sid);
+        sessionMap.put(sid, new SessionSender(sid, session, SEND_QUEUE_SIZE));
     }
 
     /**
@@ -42,34 +60,52 @@ public class WebSocketServer {
      */
     @OnMessage
     public void onMessage(String message, @PathParam("sid") String sid) {
-        System.out.println("收到来自客户端：" + sid + "的信息:" + message);
+        log.info("收到来自客户端：{}的信息:{}", sid, message);
     }
 
     /**
-     * 连接关闭调用的方法
+     * 连接关闭调用的方法，同一个sid重新连接后旧会话关闭时，不删除新会话
      * @param sid
      */
     @OnClose
-    public void onClose(@PathParam("sid") String sid) {
-        System.out.println("连接断开:" + sid);
-        sessionMap.remove(sid);
+    public void onClose(Session session, @PathParam("sid") String sid) {
+        log.info("连接断开:{}", sid);
+        sessionMap.computeIfPresent(sid, (key, sender) -> sender.getSession() == session ? null : sender);
     }
 
     /**
-     * 群发
+     * 群发，通过redis频道发给所有节点，redis不可用时只发给本节点的客户端
      * @param message
      */
     public void sendToAllClient(String message) {
-        //获取所有会话对象
-        Collection<Session> sessions = sessionMap.values();
-        //遍历所有会话对象，逐个发送消息
-        for (Session session : sessions) {
-            try {
-                //服务器向客户端发送消息
-                session.getBasicRemote().sendText(message);
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+        try {
+            stringRedisTemplate.convertAndSend(BROADCAST_CHANNEL, message);
+        } catch (Exception e) {
+            log.error("发布群发消息失败，只发送给本节点的客户端", e);
+            sendToLocalClients(message);
         }
     }
+
+    /**
+     * 发给连接在本节点的所有客户端，消息放入各会话的发送队列后立即返回
+     * @param message
+     */
+    public void sendToLocalClients(String message) {
+        sessionMap.values().forEach(sender -> sender.send(message));
+    }
+
+    /**
+     * 本节点的会话统计：每个会话排队中和被丢弃的消息数
+     * @return
+     */
+    public Map<String, Object> getSessionStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        sessionMap.forEach((sid, sender) -> {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("pending", sender.getPending());
+            map.put("dropped", sender.getDropped());
+            stats.put(sid, map);
+        });
+        return stats;
+    }
 }
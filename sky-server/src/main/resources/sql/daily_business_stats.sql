@@ -0,0 +1,47 @@
+-- 每日运营数据汇总表
+-- 订单按下单时间(order_time)归属到某一天，用户按注册时间(create_time)归属到某一天
+-- 订单状态流转的事务提交后增量维护，每天凌晨重算前两天的数据，纠正增量维护可能产生的偏差
+-- 建表后由本脚本末尾的语句回填全部历史数据；之后需要修正某段日期时调用
+-- POST /admin/report/rebuildStats?begin=yyyy-MM-dd&end=yyyy-MM-dd
+create table daily_business_stats
+(
+    stat_date                   date           not null comment '统计日期',
+    turnover                    decimal(12, 2) not null default 0 comment '营业额，已完成订单的总金额',
+    total_orders                int            not null default 0 comment '订单总数',
+    valid_orders                int            not null default 0 comment '有效订单数，已完成订单的数量',
+    new_users                   int            not null default 0 comment '新增用户数',
+    pending_payment_orders      int            not null default 0 comment '待付款订单数',
+    to_be_confirmed_orders      int            not null default 0 comment '待接单订单数',
+    confirmed_orders            int            not null default 0 comment '已接单订单数',
+    delivery_in_progress_orders int            not null default 0 comment '派送中订单数',
+    completed_orders            int            not null default 0 comment '已完成订单数',
+    cancelled_orders            int            not null default 0 comment '已取消订单数',
+    update_time                 datetime                default null comment '更新时间',
+    primary key (stat_date)
+) comment '每日运营数据汇总';
+
+-- 回填历史数据，今天的数据在查询时直接统计订单表和用户表，也一并回填，之后由增量维护
+insert into daily_business_stats
+(stat_date, turnover, total_orders, valid_orders, pending_payment_orders, to_be_confirmed_orders,
+ confirmed_orders, delivery_in_progress_orders, completed_orders, cancelled_orders, update_time)
+select date(order_time),
+       sum(case when status = 5 then amount else 0 end),
+       count(id),
+       sum(status = 5),
+       sum(status = 1),
+       sum(status = 2),
+       sum(status = 3),
+       sum(status = 4),
+       sum(status = 5),
+       sum(status = 6),
+       now()
+from orders
+group by date(order_time);
+
+insert into daily_business_stats (stat_date, new_users, update_time)
+select date(create_time), count(id), now()
+from user
+group by date(create_time)
+on duplicate key update
+    new_users   = values(new_users),
+    update_time = values(update_time);
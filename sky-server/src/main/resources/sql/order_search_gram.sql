@@ -0,0 +1,30 @@
+-- 订单号、手机号的n-gram搜索索引表
+-- 订单号、手机号按连续3个字符切分，每个n-gram一行，主键 (field, gram, order_id) 直接用于搜索
+-- field：1订单号 2手机号
+create table if not exists order_search_gram
+(
+    field    tinyint     not null comment '字段 1订单号 2手机号',
+    gram     varchar(12) not null comment '连续3个字符',
+    order_id bigint      not null comment '订单id',
+    primary key (field, gram, order_id)
+) comment '订单搜索索引';
+
+-- 为已有订单补建索引，数字表最多支持50个字符，订单号、手机号都不会超过
+insert ignore into order_search_gram (field, gram, order_id)
+select 1, substring(o.number, seq.n, 3), o.id
+from orders o
+         join (select a.n + b.n * 10 + 1 as n
+               from (select 0 n union all select 1 union all select 2 union all select 3 union all select 4
+                     union all select 5 union all select 6 union all select 7 union all select 8 union all select 9) a,
+                    (select 0 n union all select 1 union all select 2 union all select 3 union all select 4) b) seq
+              on seq.n <= char_length(o.number) - 2;
+
+insert ignore into order_search_gram (field, gram, order_id)
+select 2, substring(o.phone, seq.n, 3), o.id
+from orders o
+         join (select a.n + b.n * 10 + 1 as n
+               from (select 0 n union all select 1 union all select 2 union all select 3 union all select 4
+                     union all select 5 union all select 6 union all select 7 union all select 8 union all select 9) a,
+                    (select 0 n union all select 1 union all select 2 union all select 3 union all select 4) b) seq
+              on seq.n <= char_length(o.phone) - 2
+where o.phone is not null;
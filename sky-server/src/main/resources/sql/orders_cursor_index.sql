@@ -0,0 +1,6 @@
+-- 订单游标分页的联合索引
+-- 游标分页按 order_time desc, id desc 排序，条件为 (order_time, id) 小于上一页最后一条，索引中直接定位，不需要offset
+-- 用户端历史订单按用户查询，管理端常按状态筛选，分别建立前缀不同的联合索引
+create index idx_orders_time_id on orders (order_time, id);
+create index idx_orders_user_time_id on orders (user_id, order_time, id);
+create index idx_orders_status_time_id on orders (status, order_time, id);
@@ -0,0 +1,24 @@
+-- 订单号唯一索引
+-- 订单号由雪花算法生成（19位数字，按时间递增），新订单总是追加在索引末尾
+-- 唯一索引兜底保证订单号不重复，同时用于支付回调根据订单号查询订单
+
+-- 1.旧订单号是毫秒时间戳，同一毫秒下单的订单号会重复，建唯一索引前先处理重复数据
+--   每组重复订单号中id最小的订单保留原订单号，其余订单改为 原订单号-订单id，订单id唯一，改后不会再重复
+--   改号前可先执行下面的查询，把受影响的订单导出给客服核对
+-- select o.id, o.number from orders o
+--     join (select number, min(id) keep_id from orders group by number having count(*) > 1) d
+--       on o.number = d.number and o.id <> d.keep_id;
+update orders o
+    join (select number, min(id) keep_id from orders group by number having count(*) > 1) d
+    on o.number = d.number and o.id <> d.keep_id
+set o.number = concat(o.number, '-', o.id);
+
+-- 2.建唯一索引
+alter table orders modify number varchar(50) not null comment '订单号';
+alter table orders add unique index uk_orders_number (number);
+
+-- 注意：订单号只保证唯一，不用于排序
+-- 旧订单号是13位毫秒时间戳（1开头），新订单号是补0到19位的雪花id（目前0开头），
+-- 按字符串比较时新订单号排在旧订单号前面，order by number 得不到下单先后顺序；
+-- 新、旧订单号各自内部都是递增的，新订单号集中追加在自己的区间末尾，不影响索引插入。
+-- 需要按时间排序时使用 order_time 或 (order_time, id)，项目中的查询都没有按订单号排序
@@ -0,0 +1,7 @@
+-- 手机尾号搜索
+-- 前台高峰期常按手机后4位查订单，4位数字切出的3字符n-gram区分度很低，候选订单往往超过上限退回全表模糊查询
+-- phone_suffix 为手机号后4位的虚拟生成列，插入、修改订单时由数据库自动维护，已有订单不需要补数据
+-- 和 order_time 建联合索引，按尾号查询时直接在索引中按下单时间倒序分页
+alter table orders
+    add column phone_suffix char(4) as (right(phone, 4)) virtual comment '手机号后4位',
+    add index idx_orders_phone_suffix_time (phone_suffix, order_time);
@@ -0,0 +1,63 @@
+package com.sky.cache;
+
+import com.sky.entity.DishFlavor;
+import com.sky.vo.DishVO;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.support.NullValue;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * redis value序列化器的测试
+ */
+class RedisValueSerializerTest {
+
+    @Test
+    void compactRoundTripKeepsProjectTypes() {
+        RedisValueSerializer serializer = new RedisValueSerializer(RedisValueSerializer.CODEC_COMPACT, 16);
+        DishVO dishVO = new DishVO();
+        dishVO.setId(1L);
+        dishVO.setPrice(new BigDecimal("12.50"));
+        dishVO.setUpdateTime(LocalDateTime.of(2025, 6, 8, 12, 0));
+        dishVO.setFlavors(new ArrayList<>(Collections.singletonList(DishFlavor.builder().name("辣度").build())));
+        List<DishVO> value = new ArrayList<>(Collections.singletonList(dishVO));
+
+        assertEquals(value, serializer.deserialize(serializer.serialize(value)));
+    }
+
+    @Test
+    void cachedNullRoundTrips() {
+        RedisValueSerializer serializer = new RedisValueSerializer(RedisValueSerializer.CODEC_JSON, 0);
+
+        assertSame(NullValue.INSTANCE, serializer.deserialize(serializer.serialize(NullValue.INSTANCE)));
+    }
+
+    @Test
+    void typeOutsideAllowListIsRejected() {
+        RedisValueSerializer serializer = new RedisValueSerializer(RedisValueSerializer.CODEC_JSON, 0);
+        byte[] json = ("{\"@class\":\"org.springframework.context.support.FileSystemXmlApplicationContext\","
+                + "\"configLocation\":\"http://example.com/beans.xml\"}").getBytes(StandardCharsets.UTF_8);
+
+        assertThrows(SerializationException.class, () -> serializer.deserialize(json));
+    }
+
+    @Test
+    void legacyJdkPayloadIsTreatedAsMiss() {
+        RedisValueSerializer serializer = new RedisValueSerializer(RedisValueSerializer.CODEC_JSON, 0);
+        byte[] jdk = new JdkSerializationRedisSerializer().serialize(new ArrayList<>(Collections.singletonList("x")));
+
+        assertNull(serializer.deserialize(jdk));
+    }
+}
@@ -0,0 +1,62 @@
+package com.sky.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.when;
+
+/**
+ * 两级缓存回填本地缓存的测试
+ */
+@ExtendWith(MockitoExtension.class)
+class TwoLevelCacheTest {
+
+    @Mock
+    private RedisTemplate<Object, Object> redisTemplate;
+    @Mock
+    private ValueOperations<Object, Object> valueOperations;
+    @Mock
+    private TwoLevelCacheManager cacheManager;
+    @Mock
+    private CacheTagIndex tagIndex;
+
+    private Cache<String, Object> localCache;
+    private TwoLevelCache cache;
+
+    @BeforeEach
+    void setUp() {
+        localCache = Caffeine.newBuilder().build();
+        cache = new TwoLevelCache("dishCache", "dishCache::", null, localCache, null,
+                redisTemplate, null, cacheManager, tagIndex);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+    }
+
+    @Test
+    void redisHitIsCopiedToLocalCache() {
+        when(valueOperations.get("dishCache::1")).thenReturn("v1");
+
+        assertEquals("v1", cache.get(1L).get());
+        assertEquals("v1", localCache.getIfPresent("1"));
+    }
+
+    @Test
+    void evictDuringRedisReadSkipsLocalPut() {
+        when(valueOperations.get("dishCache::1")).thenAnswer(invocation -> {
+            //读取redis期间收到了其他节点的失效消息
+            cache.evictLocal("1");
+            return "stale";
+        });
+
+        assertEquals("stale", cache.get(1L).get());
+        assertNull(localCache.getIfPresent("1"));
+    }
+}
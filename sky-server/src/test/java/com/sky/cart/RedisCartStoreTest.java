@@ -0,0 +1,121 @@
+package com.sky.cart;
+
+import com.sky.entity.ShoppingCart;
+import com.sky.mapper.ShoppingCartMapper;
+import com.sky.properties.CartProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * redis购物车的测试，redis中的原子操作都由lua脚本完成
+ */
+@ExtendWith(MockitoExtension.class)
+class RedisCartStoreTest {
+
+    private static final List<String> KEYS = Arrays.asList("cart:1", "cart:item:1");
+
+    @Mock
+    private StringRedisTemplate stringRedisTemplate;
+    @Mock
+    private CartProperties cartProperties;
+    @Mock
+    private ShoppingCartMapper shoppingCartMapper;
+    @InjectMocks
+    private RedisCartStore redisCartStore;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(cartProperties.getTtlDays()).thenReturn(7L);
+    }
+
+    @Test
+    void addExistingItemRunsOneScriptWithoutLoadingItem() {
+        when(stringRedisTemplate.execute(any(RedisScript.class), eq(KEYS), eq("d:10:微辣"))).thenReturn(3L);
+        Supplier<ShoppingCart> itemLoader = mock(Supplier.class);
+
+        assertEquals(3L, redisCartStore.add(1L, 10L, null, "微辣", itemLoader));
+        verify(stringRedisTemplate, times(1)).execute(any(RedisScript.class), anyList(), any());
+        verifyNoInteractions(itemLoader, shoppingCartMapper);
+    }
+
+    @Test
+    void addNewItemWritesItemAndNumberInSameScript() {
+        when(stringRedisTemplate.execute(any(RedisScript.class), eq(KEYS), eq("s:20"))).thenReturn(-1L);
+        when(stringRedisTemplate.execute(any(RedisScript.class), eq(KEYS), eq("s:20"), any())).thenReturn(1L);
+
+        long number = redisCartStore.add(1L, null, 20L, null, () -> ShoppingCart.builder().name("套餐").build());
+
+        assertEquals(1L, number);
+        ArgumentCaptor<Object> item = ArgumentCaptor.forClass(Object.class);
+        verify(stringRedisTemplate).execute(any(RedisScript.class), eq(KEYS), eq("s:20"), item.capture());
+        assertTrue(item.getValue().toString().contains("套餐"));
+    }
+
+    @Test
+    void addOnRedisMissLoadsCartFromDatabaseFirst() {
+        when(stringRedisTemplate.execute(any(RedisScript.class), eq(KEYS), eq("s:20"))).thenReturn(-2L, 2L);
+        when(shoppingCartMapper.list(any())).thenReturn(Arrays.asList(
+                ShoppingCart.builder().id(5L).userId(1L).setmealId(20L).number(1).build(),
+                ShoppingCart.builder().id(6L).userId(1L).setmealId(20L).number(1).build()));
+        when(stringRedisTemplate.execute(any(RedisScript.class), eq(KEYS), any(), any(), any(), any())).thenReturn(1L);
+
+        assertEquals(2L, redisCartStore.add(1L, null, 20L, null, () -> null));
+
+        //重复的旧数据按商品key合并为一条，数量相加
+        ArgumentCaptor<Object> args = ArgumentCaptor.forClass(Object.class);
+        verify(stringRedisTemplate).execute(any(RedisScript.class), eq(KEYS), args.capture(), args.capture(),
+                args.capture(), args.capture());
+        assertEquals("604800", args.getAllValues().get(0));
+        assertEquals("s:20", args.getAllValues().get(1));
+        assertEquals("2", args.getAllValues().get(2));
+        //没有开启写回时，旧数据迁移到redis后删除
+        verify(shoppingCartMapper).deleteByUserId(1L);
+    }
+
+    @Test
+    void removeOnlySubtractsSnapshotItems() {
+        redisCartStore.remove(1L, Arrays.asList(
+                ShoppingCart.builder().dishId(10L).dishFlavor("微辣").number(2).build(),
+                ShoppingCart.builder().setmealId(20L).number(1).build()));
+
+        verify(stringRedisTemplate).execute(any(RedisScript.class), eq(KEYS), eq("d:10:微辣"), eq("2"), eq("s:20"), eq("1"));
+        verify(stringRedisTemplate, never()).unlink(anyList());
+    }
+
+    @Test
+    void loadKeepsDatabaseCopyWhenWriteBehindIsOn() {
+        when(cartProperties.isWriteBehind()).thenReturn(true);
+        when(stringRedisTemplate.execute(any(RedisScript.class), eq(KEYS), eq("s:20"))).thenReturn(-2L, -1L);
+        when(shoppingCartMapper.list(any())).thenReturn(Arrays.asList(
+                ShoppingCart.builder().userId(1L).dishId(10L).number(2).build()));
+        when(stringRedisTemplate.execute(any(RedisScript.class), eq(KEYS), any(), any(), any(), any())).thenReturn(1L);
+
+        redisCartStore.sub(1L, null, 20L, null);
+
+        verify(shoppingCartMapper, never()).deleteByUserId(any());
+    }
+}
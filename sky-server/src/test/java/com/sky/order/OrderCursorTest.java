@@ -0,0 +1,48 @@
+package com.sky.order;
+
+import com.sky.entity.Orders;
+import com.sky.exception.OrderBusinessException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 订单分页游标的测试
+ */
+class OrderCursorTest {
+
+    @Test
+    void encodeDecodeRoundTrip() {
+        LocalDateTime orderTime = LocalDateTime.of(2025, 6, 8, 12, 30, 15);
+        String cursor = OrderCursor.encode(Orders.builder().id(12345L).orderTime(orderTime).build());
+
+        OrderCursor decoded = OrderCursor.decode(cursor);
+
+        assertEquals(orderTime, decoded.getOrderTime());
+        assertEquals(12345L, decoded.getId());
+        //url安全，不需要转义
+        assertTrue(cursor.matches("[A-Za-z0-9_-]+"));
+    }
+
+    @Test
+    void emptyCursorMeansFirstPage() {
+        assertNull(OrderCursor.decode(null));
+        assertNull(OrderCursor.decode(""));
+    }
+
+    @Test
+    void malformedCursorIsRejected() {
+        assertThrows(OrderBusinessException.class, () -> OrderCursor.decode("not a cursor"));
+        String noSeparator = Base64.getUrlEncoder().encodeToString("12345".getBytes(StandardCharsets.UTF_8));
+        assertThrows(OrderBusinessException.class, () -> OrderCursor.decode(noSeparator));
+        String notNumber = Base64.getUrlEncoder().encodeToString("abc:1".getBytes(StandardCharsets.UTF_8));
+        assertThrows(OrderBusinessException.class, () -> OrderCursor.decode(notNumber));
+    }
+}
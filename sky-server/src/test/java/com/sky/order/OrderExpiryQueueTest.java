@@ -0,0 +1,76 @@
+package com.sky.order;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * 订单支付超时延迟队列的测试
+ */
+@ExtendWith(MockitoExtension.class)
+class OrderExpiryQueueTest {
+
+    @Mock
+    private StringRedisTemplate stringRedisTemplate;
+    @Mock
+    private ZSetOperations<String, String> zSetOperations;
+    @InjectMocks
+    private OrderExpiryQueue orderExpiryQueue;
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void removeInTransactionWaitsForCommit() {
+        when(stringRedisTemplate.opsForZSet()).thenReturn(zSetOperations);
+        TransactionSynchronizationManager.initSynchronization();
+
+        orderExpiryQueue.remove(1L);
+
+        verifyNoInteractions(stringRedisTemplate);
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        verify(zSetOperations).remove("order:expiry", "1");
+    }
+
+    @Test
+    void removeIsSkippedOnRollback() {
+        TransactionSynchronizationManager.initSynchronization();
+
+        orderExpiryQueue.remove(1L);
+
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        verifyNoInteractions(stringRedisTemplate);
+    }
+
+    @Test
+    void pollDueParsesIds() {
+        when(stringRedisTemplate.execute(any(RedisScript.class), eq(Collections.singletonList("order:expiry")),
+                anyString(), eq("100"))).thenReturn(Arrays.asList("3", "5"));
+
+        assertEquals(Arrays.asList(3L, 5L), orderExpiryQueue.pollDue(100));
+    }
+}
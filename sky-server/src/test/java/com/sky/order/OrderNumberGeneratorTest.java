@@ -0,0 +1,83 @@
+package com.sky.order;
+
+import com.sky.exception.OrderBusinessException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+/**
+ * 订单号节点id租约的测试
+ */
+@ExtendWith(MockitoExtension.class)
+class OrderNumberGeneratorTest {
+
+    @Mock
+    private StringRedisTemplate stringRedisTemplate;
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+    @InjectMocks
+    private OrderNumberGenerator orderNumberGenerator;
+
+    @BeforeEach
+    void setUp() {
+        when(stringRedisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.setIfAbsent(anyString(), anyString(), eq(Duration.ofSeconds(60)))).thenReturn(true);
+        orderNumberGenerator.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        orderNumberGenerator.release();
+    }
+
+    @Test
+    void issuesNumbersWhileLeaseIsFresh() {
+        assertEquals(19, orderNumberGenerator.nextOrderNumber().length());
+    }
+
+    @Test
+    void stopsIssuingWhenRenewalIsOverdue() {
+        ReflectionTestUtils.setField(orderNumberGenerator, "leaseValidUntil", System.nanoTime() - 1);
+
+        assertThrows(OrderBusinessException.class, () -> orderNumberGenerator.nextOrderNumber());
+    }
+
+    @Test
+    void failedRenewalKeepsLeaseOverdue() {
+        ReflectionTestUtils.setField(orderNumberGenerator, "leaseValidUntil", System.nanoTime() - 1);
+        when(stringRedisTemplate.execute(any(RedisScript.class), anyList(), any(), any()))
+                .thenThrow(new IllegalStateException("redis unavailable"));
+
+        orderNumberGenerator.renew();
+
+        assertThrows(OrderBusinessException.class, () -> orderNumberGenerator.nextOrderNumber());
+    }
+
+    @Test
+    void successfulRenewalResumesIssuing() {
+        ReflectionTestUtils.setField(orderNumberGenerator, "leaseValidUntil", System.nanoTime() - 1);
+        when(stringRedisTemplate.execute(any(RedisScript.class), anyList(), any(), any())).thenReturn(1L);
+
+        orderNumberGenerator.renew();
+
+        assertEquals(19, orderNumberGenerator.nextOrderNumber().length());
+    }
+}
@@ -0,0 +1,95 @@
+package com.sky.order;
+
+import com.sky.entity.Orders;
+import com.sky.mapper.OrderSearchMapper;
+import com.sky.properties.OrderProperties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 订单号、手机号搜索索引的测试
+ */
+@ExtendWith(MockitoExtension.class)
+class OrderSearchIndexTest {
+
+    @Mock
+    private OrderSearchMapper orderSearchMapper;
+    @Mock
+    private OrderProperties orderProperties;
+    @InjectMocks
+    private OrderSearchIndex orderSearchIndex;
+
+    @Test
+    void indexSplitsIntoDistinctTrigrams() {
+        orderSearchIndex.index(Orders.builder().id(1L).number("12121").phone("13800").build());
+
+        verify(orderSearchMapper).insertGrams(1L, OrderSearchIndex.FIELD_NUMBER, Arrays.asList("121", "212"));
+        verify(orderSearchMapper).insertGrams(1L, OrderSearchIndex.FIELD_PHONE, Arrays.asList("138", "380", "800"));
+    }
+
+    @Test
+    void shortKeywordDoesNotUseIndex() {
+        assertNull(orderSearchIndex.search("12", null));
+        verify(orderSearchMapper, never()).getOrderIdsByGrams(any(), anyList(), anyInt());
+    }
+
+    @Test
+    void bothKeywordsIntersectCandidates() {
+        when(orderProperties.getSearchMaxCandidates()).thenReturn(10);
+        when(orderSearchMapper.getOrderIdsByGrams(eq(OrderSearchIndex.FIELD_NUMBER), anyList(), eq(11)))
+                .thenReturn(new ArrayList<>(Arrays.asList(1L, 2L, 3L)));
+        when(orderSearchMapper.getOrderIdsByGrams(eq(OrderSearchIndex.FIELD_PHONE), anyList(), eq(11)))
+                .thenReturn(new ArrayList<>(Arrays.asList(3L, 2L)));
+
+        assertEquals(Arrays.asList(2L, 3L), orderSearchIndex.search("2025", "13800"));
+    }
+
+    @Test
+    void tooManyCandidatesFallsBackToLike() {
+        when(orderProperties.getSearchMaxCandidates()).thenReturn(2);
+        when(orderSearchMapper.getOrderIdsByGrams(eq(OrderSearchIndex.FIELD_NUMBER), anyList(), eq(3)))
+                .thenReturn(new ArrayList<>(Arrays.asList(1L, 2L, 3L)));
+
+        assertNull(orderSearchIndex.search("202", null));
+    }
+
+    @Test
+    void phoneSuffixSkipsGramIndex() {
+        assertTrue(OrderSearchIndex.isPhoneSuffix(" 1234 "));
+        assertFalse(OrderSearchIndex.isPhoneSuffix("12345"));
+        assertFalse(OrderSearchIndex.isPhoneSuffix("12a4"));
+
+        assertNull(orderSearchIndex.search(null, "1234"));
+        verify(orderSearchMapper, never()).getOrderIdsByGrams(any(), anyList(), anyInt());
+    }
+
+    @Test
+    void emptyCandidatesAreReturnedAsEmpty() {
+        when(orderProperties.getSearchMaxCandidates()).thenReturn(10);
+        when(orderSearchMapper.getOrderIdsByGrams(eq(OrderSearchIndex.FIELD_NUMBER), anyList(), eq(11)))
+                .thenReturn(new ArrayList<>());
+
+        List<Long> ids = orderSearchIndex.search("999", null);
+        assertEquals(Collections.emptyList(), ids);
+    }
+}
@@ -0,0 +1,99 @@
+package com.sky.order;
+
+import com.sky.constant.MessageConstant;
+import com.sky.entity.Orders;
+import com.sky.exception.OrderBusinessException;
+import com.sky.mapper.OrderMapper;
+import com.sky.service.BusinessStatsService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 订单状态机的测试
+ */
+@ExtendWith(MockitoExtension.class)
+class OrderStateMachineTest {
+
+    @Mock
+    private OrderMapper orderMapper;
+    @Mock
+    private BusinessStatsService businessStatsService;
+    @InjectMocks
+    private OrderStateMachine orderStateMachine;
+
+    @Test
+    void severalFromStatusesLockOrderAndReturnPreviousStatus() {
+        when(orderMapper.getByIdForUpdate(1L)).thenReturn(Orders.builder().id(1L).status(Orders.CONFIRMED).build());
+        when(orderMapper.updateByIdAndStatusIn(any())).thenReturn(1);
+        Orders orders = Orders.builder().id(1L).status(Orders.CANCELLED).build();
+
+        Integer fromStatus = orderStateMachine.transition(orders, Orders.TO_BE_CONFIRMED, Orders.CONFIRMED,
+                Orders.DELIVERY_IN_PROGRESS, Orders.PENDING_PAYMENT);
+
+        assertEquals(Orders.CONFIRMED, fromStatus);
+        ArgumentCaptor<OrderTransition> captor = ArgumentCaptor.forClass(OrderTransition.class);
+        verify(orderMapper, times(1)).updateByIdAndStatusIn(captor.capture());
+        assertEquals(Arrays.asList(2, 3, 4, 1), captor.getValue().getFromStatuses());
+        verify(businessStatsService).onOrderStatusChanged(1L, null, Orders.CONFIRMED, Orders.CANCELLED);
+    }
+
+    @Test
+    void singleFromStatusDoesNotLockOrder() {
+        when(orderMapper.updateByIdAndStatusIn(any())).thenReturn(1);
+        Orders orders = Orders.builder().id(1L).status(Orders.CONFIRMED).build();
+
+        assertEquals(Orders.TO_BE_CONFIRMED, orderStateMachine.transition(orders, Orders.TO_BE_CONFIRMED));
+        verify(orderMapper, never()).getByIdForUpdate(anyLong());
+        verify(orderMapper, never()).getById(anyLong());
+        verify(businessStatsService).onOrderStatusChanged(1L, null, Orders.TO_BE_CONFIRMED, Orders.CONFIRMED);
+    }
+
+    @Test
+    void missingOrderIsReportedAsNotFound() {
+        when(orderMapper.updateByIdAndStatusIn(any())).thenReturn(0);
+        Orders orders = Orders.builder().id(1L).status(Orders.CONFIRMED).build();
+
+        OrderBusinessException e = assertThrows(OrderBusinessException.class,
+                () -> orderStateMachine.transition(orders, Orders.TO_BE_CONFIRMED));
+        assertEquals(MessageConstant.ORDER_NOT_FOUND, e.getMessage());
+        verify(businessStatsService, never()).onOrderStatusChanged(any(), any(), any(), any());
+    }
+
+    @Test
+    void disallowedStatusIsReportedAsStatusError() {
+        when(orderMapper.getByIdForUpdate(1L)).thenReturn(Orders.builder().id(1L).status(Orders.COMPLETED).build());
+        Orders orders = Orders.builder().id(1L).status(Orders.CANCELLED).build();
+
+        OrderBusinessException e = assertThrows(OrderBusinessException.class,
+                () -> orderStateMachine.transition(orders, Orders.TO_BE_CONFIRMED, Orders.CONFIRMED));
+        assertEquals(MessageConstant.ORDER_STATUS_ERROR, e.getMessage());
+        verify(orderMapper, never()).updateByIdAndStatusIn(any());
+        verify(businessStatsService, never()).onOrderStatusChanged(any(), any(), any(), any());
+    }
+
+    @Test
+    void singleFromStatusMismatchIsReportedAsStatusError() {
+        when(orderMapper.updateByIdAndStatusIn(any())).thenReturn(0);
+        when(orderMapper.getById(1L)).thenReturn(Orders.builder().id(1L).status(Orders.COMPLETED).build());
+        Orders orders = Orders.builder().id(1L).status(Orders.CONFIRMED).build();
+
+        OrderBusinessException e = assertThrows(OrderBusinessException.class,
+                () -> orderStateMachine.transition(orders, Orders.TO_BE_CONFIRMED));
+        assertEquals(MessageConstant.ORDER_STATUS_ERROR, e.getMessage());
+    }
+}
@@ -0,0 +1,87 @@
+package com.sky.order;
+
+import com.sky.mapper.OrderMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * 订单状态计数器的测试，状态流转时只访问redis，不查询订单表
+ */
+@ExtendWith(MockitoExtension.class)
+class OrderStatusCounterTest {
+
+    @Mock
+    private StringRedisTemplate stringRedisTemplate;
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+    @Mock
+    private OrderMapper orderMapper;
+    @InjectMocks
+    private OrderStatusCounter orderStatusCounter;
+
+    @BeforeEach
+    void setUp() {
+        when(stringRedisTemplate.opsForValue()).thenReturn(valueOperations);
+    }
+
+    @Test
+    void newOrderRecordsDateIndexAndCountsBothHashes() {
+        orderStatusCounter.onTransition(1L, LocalDate.of(2025, 6, 8), null, 1);
+
+        verify(valueOperations).set("order:date:1", "2025-06-08", 2, TimeUnit.DAYS);
+        verify(stringRedisTemplate).execute(any(RedisScript.class),
+                eq(Arrays.asList("order:status:count:all", "order:status:count:2025-06-08")), eq(""), eq("1"), eq("1"));
+        verifyNoInteractions(orderMapper);
+    }
+
+    @Test
+    void transitionWithoutDateReadsDateIndex() {
+        when(valueOperations.get("order:date:1")).thenReturn("2025-06-08");
+
+        orderStatusCounter.onTransition(1L, null, 2, 3);
+
+        verify(stringRedisTemplate).execute(any(RedisScript.class),
+                eq(Arrays.asList("order:status:count:all", "order:status:count:2025-06-08")), eq("2"), eq("3"), eq("1"));
+        verifyNoInteractions(orderMapper);
+    }
+
+    @Test
+    void olderOrderOnlyCountsAllHash() {
+        orderStatusCounter.onTransition(1L, null, 2, 3);
+
+        verify(stringRedisTemplate).execute(any(RedisScript.class),
+                eq(Collections.singletonList("order:status:count:all")), eq("2"), eq("3"), eq("1"));
+    }
+
+    @Test
+    void batchTransitionGroupsByIndexedDate() {
+        when(valueOperations.multiGet(anyList())).thenReturn(Arrays.asList("2025-06-08", "2025-06-08", null));
+
+        orderStatusCounter.onTransitions(Arrays.asList(1L, 2L, 3L), 1, 6);
+
+        verify(stringRedisTemplate).execute(any(RedisScript.class),
+                eq(Arrays.asList("order:status:count:all", "order:status:count:2025-06-08")), eq("1"), eq("6"), eq("2"));
+        verify(stringRedisTemplate).execute(any(RedisScript.class),
+                eq(Collections.singletonList("order:status:count:all")), eq("1"), eq("6"), eq("1"));
+        verifyNoInteractions(orderMapper);
+    }
+}
@@ -0,0 +1,79 @@
+package com.sky.service.impl;
+
+import com.sky.exception.ReportBusinessException;
+import com.sky.mapper.DailyBusinessStatsMapper;
+import com.sky.order.OrderStatusCounter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * 每日运营数据汇总的测试
+ */
+@ExtendWith(MockitoExtension.class)
+class BusinessStatsServiceImplTest {
+
+    @Mock
+    private DailyBusinessStatsMapper dailyBusinessStatsMapper;
+    @Mock
+    private OrderStatusCounter orderStatusCounter;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    @InjectMocks
+    private BusinessStatsServiceImpl businessStatsService;
+
+    @BeforeEach
+    void setUp() {
+        businessStatsService.init();
+    }
+
+    @Test
+    void rebuildRejectsReversedRange() {
+        assertThrows(ReportBusinessException.class,
+                () -> businessStatsService.rebuild(LocalDate.of(2025, 6, 2), LocalDate.of(2025, 6, 1)));
+    }
+
+    @Test
+    void rebuildRejectsRangeOverOneYear() {
+        assertThrows(ReportBusinessException.class,
+                () -> businessStatsService.rebuild(LocalDate.of(2024, 1, 1), LocalDate.of(2025, 6, 1)));
+    }
+
+    @Test
+    void rebuildRunsEachChunkInItsOwnTransaction() {
+        businessStatsService.rebuild(LocalDate.of(2025, 1, 1), LocalDate.of(2025, 3, 5));
+
+        verify(dailyBusinessStatsMapper).deleteByDateRange(LocalDate.of(2025, 1, 1), LocalDate.of(2025, 1, 31));
+        verify(dailyBusinessStatsMapper).deleteByDateRange(LocalDate.of(2025, 2, 1), LocalDate.of(2025, 3, 3));
+        verify(dailyBusinessStatsMapper).deleteByDateRange(LocalDate.of(2025, 3, 4), LocalDate.of(2025, 3, 5));
+        verify(transactionManager, times(3)).commit(any());
+    }
+
+    @Test
+    void transitionIsAppliedOnlyAfterCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            businessStatsService.onOrderStatusChanged(1L, LocalDate.of(2025, 6, 8), 1, 2);
+            verify(dailyBusinessStatsMapper, never()).applyOrderTransition(any(), any(), any());
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+            verify(dailyBusinessStatsMapper).applyOrderTransition(1L, 1, 2);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.sky.service.impl;
+
+import com.sky.entity.Orders;
+import com.sky.event.OrderEvent;
+import com.sky.exception.OrderPlacingException;
+import com.sky.mapper.OrderMapper;
+import com.sky.order.OrderExpiryQueue;
+import com.sky.service.BusinessStatsService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 支付回调处理订单状态的测试
+ */
+@ExtendWith(MockitoExtension.class)
+class OrderServiceImplTest {
+
+    @Mock
+    private OrderMapper orderMapper;
+    @Mock
+    private BusinessStatsService businessStatsService;
+    @Mock
+    private OrderExpiryQueue orderExpiryQueue;
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+    @InjectMocks
+    private OrderServiceImpl orderService;
+
+    @Test
+    void paySuccessMarksPendingOrderPaid() {
+        when(orderMapper.getByNumber("n1")).thenReturn(order(Orders.PENDING_PAYMENT));
+        when(orderMapper.updatePaid(eq(1L), any())).thenReturn(1);
+
+        orderService.paySuccess("n1");
+
+        verify(businessStatsService).onOrderStatusChanged(eq(1L), eq(LocalDate.of(2025, 6, 8)), eq(Orders.PENDING_PAYMENT), eq(Orders.TO_BE_CONFIRMED));
+        verify(orderExpiryQueue).remove(1L);
+        verify(eventPublisher).publishEvent(any(OrderEvent.class));
+    }
+
+    @Test
+    void paySuccessOnCancelledOrderFlagsRefundWithoutReopening() {
+        when(orderMapper.getByNumber("n1")).thenReturn(order(Orders.CANCELLED));
+        when(orderMapper.updatePaid(eq(1L), any())).thenReturn(0);
+        when(orderMapper.getByIdForUpdate(1L)).thenReturn(order(Orders.CANCELLED));
+
+        orderService.paySuccess("n1");
+
+        verify(orderMapper).updateRefundForUnpayable(1L);
+        verify(businessStatsService, never()).onOrderStatusChanged(anyLong(), any(), any(), any());
+        verify(eventPublisher, never()).publishEvent(any());
+    }
+
+    @Test
+    void duplicatePaySuccessIsIgnored() {
+        Orders paid = order(Orders.TO_BE_CONFIRMED);
+        paid.setPayStatus(Orders.PAID);
+        when(orderMapper.getByNumber("n1")).thenReturn(paid);
+        when(orderMapper.updatePaid(eq(1L), any())).thenReturn(0);
+        when(orderMapper.getByIdForUpdate(1L)).thenReturn(paid);
+
+        orderService.paySuccess("n1");
+
+        verify(orderMapper, never()).updateRefundForUnpayable(anyLong());
+        verify(businessStatsService, never()).onOrderStatusChanged(anyLong(), any(), any(), any());
+        verify(orderExpiryQueue, never()).remove(anyLong());
+    }
+
+    @Test
+    void paySuccessDuringPlacementIsRetriedWithoutRefund() {
+        when(orderMapper.getByNumber("n1")).thenReturn(order(Orders.PLACING));
+        when(orderMapper.updatePaid(eq(1L), any())).thenReturn(0);
+        when(orderMapper.getByIdForUpdate(1L)).thenReturn(order(Orders.PLACING));
+
+        assertThrows(OrderPlacingException.class, () -> orderService.paySuccess("n1"));
+
+        verify(orderMapper, never()).updateRefundForUnpayable(anyLong());
+        verify(businessStatsService, never()).onOrderStatusChanged(anyLong(), any(), any(), any());
+    }
+
+    @Test
+    void paySuccessAfterPlacementCompletesMarksOrderPaid() {
+        when(orderMapper.getByNumber("n1")).thenReturn(order(Orders.PLACING));
+        when(orderMapper.updatePaid(eq(1L), any())).thenReturn(0, 1);
+        when(orderMapper.getByIdForUpdate(1L)).thenReturn(order(Orders.PENDING_PAYMENT));
+
+        orderService.paySuccess("n1");
+
+        verify(orderMapper, never()).updateRefundForUnpayable(anyLong());
+        verify(businessStatsService).onOrderStatusChanged(eq(1L), eq(LocalDate.of(2025, 6, 8)), eq(Orders.PENDING_PAYMENT), eq(Orders.TO_BE_CONFIRMED));
+        verify(orderExpiryQueue).remove(1L);
+    }
+
+    private static Orders order(Integer status) {
+        return Orders.builder().id(1L).number("n1").orderTime(LocalDateTime.of(2025, 6, 8, 12, 0)).status(status).payStatus(Orders.UN_PAID).build();
+    }
+}
@@ -0,0 +1,84 @@
+package com.sky.service.impl;
+
+import com.sky.constant.MessageConstant;
+import com.sky.exception.ReportBusinessException;
+import com.sky.mapper.OrderMapper;
+import com.sky.mapper.UserMapper;
+import com.sky.service.BusinessStatsService;
+import com.sky.service.WorkspaceService;
+import com.sky.vo.BusinessDataVO;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * 运营数据报表导出的测试
+ */
+@ExtendWith(MockitoExtension.class)
+class ReportServiceImplTest {
+
+    @Mock
+    private OrderMapper orderMapper;
+    @Mock
+    private UserMapper userMapper;
+    @Mock
+    private WorkspaceService workspaceService;
+    @Mock
+    private BusinessStatsService businessStatsService;
+    @Mock
+    private HttpServletResponse response;
+    @InjectMocks
+    private ReportServiceImpl reportService;
+
+    @Test
+    void reversedRangeIsRejectedBeforeQuerying() {
+        ReportBusinessException e = assertThrows(ReportBusinessException.class, () -> reportService.exportBusinessData(
+                LocalDate.of(2025, 6, 8), LocalDate.of(2025, 6, 1), false, response));
+
+        assertEquals(MessageConstant.DATE_RANGE_ERROR, e.getMessage());
+        verifyNoInteractions(businessStatsService, orderMapper, response);
+    }
+
+    @Test
+    void orderDetailsAreLimitedToShorterRange() {
+        LocalDate begin = LocalDate.of(2025, 1, 1);
+
+        ReportBusinessException e = assertThrows(ReportBusinessException.class,
+                () -> reportService.exportBusinessData(begin, begin.plusDays(31), true, response));
+
+        assertEquals(MessageConstant.DATE_RANGE_TOO_LONG, e.getMessage());
+        assertThrows(ReportBusinessException.class,
+                () -> reportService.exportBusinessData(begin, begin.plusDays(366), false, response));
+        verifyNoInteractions(businessStatsService, orderMapper);
+    }
+
+    @Test
+    void writeFailureFailsTheRequest() throws IOException {
+        when(businessStatsService.getDailyStatistics(any(), any())).thenReturn(Collections.emptyList());
+        when(workspaceService.getBusinessData(anyList())).thenReturn(new BusinessDataVO(0.0, 0, 0.0, 0.0, 0));
+        //构建环境的文件名编码不支持中文时模板不会复制到classpath，读取模板失败走同样的错误处理
+        lenient().when(response.getOutputStream()).thenThrow(new IOException("Broken pipe"));
+
+        ReportBusinessException e = assertThrows(ReportBusinessException.class, () -> reportService.exportBusinessData(
+                LocalDate.of(2025, 6, 1), LocalDate.of(2025, 6, 8), false, response));
+
+        assertEquals(MessageConstant.REPORT_EXPORT_FAILED, e.getMessage());
+        verify(response).reset();
+    }
+}
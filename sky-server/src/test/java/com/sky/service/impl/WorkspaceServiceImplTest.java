@@ -0,0 +1,44 @@
+package com.sky.service.impl;
+
+import com.sky.entity.Orders;
+import com.sky.order.OrderStatusCounter;
+import com.sky.vo.OrderOverViewVO;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.when;
+
+/**
+ * 工作台订单管理数据的测试
+ */
+@ExtendWith(MockitoExtension.class)
+class WorkspaceServiceImplTest {
+
+    @Mock
+    private OrderStatusCounter orderStatusCounter;
+    @InjectMocks
+    private WorkspaceServiceImpl workspaceService;
+
+    @Test
+    void allOrdersExcludesPlacingOrders() {
+        Map<Integer, Integer> counts = new HashMap<>();
+        counts.put(Orders.PLACING, 5);
+        counts.put(Orders.PENDING_PAYMENT, 1);
+        counts.put(Orders.TO_BE_CONFIRMED, 2);
+        counts.put(Orders.COMPLETED, 3);
+        when(orderStatusCounter.getTodayCounts()).thenReturn(counts);
+
+        OrderOverViewVO overView = workspaceService.getOrderOverView();
+
+        assertEquals(6, overView.getAllOrders());
+        assertEquals(2, overView.getWaitingOrders());
+        assertEquals(0, overView.getCancelledOrders());
+    }
+}
@@ -0,0 +1,66 @@
+package com.sky.task;
+
+import com.sky.entity.Orders;
+import com.sky.mapper.OrderMapper;
+import com.sky.properties.OrderProperties;
+import com.sky.service.BusinessStatsService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 订单定时任务的测试
+ */
+@ExtendWith(MockitoExtension.class)
+class OrderTaskTest {
+
+    @Mock
+    private OrderMapper orderMapper;
+    @Mock
+    private BusinessStatsService businessStatsService;
+    @Mock
+    private TransactionTemplate transactionTemplate;
+    @Mock
+    private ScheduledJobRunner jobRunner;
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+    @Mock
+    private OrderProperties orderProperties;
+    @InjectMocks
+    private OrderTask orderTask;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void deliveryJobRecordsDeliveringToCompletedTransition() {
+        when(orderProperties.getTimeoutBatchSize()).thenReturn(500);
+        when(jobRunner.run(eq("processDeliveryOrder"), any(), any())).thenAnswer(invocation -> {
+            Consumer<JobContext> job = invocation.getArgument(2);
+            job.accept(new JobContext("processDeliveryOrder", 1, null, token -> true));
+            return true;
+        });
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                ((TransactionCallback<Object>) invocation.getArgument(0)).doInTransaction(null));
+        when(orderMapper.getIdsByStatusAndOrdertimeLT(eq(Orders.DELIVERY_IN_PROGRESS), any(), anyLong(), anyInt()))
+                .thenReturn(Arrays.asList(1L, 2L));
+
+        orderTask.processDeliveryOrder();
+
+        verify(orderMapper).updateStatusByIds(Arrays.asList(1L, 2L), Orders.DELIVERY_IN_PROGRESS, Orders.COMPLETED, null, null);
+        verify(businessStatsService).onOrdersStatusChanged(Arrays.asList(1L, 2L), Orders.DELIVERY_IN_PROGRESS, Orders.COMPLETED);
+    }
+}
@@ -0,0 +1,75 @@
+package com.sky.task;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 定时任务执行器的测试
+ */
+@ExtendWith(MockitoExtension.class)
+class ScheduledJobRunnerTest {
+
+    @Mock
+    private StringRedisTemplate stringRedisTemplate;
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+    @InjectMocks
+    private ScheduledJobRunner jobRunner;
+
+    @Test
+    void successfulRunRecordsLastSuccessTime() {
+        when(stringRedisTemplate.execute(any(RedisScript.class), anyList(), anyString(), anyString())).thenReturn(7L);
+        when(stringRedisTemplate.opsForValue()).thenReturn(valueOperations);
+        long[] token = {0};
+
+        assertTrue(jobRunner.run("job", Duration.ofMinutes(1), context -> token[0] = context.getLeaseToken()));
+
+        assertEquals(7L, token[0]);
+        verify(valueOperations).set(eq("job:last:job"), anyString());
+    }
+
+    @Test
+    void failedRunReturnsFalseAndKeepsLastSuccessTime() {
+        when(stringRedisTemplate.execute(any(RedisScript.class), anyList(), anyString(), anyString())).thenReturn(7L);
+        when(stringRedisTemplate.opsForValue()).thenReturn(valueOperations);
+
+        assertFalse(jobRunner.run("job", Duration.ofMinutes(1), context -> {
+            throw new IllegalStateException("数据库不可用");
+        }));
+
+        verify(valueOperations, never()).set(anyString(), anyString());
+        Map<String, Object> metrics = (Map<String, Object>) jobRunner.getMetrics().get("job");
+        assertEquals(1L, metrics.get("failures"));
+        assertEquals(0L, metrics.get("runs"));
+    }
+
+    @Test
+    void leaseHeldByOtherNodeSkipsJob() {
+        when(stringRedisTemplate.execute(any(RedisScript.class), anyList(), anyString(), anyString())).thenReturn(-1L);
+        boolean[] ran = {false};
+
+        assertFalse(jobRunner.run("job", Duration.ofMinutes(1), context -> ran[0] = true));
+
+        assertFalse(ran[0]);
+    }
+}
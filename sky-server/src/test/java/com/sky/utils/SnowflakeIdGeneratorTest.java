@@ -0,0 +1,81 @@
+package com.sky.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 雪花算法id生成器的测试
+ */
+class SnowflakeIdGeneratorTest {
+
+    @Test
+    void idsAreMonotonicAndCarryWorkerId() {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(5);
+        long last = generator.nextId();
+        //超过每毫秒4096个，验证序列号进位
+        for (int i = 0; i < 20000; i++) {
+            long id = generator.nextId();
+            assertTrue(id > last);
+            assertEquals(5, (id >>> 12) & SnowflakeIdGenerator.MAX_WORKER_ID);
+            last = id;
+        }
+    }
+
+    @Test
+    void concurrentIdsAreUnique() throws InterruptedException {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1);
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        int threads = 8;
+        int perThread = 20000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) {
+                    ids.add(generator.nextId());
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        assertEquals(threads * perThread, ids.size());
+    }
+
+    @Test
+    void stringEncodingsAreFixedLengthAndOrdered() {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(0);
+        long first = generator.nextId();
+        long second = generator.nextId();
+        String firstDecimal = SnowflakeIdGenerator.toDecimalString(first);
+        String firstCompact = SnowflakeIdGenerator.toCompactString(first);
+
+        assertEquals(19, firstDecimal.length());
+        assertEquals(13, firstCompact.length());
+        assertTrue(firstDecimal.compareTo(SnowflakeIdGenerator.toDecimalString(second)) < 0);
+        assertTrue(firstCompact.compareTo(SnowflakeIdGenerator.toCompactString(second)) < 0);
+        assertEquals(first, SnowflakeIdGenerator.parseCompactString(firstCompact));
+        assertTrue(Math.abs(SnowflakeIdGenerator.getTimestamp(first) - System.currentTimeMillis()) < 5000);
+    }
+
+    @Test
+    void workerIdOutOfRangeIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new SnowflakeIdGenerator(SnowflakeIdGenerator.MAX_WORKER_ID + 1));
+    }
+}